@@ -0,0 +1,64 @@
+package com.checkmarx.dto;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Composite ids of BaseDto, as built per repository by the Azure crawl (project & repository
+ * ids, CxFlow subscription ids of a repository) and split back on webhook deletion. Allocation
+ * per call is reported by the gc profiler (gc.alloc.rate.norm):
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-f 1 -prof gc BaseDtoBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BaseDtoBenchmark {
+
+    /**
+     * Joined ids, Azure ids are uuids
+     */
+    @Param({"2", "3", "8"})
+    private int ids;
+
+    private List<String> idList;
+    private String joinedId;
+
+    @Setup
+    public void setUp() {
+        idList = new ArrayList<>(ids);
+        for (int i = 0; i < ids; i++) {
+            idList.add(UUID.randomUUID().toString());
+        }
+        joinedId = new BaseDto(idList).getId();
+    }
+
+    @Benchmark
+    public BaseDto joinPair() {
+        return new BaseDto(idList.get(0), idList.get(1));
+    }
+
+    @Benchmark
+    public BaseDto joinList() {
+        return new BaseDto(idList);
+    }
+
+    @Benchmark
+    public BaseDto joinOneByOne() {
+        BaseDto baseDto = new BaseDto();
+        for (String id : idList) {
+            baseDto.join(id);
+        }
+        return baseDto;
+    }
+
+    @Benchmark
+    public List<String> split() {
+        return new BaseDto(joinedId).split();
+    }
+}
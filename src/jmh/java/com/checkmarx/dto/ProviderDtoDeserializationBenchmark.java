@@ -0,0 +1,189 @@
+package com.checkmarx.dto;
+
+import com.checkmarx.dto.azure.RepoListAzureDto;
+import com.checkmarx.dto.azure.WebhookListAzureDto;
+import com.checkmarx.dto.bitbucket.RepoBitbucketListDto;
+import com.checkmarx.dto.bitbucket.WebhookBitbucketListDto;
+import com.checkmarx.dto.github.RepoGithubDto;
+import com.checkmarx.dto.github.WebhookGithubDto;
+import com.checkmarx.dto.gitlab.RepoGitlabDto;
+import com.checkmarx.dto.gitlab.WebhookGitLabDto;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson deserialization of a full page of each Scm repositories & webhooks apis into the
+ * provider DTOs, with the ObjectMapper defaults RestTemplate and WebClient use (unknown
+ * properties ignored). Pages hold the fields the Scms actually send, most of them unmapped.
+ * Allocation per page is reported by the gc profiler (gc.alloc.rate.norm):
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-f 1 -prof gc ProviderDtoDeserializationBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProviderDtoDeserializationBenchmark {
+
+    private static final String TIMESTAMP = "2021-01-01T00:00:00Z";
+    private static final String CX_FLOW_URL = "https://cxflow.example.com";
+
+    @Param({"github", "gitlab", "bitbucket", "azure"})
+    private String scm;
+
+    @Param({"repos", "hooks"})
+    private String page;
+
+    /**
+     * Page items, the Scms max page size
+     */
+    @Param({"100"})
+    private int items;
+
+    private ObjectReader reader;
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        boolean repos = "repos".equals(page);
+        Class<?> type;
+        StringBuilder body = new StringBuilder();
+        switch (scm) {
+            case "github":
+                type = repos ? RepoGithubDto[].class : WebhookGithubDto[].class;
+                body.append('[');
+                appendItems(body, repos ? this::appendGithubRepo : this::appendGithubHook);
+                body.append(']');
+                break;
+            case "gitlab":
+                type = repos ? RepoGitlabDto[].class : WebhookGitLabDto[].class;
+                body.append('[');
+                appendItems(body, repos ? this::appendGitlabRepo : this::appendGitlabHook);
+                body.append(']');
+                break;
+            case "bitbucket":
+                type = repos ? RepoBitbucketListDto.class : WebhookBitbucketListDto.class;
+                body.append("{\"pagelen\":").append(items).append(",\"values\":[");
+                appendItems(body, repos ? this::appendBitbucketRepo : this::appendBitbucketHook);
+                body.append("],\"page\":1,\"size\":").append(items * 3)
+                        .append(",\"next\":\"https://api.bitbucket.org/2.0/repositories/workspace?page=2\"}");
+                break;
+            default:
+                type = repos ? RepoListAzureDto.class : WebhookListAzureDto.class;
+                body.append("{\"count\":").append(items).append(",\"value\":[");
+                appendItems(body, repos ? this::appendAzureRepo : this::appendAzureHook);
+                body.append("]}");
+        }
+        reader = Jackson2ObjectMapperBuilder.json().build().readerFor(type);
+        json = body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+
+    private interface ItemWriter {
+        void append(StringBuilder body, int index);
+    }
+
+    private void appendItems(StringBuilder body, ItemWriter itemWriter) {
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            itemWriter.append(body, i);
+        }
+    }
+
+    private void appendGithubRepo(StringBuilder body, int i) {
+        body.append(String.format("{\"id\":%d,\"node_id\":\"MDEwOlJlcG9zaXRvcnk%d\",\"name\":\"repo-%d\","
+                + "\"full_name\":\"org/repo-%d\",\"private\":true,"
+                + "\"owner\":{\"login\":\"org\",\"id\":1,\"type\":\"Organization\",\"site_admin\":false},"
+                + "\"html_url\":\"https://github.com/org/repo-%d\",\"description\":\"Repository %d\","
+                + "\"fork\":false,\"url\":\"https://api.github.com/repos/org/repo-%d\","
+                + "\"hooks_url\":\"https://api.github.com/repos/org/repo-%d/hooks\",\"created_at\":\"%s\","
+                + "\"updated_at\":\"%s\",\"pushed_at\":\"%s\",\"size\":1024,\"stargazers_count\":3,"
+                + "\"language\":\"Java\",\"archived\":false,\"default_branch\":\"main\","
+                + "\"permissions\":{\"admin\":true,\"push\":true,\"pull\":true}}",
+                1000 + i, i, i, i, i, i, i, i, TIMESTAMP, TIMESTAMP, TIMESTAMP));
+    }
+
+    private void appendGithubHook(StringBuilder body, int i) {
+        body.append(String.format("{\"type\":\"Repository\",\"id\":%d,\"name\":\"web\",\"active\":true,"
+                + "\"events\":[\"push\",\"pull_request\"],\"config\":{\"content_type\":\"json\","
+                + "\"insecure_ssl\":\"0\",\"url\":\"%s\"},\"updated_at\":\"%s\",\"created_at\":\"%s\","
+                + "\"last_response\":{\"code\":200,\"status\":\"active\",\"message\":\"OK\"}}",
+                2000 + i, CX_FLOW_URL, TIMESTAMP, TIMESTAMP));
+    }
+
+    private void appendGitlabRepo(StringBuilder body, int i) {
+        body.append(String.format("{\"id\":%d,\"description\":null,\"name\":\"repo-%d\","
+                + "\"name_with_namespace\":\"group / repo-%d\",\"path\":\"repo-%d\","
+                + "\"path_with_namespace\":\"group/repo-%d\",\"created_at\":\"%s\",\"default_branch\":\"main\","
+                + "\"tag_list\":[],\"ssh_url_to_repo\":\"git@gitlab.com:group/repo-%d.git\","
+                + "\"http_url_to_repo\":\"https://gitlab.com/group/repo-%d.git\","
+                + "\"web_url\":\"https://gitlab.com/group/repo-%d\",\"star_count\":0,\"forks_count\":0,"
+                + "\"last_activity_at\":\"%s\",\"namespace\":{\"id\":7,\"name\":\"group\",\"path\":\"group\","
+                + "\"kind\":\"group\",\"full_path\":\"group\",\"parent_id\":null}}",
+                1000 + i, i, i, i, i, TIMESTAMP, i, i, i, TIMESTAMP));
+    }
+
+    private void appendGitlabHook(StringBuilder body, int i) {
+        body.append(String.format("{\"id\":%d,\"url\":\"%s\",\"created_at\":\"%s\",\"push_events\":true,"
+                + "\"tag_push_events\":false,\"merge_requests_events\":true,\"repository_update_events\":false,"
+                + "\"enable_ssl_verification\":true,\"project_id\":%d,\"issues_events\":false,"
+                + "\"confidential_issues_events\":false,\"note_events\":false,\"pipeline_events\":false,"
+                + "\"wiki_page_events\":false,\"job_events\":false,\"push_events_branch_filter\":null}",
+                2000 + i, CX_FLOW_URL, TIMESTAMP, 1000 + i));
+    }
+
+    private void appendBitbucketRepo(StringBuilder body, int i) {
+        body.append(String.format("{\"type\":\"repository\",\"full_name\":\"workspace/repo-%d\","
+                + "\"links\":{\"self\":{\"href\":\"https://api.bitbucket.org/2.0/repositories/workspace/repo-%d\"},"
+                + "\"html\":{\"href\":\"https://bitbucket.org/workspace/repo-%d\"}},\"name\":\"Repo %d\","
+                + "\"slug\":\"repo-%d\",\"uuid\":\"{%s}\",\"is_private\":true,\"created_on\":\"%s\","
+                + "\"updated_on\":\"%s\",\"size\":1024,\"language\":\"java\",\"has_issues\":false,"
+                + "\"mainbranch\":{\"type\":\"branch\",\"name\":\"main\"}}",
+                i, i, i, i, i, UUID.randomUUID(), TIMESTAMP, TIMESTAMP));
+    }
+
+    private void appendBitbucketHook(StringBuilder body, int i) {
+        body.append(String.format("{\"type\":\"webhook_subscription\",\"uuid\":\"{%s}\",\"url\":\"%s\","
+                + "\"description\":\"CxFlow\",\"subject_type\":\"repository\",\"active\":true,"
+                + "\"created_at\":\"%s\",\"events\":[\"repo:push\",\"pullrequest:created\","
+                + "\"pullrequest:updated\"]}",
+                UUID.randomUUID(), CX_FLOW_URL, TIMESTAMP));
+    }
+
+    private void appendAzureRepo(StringBuilder body, int i) {
+        UUID repoId = UUID.randomUUID();
+        body.append(String.format("{\"id\":\"%s\",\"name\":\"repo-%d\","
+                + "\"url\":\"https://dev.azure.com/org/project/_apis/git/repositories/%s\","
+                + "\"project\":{\"id\":\"%s\",\"name\":\"project\",\"state\":\"wellFormed\",\"revision\":11,"
+                + "\"visibility\":\"private\"},\"defaultBranch\":\"refs/heads/main\",\"size\":1024,"
+                + "\"remoteUrl\":\"https://org@dev.azure.com/org/project/_git/repo-%d\","
+                + "\"webUrl\":\"https://dev.azure.com/org/project/_git/repo-%d\",\"isDisabled\":false}",
+                repoId, i, repoId, UUID.randomUUID(), i, i));
+    }
+
+    private void appendAzureHook(StringBuilder body, int i) {
+        UUID hookId = UUID.randomUUID();
+        body.append(String.format("{\"id\":\"%s\","
+                + "\"url\":\"https://dev.azure.com/org/_apis/hooks/subscriptions/%s\",\"status\":\"enabled\","
+                + "\"publisherId\":\"tfs\",\"eventType\":\"git.push\",\"resourceVersion\":\"1.0\","
+                + "\"eventDescription\":\"Repository repo-%d\",\"consumerId\":\"webHooks\","
+                + "\"consumerActionId\":\"httpRequest\",\"actionDescription\":\"To host cxflow.example.com\","
+                + "\"createdBy\":{\"displayName\":\"CxFlow\",\"id\":\"%s\"},\"createdDate\":\"%s\","
+                + "\"modifiedDate\":\"%s\",\"publisherInputs\":{\"projectId\":\"%s\",\"repository\":\"%s\"},"
+                + "\"consumerInputs\":{\"url\":\"%s/ado/push\"}}",
+                hookId, hookId, i, UUID.randomUUID(), TIMESTAMP, TIMESTAMP, UUID.randomUUID(),
+                UUID.randomUUID(), CX_FLOW_URL));
+    }
+}
@@ -0,0 +1,81 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.azure.AzureWebhookDto;
+import com.checkmarx.dto.azure.PublisherInputs;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of organization CxFlow subscriptions to project repositories, through AzureHookIndex
+ * compared to the former per-project scan of all organization hooks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AzureHookIndexBenchmark {
+
+    private static final int EVENTS_PER_REPO = 3;
+
+    @Param({"1000", "10000"})
+    private int subscriptions;
+
+    @Param({"100", "500"})
+    private int projects;
+
+    private List<AzureWebhookDto> orgHooks;
+    private List<String> projectIds;
+
+    @Setup
+    public void setUp() {
+        projectIds = new ArrayList<>(projects);
+        for (int i = 0; i < projects; i++) {
+            projectIds.add(UUID.randomUUID().toString());
+        }
+        Random random = new Random(42);
+        orgHooks = new LinkedList<>();
+        for (int i = 0; i < subscriptions; i++) {
+            String projectId = projectIds.get(random.nextInt(projects));
+            // every 10th subscription is a project level one
+            String repoId = i % 10 == 0 ? "" : projectId + "-repo-" + (i / EVENTS_PER_REPO);
+            orgHooks.add(AzureWebhookDto.builder()
+                                 .id(UUID.randomUUID().toString())
+                                 .publisherInputs(new PublisherInputs(projectId, repoId))
+                                 .build());
+        }
+    }
+
+    @Benchmark
+    public void indexLookup(Blackhole blackhole) {
+        AzureHookIndex hookIndex = new AzureHookIndex(orgHooks);
+        for (String projectId : projectIds) {
+            blackhole.consume(hookIndex.getRepoHooks(projectId));
+        }
+    }
+
+    @Benchmark
+    public void perProjectScan(Blackhole blackhole) {
+        for (String projectId : projectIds) {
+            blackhole.consume(getHooksOnRepoLevel(orgHooks, projectId));
+        }
+    }
+
+    private static Map<String, List<String>> getHooksOnRepoLevel(List<AzureWebhookDto> organizationHooks,
+                                                                 String projectId) {
+        Map<String, List<String>> repoHooks = new HashMap<>();
+        organizationHooks.stream().forEach(projectHook -> {
+            if (projectHook.getProjectId().equals(projectId) && !StringUtils.isEmpty(projectHook.getRepositoryId())) {
+                if (repoHooks.get(projectHook.getRepositoryId()) == null) {
+                    repoHooks.put(projectHook.getRepositoryId(), new LinkedList<>());
+                }
+                repoHooks.get(projectHook.getRepositoryId()).add(projectHook.getHookId());
+            }
+        });
+        return repoHooks;
+    }
+}
@@ -0,0 +1,152 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.IRepoDto;
+import com.checkmarx.dto.azure.*;
+import com.checkmarx.dto.datastore.ScmAccessTokenDto;
+import com.checkmarx.utils.AccessTokenManager;
+import com.checkmarx.utils.RestOperation;
+import com.checkmarx.utils.RestWrapper;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Azure organization crawl without the network: CxFlow subscriptions filtering, indexing and
+ * mapping to each project repositories (composite repository & webhook ids, display names). Scm
+ * responses are served from memory, the repositories the crawl mutates are reset in place so the
+ * measured allocations are the mapping ones. Allocation per crawl is reported by the gc profiler
+ * (gc.alloc.rate.norm):
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-f 1 -prof gc AzureHookMappingBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AzureHookMappingBenchmark {
+
+    private static final String ORG_ID = "benchmark-org";
+    private static final String CX_FLOW_URL = "https://cxflow.example.com";
+    private static final List<AzureEvent> CX_FLOW_EVENTS = Arrays.asList(
+            AzureEvent.PUSH, AzureEvent.CREATE_PULL_REQEUST, AzureEvent.UPDATE_PULL_REQEUST);
+
+    @Param({"10", "100"})
+    private int projects;
+
+    @Param({"100"})
+    private int reposPerProject;
+
+    private AzureService azureService;
+    private AccessTokenManager accessTokenManager;
+
+    private AzureProjectsDto projectsDto;
+    private WebhookListAzureDto hooksDto;
+    private final Map<String, RepoListAzureDto> reposByProject = new HashMap<>();
+    private final Map<String, List<String[]>> repoIdsAndNamesByProject = new HashMap<>();
+
+    @Setup
+    public void setUp() {
+        List<RepoAzureDto> projectDtos = new ArrayList<>(projects);
+        List<AzureWebhookDto> hooks = new ArrayList<>();
+        for (int p = 0; p < projects; p++) {
+            String projectId = UUID.randomUUID().toString();
+            projectDtos.add(new RepoAzureDto(projectId, "project-" + p, null, false));
+            // a project level subscription, skipped by the mapping
+            hooks.add(createHook(projectId, "", CX_FLOW_URL, AzureEvent.PUSH));
+            List<RepoAzureDto> repoDtos = new ArrayList<>(reposPerProject);
+            List<String[]> idsAndNames = new ArrayList<>(reposPerProject);
+            for (int r = 0; r < reposPerProject; r++) {
+                String repoId = UUID.randomUUID().toString();
+                String repoName = "repo-" + r;
+                repoDtos.add(new RepoAzureDto(repoId, repoName, null, false));
+                idsAndNames.add(new String[]{repoId, repoName});
+                // every other repository has the CxFlow subscriptions, every 4th a third-party one
+                if (r % 2 == 0) {
+                    CX_FLOW_EVENTS.forEach(event -> hooks.add(createHook(projectId, repoId, CX_FLOW_URL, event)));
+                }
+                if (r % 4 == 0) {
+                    hooks.add(createHook(projectId, repoId, "https://ci.example.com/hooks", AzureEvent.PUSH));
+                }
+            }
+            RepoListAzureDto repoListDto = new RepoListAzureDto();
+            ReflectionTestUtils.setField(repoListDto, "value", repoDtos);
+            ReflectionTestUtils.setField(repoListDto, "count", reposPerProject);
+            reposByProject.put(projectId, repoListDto);
+            repoIdsAndNamesByProject.put(projectId, idsAndNames);
+        }
+        projectsDto = new AzureProjectsDto(projects, projectDtos);
+        hooksDto = new WebhookListAzureDto(hooks.size(), hooks);
+
+        ScmAccessTokenDto token = ScmAccessTokenDto.builder()
+                .scmUrl("azure.com")
+                .orgIdentity(ORG_ID)
+                .accessToken("{\"access_token\":\"benchmark-token\"}")
+                .build();
+        DataService dataService = (DataService) Proxy.newProxyInstance(
+                DataService.class.getClassLoader(), new Class<?>[]{DataService.class},
+                (proxy, method, args) -> method.getName().equals("getSCMOrgToken") ? token : null);
+        accessTokenManager = new AccessTokenManager("azure.com", ORG_ID, dataService);
+        accessTokenManager.getAccessTokenStr();
+
+        azureService = new AzureService(new InMemoryScm(), dataService, null, null, null);
+        ReflectionTestUtils.setField(azureService, "cxFlowUrl", CX_FLOW_URL);
+        ReflectionTestUtils.setField(azureService, "parallelProjectCrawl", false);
+    }
+
+    @Benchmark
+    public List<? extends IRepoDto> mapOrgHooks() {
+        return azureService.discoverOrgRepos(ORG_ID, accessTokenManager);
+    }
+
+    private static AzureWebhookDto createHook(String projectId, String repoId, String url, AzureEvent event) {
+        return AzureWebhookDto.builder()
+                .id(UUID.randomUUID().toString())
+                .status("enabled")
+                .eventType(event.getType())
+                .publisherInputs(new PublisherInputs(projectId, repoId))
+                .consumerInputs(AzureWebhookDto.ConsumerInputs.builder()
+                                        .url(String.format(event.getHookUrl(), url))
+                                        .build())
+                .build();
+    }
+
+    /**
+     * Serves the Azure projects, subscriptions and repositories apis from memory
+     */
+    private class InMemoryScm extends RestWrapper {
+
+        @Override
+        public ResponseEntity sendBearerAuthRequest(RestOperation operation, String path, HttpMethod method,
+                                                    Object body, Map<String, String> headerMap,
+                                                    Class responseType, String token) {
+            switch (operation.getName()) {
+                case "list-projects":
+                    return ResponseEntity.ok(projectsDto);
+                case "list-hooks":
+                    return ResponseEntity.ok(hooksDto);
+                default:
+                    String projectId = StringUtils.substringBetween(path, ORG_ID + "/", "/_apis");
+                    return ResponseEntity.ok(resetRepos(projectId));
+            }
+        }
+
+        private RepoListAzureDto resetRepos(String projectId) {
+            RepoListAzureDto repoListDto = reposByProject.get(projectId);
+            List<String[]> idsAndNames = repoIdsAndNamesByProject.get(projectId);
+            for (int i = 0; i < idsAndNames.size(); i++) {
+                RepoAzureDto repoDto = repoListDto.getRepos().get(i);
+                repoDto.setId(idsAndNames.get(i)[0]);
+                repoDto.setName(idsAndNames.get(i)[1]);
+                repoDto.setWebhookId(null);
+                repoDto.setWebHookEnabled(false);
+            }
+            return repoListDto;
+        }
+    }
+}
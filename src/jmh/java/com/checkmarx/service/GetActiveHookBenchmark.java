@@ -0,0 +1,93 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.IWebhookDto;
+import com.checkmarx.dto.bitbucket.WebhookBitbucketDto;
+import com.checkmarx.dto.github.WebhookGithubDto;
+import com.checkmarx.dto.gitlab.WebhookGitLabDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CxFlow webhook lookup among a repository webhooks, run once per repository by the crawls. The
+ * CxFlow webhook is the last one of the repository, the others are third-party webhooks.
+ * Allocation per lookup is reported by the gc profiler (gc.alloc.rate.norm):
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-f 1 -prof gc GetActiveHookBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GetActiveHookBenchmark {
+
+    private static final String CX_FLOW_URL = "https://cxflow.example.com";
+    private static final String THIRD_PARTY_URL = "https://ci.example.com/hooks/";
+
+    @Param({"github", "gitlab", "bitbucket"})
+    private String scm;
+
+    /**
+     * Webhooks of the repository
+     */
+    @Param({"1", "10", "50"})
+    private int hooks;
+
+    private AbstractScmService scmService;
+    private List<IWebhookDto> webhookDtos;
+
+    @Setup
+    public void setUp() {
+        switch (scm) {
+            case "github":
+                scmService = new GitHubService(null, null, null, null, null);
+                break;
+            case "gitlab":
+                scmService = new GitLabService(null, null, null, null, null);
+                break;
+            default:
+                scmService = new BitbucketService(null, null, null, null, null);
+        }
+        ReflectionTestUtils.setField(scmService, "cxFlowUrl", CX_FLOW_URL);
+        webhookDtos = new ArrayList<>(hooks);
+        for (int i = 1; i < hooks; i++) {
+            webhookDtos.add(createHook(String.valueOf(i), THIRD_PARTY_URL + i));
+        }
+        webhookDtos.add(createHook(String.valueOf(hooks), CX_FLOW_URL));
+    }
+
+    @Benchmark
+    public IWebhookDto getActiveHook() {
+        return scmService.getActiveHook(webhookDtos);
+    }
+
+    private IWebhookDto createHook(String id, String url) {
+        switch (scm) {
+            case "github":
+                return WebhookGithubDto.builder()
+                        .id(id)
+                        .active(true)
+                        .events(Arrays.asList("push", "pull_request"))
+                        .config(WebhookGithubDto.Config.builder().url(url).contentType("json").build())
+                        .build();
+            case "gitlab":
+                return WebhookGitLabDto.builder()
+                        .id(id)
+                        .url(url)
+                        .pushEvents(true)
+                        .mergeRequestsEvents(true)
+                        .build();
+            default:
+                return WebhookBitbucketDto.builder()
+                        .uuid("{" + id + "}")
+                        .url(url)
+                        .active(true)
+                        .events(Arrays.asList("repo:push", "pullrequest:created", "pullrequest:updated"))
+                        .build();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.checkmarx.service;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.checkmarx.dto.datastore.ScmAccessTokenDto;
+import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.utils.AccessTokenCache;
+import com.checkmarx.utils.FanOutExecutor;
+import com.checkmarx.utils.RestMetrics;
+import com.checkmarx.utils.RestWrapper;
+import com.checkmarx.utils.Traces;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * GitHub repositories & webhooks discovery, REST engine compared to GraphQL engine, against a
+ * local stub server answering both apis with a fixed latency per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class GitHubDiscoveryBenchmark {
+
+    private static final String ORG_ID = "benchmark-org";
+    private static final int PAGE_SIZE = 100;
+    private static final Pattern PAGE_PARAM = Pattern.compile("[?&]page=(\\d+)");
+    private static final Pattern CURSOR_VARIABLE = Pattern.compile("\"cursor\"\\s*:\\s*\"(\\d+)\"");
+
+    @Param({"rest", "graphql"})
+    private String engine;
+
+    @Param({"1000"})
+    private int repos;
+
+    /**
+     * Every adminEvery-th repository is administrated by the user, REST gets 404 on the others
+     */
+    @Param({"1", "5"})
+    private int adminEvery;
+
+    @Param({"5"})
+    private int latencyMillis;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExecutorService fanOutPool;
+    private GitHubService gitHubService;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Scm requests issued by the measured discoveries, reported next to the discovery time
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ScmRequests {
+        public long discoveries;
+        public long scmRequests;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        // avoid delayed-ACK stalls on the stub keep-alive connections
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        serverExecutor = Executors.newFixedThreadPool(64);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+        String stubBaseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(
+                HttpClients.custom().setMaxConnTotal(200).setMaxConnPerRoute(50).build()));
+        restTemplate.getInterceptors().add((request, body, execution) ->
+                execution.execute(redirectToStub(request, stubBaseUrl), body));
+        RestWrapper restWrapper = new RestWrapper();
+        ReflectionTestUtils.setField(restWrapper, "restTemplate", restTemplate);
+        ReflectionTestUtils.setField(restWrapper, "restMetrics", new RestMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(restWrapper, "tracer", Traces.NOOP_TRACER);
+
+        ScmAccessTokenDto token = ScmAccessTokenDto.builder()
+                .scmUrl("github.com")
+                .orgIdentity(ORG_ID)
+                .accessToken("{\"access_token\":\"benchmark-token\"}")
+                .build();
+        DataService dataService = (DataService) Proxy.newProxyInstance(
+                DataService.class.getClassLoader(), new Class<?>[]{DataService.class},
+                (proxy, method, args) -> method.getName().equals("getSCMOrgToken") ? token : null);
+
+        fanOutPool = Executors.newFixedThreadPool(32);
+        gitHubService = new GitHubService(restWrapper, dataService,
+                                          new FanOutExecutor(fanOutPool, 8),
+                                          new AccessTokenCache(dataService, new SimpleMeterRegistry(), 300, 10),
+                                          null);
+        ReflectionTestUtils.setField(gitHubService, "discoveryEngine", engine);
+        ReflectionTestUtils.setField(gitHubService, "cxFlowUrl", "http://cxflow.local");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        fanOutPool.shutdownNow();
+    }
+
+    @Benchmark
+    public List<RepoWebDto> discover(ScmRequests counters) {
+        long requestsBefore = requests.get();
+        List<RepoWebDto> repoDtos = gitHubService.getScmOrgRepos(ORG_ID);
+        counters.discoveries++;
+        counters.scmRequests += requests.get() - requestsBefore;
+        return repoDtos;
+    }
+
+    private static HttpRequest redirectToStub(HttpRequest request, String stubBaseUrl) {
+        return new HttpRequestWrapper(request) {
+            @Override
+            public URI getURI() {
+                URI uri = super.getURI();
+                if (!"api.github.com".equals(uri.getHost())) {
+                    return uri;
+                }
+                return URI.create(stubBaseUrl + uri.getRawPath()
+                                          + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+            }
+        };
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (path.equals("/graphql")) {
+            respond(exchange, 200, graphQlPage(readBody(exchange)), null);
+        } else if (path.startsWith("/orgs/")) {
+            int page = matchInt(PAGE_PARAM, "?" + query, 1);
+            String next = page * PAGE_SIZE < repos
+                    ? String.format("<http://localhost:%d%s?type=all&per_page=%d&page=%d>; rel=\"next\"",
+                                    server.getAddress().getPort(), path, PAGE_SIZE, page + 1)
+                    : null;
+            respond(exchange, 200, restPage(page), next);
+        } else if (path.endsWith("/hooks")) {
+            int repoIndex = Integer.parseInt(path.split("/")[3].substring("repo-".length()));
+            if (isAdmin(repoIndex)) {
+                respond(exchange, 200, "[]", null);
+            } else {
+                respond(exchange, 404, "{\"message\":\"Not Found\"}", null);
+            }
+        } else {
+            respond(exchange, 404, "{}", null);
+        }
+    }
+
+    private String restPage(int page) {
+        return pageRange(page - 1).mapToObj(i -> "{\"name\":\"repo-" + i + "\"}")
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private String graphQlPage(String requestBody) {
+        int cursor = matchInt(CURSOR_VARIABLE, requestBody, 0);
+        String nodes = pageRange(cursor).mapToObj(i -> String.format(
+                "{\"name\":\"repo-%d\",\"viewerPermission\":\"%s\"}", i, isAdmin(i) ? "ADMIN" : "WRITE"))
+                .collect(Collectors.joining(","));
+        boolean hasNextPage = (cursor + 1) * PAGE_SIZE < repos;
+        return String.format("{\"data\":{\"organization\":{\"repositories\":{\"pageInfo\":" +
+                                     "{\"hasNextPage\":%b,\"endCursor\":\"%d\"},\"nodes\":[%s]}}}}",
+                             hasNextPage, cursor + 1, nodes);
+    }
+
+    private IntStream pageRange(int pageIndex) {
+        return IntStream.range(pageIndex * PAGE_SIZE, Math.min(repos, (pageIndex + 1) * PAGE_SIZE));
+    }
+
+    private boolean isAdmin(int repoIndex) {
+        return repoIndex % adminEvery == 0;
+    }
+
+    private static int matchInt(Pattern pattern, String input, int defaultValue) {
+        Matcher matcher = pattern.matcher(input);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            StringBuilder result = new StringBuilder();
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                result.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            }
+            return result.toString();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body, String link)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (link != null) {
+            exchange.getResponseHeaders().add("Link", link);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.checkmarx.utils;
+
+import com.checkmarx.dto.AccessTokenDto;
+import com.checkmarx.dto.azure.AccessTokenAzureDto;
+import com.checkmarx.dto.bitbucket.AccessTokenBitbucketDto;
+import com.checkmarx.dto.datastore.ScmAccessTokenDto;
+import com.checkmarx.dto.github.AccessTokenGithubDto;
+import com.checkmarx.dto.gitlab.AccessTokenGitlabDto;
+import com.checkmarx.service.DataService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token (de)serialization through the shared ObjectMapper readers/writers of AccessTokenManager,
+ * compared to the former ObjectMapper-per-call implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AccessTokenManagerBenchmark {
+
+    private static final String ORG_ID = "benchmark-org";
+
+    @Param({"github", "gitlab", "bitbucket", "azure"})
+    private String scm;
+
+    private Class<?> tokenClass;
+    private Object token;
+    private String tokenJson;
+    private DataService dataService;
+
+    @Setup
+    public void setUp() {
+        switch (scm) {
+            case "github":
+                tokenClass = AccessTokenGithubDto.class;
+                token = new AccessTokenGithubDto("repo,admin:repo_hook", "bearer");
+                break;
+            case "gitlab":
+                tokenClass = AccessTokenGitlabDto.class;
+                token = new AccessTokenGitlabDto("bearer", "refresh-token", "api", 1609459200);
+                break;
+            case "bitbucket":
+                tokenClass = AccessTokenBitbucketDto.class;
+                token = new AccessTokenBitbucketDto("repository", 7200, "bearer", "state", "refresh-token");
+                break;
+            default:
+                tokenClass = AccessTokenAzureDto.class;
+                token = new AccessTokenAzureDto("jwt-bearer", "refresh-token", "vso.code_full", 3599);
+        }
+        ((AccessTokenDto) token).setAccessToken("a1b2c3d4e5f6a1b2c3d4e5f6a1b2c3d4e5f6a1b2");
+        tokenJson = AccessTokenManager.convertObjectToJson(token);
+
+        ScmAccessTokenDto scmAccessTokenDto = ScmAccessTokenDto.builder()
+                .scmUrl(scm)
+                .orgIdentity(ORG_ID)
+                .accessToken(tokenJson)
+                .build();
+        dataService = (DataService) Proxy.newProxyInstance(DataService.class.getClassLoader(),
+                new Class<?>[]{DataService.class}, (proxy, method, args) -> scmAccessTokenDto);
+    }
+
+    @Benchmark
+    public void parseSharedReaders(Blackhole blackhole) {
+        AccessTokenManager accessTokenManager = new AccessTokenManager(scm, ORG_ID, dataService);
+        blackhole.consume(accessTokenManager.getAccessTokenStr());
+        blackhole.consume(accessTokenManager.getFullAccessToken(tokenClass));
+    }
+
+    @Benchmark
+    public void parseObjectMapperPerCall(Blackhole blackhole) throws JsonProcessingException {
+        ObjectMapper accessTokenMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        blackhole.consume(accessTokenMapper.readValue(tokenJson, AccessTokenDto.class).getAccessToken());
+        blackhole.consume(new ObjectMapper().readValue(tokenJson, tokenClass));
+    }
+
+    @Benchmark
+    public String serializeSharedWriters() {
+        return AccessTokenManager.convertObjectToJson(token);
+    }
+
+    @Benchmark
+    public String serializeObjectMapperPerCall() throws JsonProcessingException {
+        return new ObjectMapper().writeValueAsString(token);
+    }
+}
@@ -0,0 +1,54 @@
+package com.checkmarx.utils;
+
+import com.checkmarx.dto.datastore.OrgReposDto;
+import com.checkmarx.dto.datastore.ScmAccessTokenDto;
+import com.checkmarx.dto.github.RepoGithubDto;
+import com.checkmarx.dto.web.RepoWebDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of a large organization repositories to the DataStore & web structures, done once
+ * per crawl. Allocation per conversion is reported by the gc profiler (gc.alloc.rate.norm):
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="-f 1 -prof gc ConverterBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConverterBenchmark {
+
+    @Param({"10000", "100000"})
+    private int repos;
+
+    private ScmAccessTokenDto scmAccessTokenDto;
+    private List<RepoGithubDto> repoDtos;
+
+    @Setup
+    public void setUp() {
+        scmAccessTokenDto = ScmAccessTokenDto.builder()
+                .scmUrl("github.com")
+                .orgIdentity("benchmark-org")
+                .build();
+        repoDtos = new ArrayList<>(repos);
+        for (int i = 0; i < repos; i++) {
+            // every 3rd repository has the CxFlow webhook
+            boolean hooked = i % 3 == 0;
+            repoDtos.add(new RepoGithubDto("repo-" + i, hooked ? String.valueOf(100000 + i) : null, hooked));
+        }
+    }
+
+    @Benchmark
+    public OrgReposDto convertToOrgRepoDto() {
+        return Converter.convertToOrgRepoDto(scmAccessTokenDto, repoDtos);
+    }
+
+    @Benchmark
+    public List<RepoWebDto> convertToListRepoWebDto() {
+        return Converter.convertToListRepoWebDto(repoDtos);
+    }
+}
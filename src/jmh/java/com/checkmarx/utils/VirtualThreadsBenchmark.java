@@ -0,0 +1,99 @@
+package com.checkmarx.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Concurrent get repositories requests of distinct organizations, each one fanning out a blocking
+ * webhook lookup per repository, handled on platform threads (Tomcat default pool size & fan-out
+ * pool of scm.fan.out.parallelism threads) compared to virtual threads. Virtual mode needs JDK 21:
+ * mvn -Pbenchmark,jdk21 test-compile exec:exec -Djmh.args="-f 1 VirtualThreadsBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class VirtualThreadsBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int FAN_OUT_PARALLELISM = 32;
+    private static final int ORG_CONCURRENCY = 8;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    /**
+     * Concurrent requests, one organization each
+     */
+    @Param({"50", "200"})
+    private int requests;
+
+    @Param({"20"})
+    private int reposPerOrg;
+
+    /**
+     * Scm webhook lookup latency
+     */
+    @Param({"10"})
+    private int latencyMillis;
+
+    private ExecutorService requestExecutor;
+    private ExecutorService fanOutPool;
+    private FanOutExecutor fanOutExecutor;
+    private List<Integer> repos;
+
+    @Setup
+    public void setUp() {
+        if ("virtual".equals(threads)) {
+            requestExecutor = VirtualThreads.newThreadPerTaskExecutor("http-handler-");
+            fanOutPool = VirtualThreads.newThreadPerTaskExecutor("scm-fan-out-");
+        } else {
+            requestExecutor = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS,
+                                                           new CustomizableThreadFactory("http-handler-"));
+            fanOutPool = Executors.newFixedThreadPool(FAN_OUT_PARALLELISM,
+                                                      new CustomizableThreadFactory("scm-fan-out-"));
+        }
+        fanOutExecutor = new FanOutExecutor(fanOutPool, ORG_CONCURRENCY);
+        repos = IntStream.range(0, reposPerOrg).boxed().collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestExecutor.shutdownNow();
+        fanOutPool.shutdownNow();
+    }
+
+    @Benchmark
+    public int concurrentGetRepos() throws ExecutionException, InterruptedException {
+        List<Future<List<Integer>>> responses = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            String orgKey = "github.com/org-" + i;
+            responses.add(requestExecutor.submit(() -> fanOutExecutor.map(orgKey, repos, this::lookupWebhook)));
+        }
+        int discovered = 0;
+        for (Future<List<Integer>> response : responses) {
+            discovered += response.get().size();
+        }
+        return discovered;
+    }
+
+    private Integer lookupWebhook(Integer repo) {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return repo;
+    }
+}
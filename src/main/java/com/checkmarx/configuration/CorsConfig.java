@@ -2,6 +2,7 @@ package com.checkmarx.configuration;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -20,6 +21,8 @@ public class CorsConfig implements WebMvcConfigurer {
                 .allowedOrigins("http://" + frontEndDomain +":" + frontEndPort,
                                 "https://" + frontEndDomain +":" + frontEndPort)
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS")
+                //repositories list freshness, shown by FE application
+                .exposedHeaders(HttpHeaders.LAST_MODIFIED)
         ;
     }
 }
\ No newline at end of file
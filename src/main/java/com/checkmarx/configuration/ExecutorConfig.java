@@ -0,0 +1,97 @@
+package com.checkmarx.configuration;
+
+import com.checkmarx.utils.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.util.ServerInfo;
+import org.apache.tomcat.util.net.SocketWrapperBase;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${scm.fan.out.parallelism}")
+    private int fanOutParallelism;
+
+    @Value("${repos.snapshot.refresh.parallelism}")
+    private int snapshotRefreshParallelism;
+
+    @Value("${threads.virtual.enabled}")
+    private boolean virtualThreadsEnabled;
+
+    /**
+     * scmFanOutExecutorService bean used to run per-repository Scm calls (webhook lookups etc.)
+     * concurrently, shared by all organizations
+     *
+     * @return fixed size thread pool, size taken from scm.fan.out.parallelism property, or a
+     * virtual thread per call when threads.virtual.enabled is set (calls are then bounded by the
+     * per-organization concurrency and the http client pool only)
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService scmFanOutExecutorService() {
+        if (useVirtualThreads()) {
+            return VirtualThreads.newThreadPerTaskExecutor("scm-fan-out-");
+        }
+        return Executors.newFixedThreadPool(fanOutParallelism,
+                                            new CustomizableThreadFactory("scm-fan-out-"));
+    }
+
+    /**
+     * repoSnapshotRefreshExecutorService bean used to rebuild stale organization repositories
+     * snapshots in the background, kept apart from the fan-out pool the rebuild itself uses
+     *
+     * @return fixed size thread pool, size taken from repos.snapshot.refresh.parallelism property
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService repoSnapshotRefreshExecutorService() {
+        return Executors.newFixedThreadPool(snapshotRefreshParallelism,
+                                            new CustomizableThreadFactory("repo-snapshot-refresh-"));
+    }
+
+    /**
+     * virtualThreadsProtocolHandlerCustomizer bean makes Tomcat handle each request on a new
+     * virtual thread when threads.virtual.enabled is set, Tomcat own pool is used otherwise.
+     * Tomcat versions processing requests within synchronized blocks (before 9.0.8x) keep their
+     * own pool, a pinned request thread waiting for its fan-out could starve the virtual threads
+     * carriers
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (!useVirtualThreads()) {
+                return;
+            }
+            if (!isTomcatLockBased()) {
+                log.warn("Tomcat {} pins virtual threads, request handling stays on platform threads",
+                         ServerInfo.getServerNumber());
+                return;
+            }
+            protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("http-handler-"));
+        };
+    }
+
+    private static boolean isTomcatLockBased() {
+        try {
+            SocketWrapperBase.class.getMethod("getLock");
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private boolean useVirtualThreads() {
+        if (virtualThreadsEnabled && !VirtualThreads.isSupported()) {
+            log.warn("threads.virtual.enabled is set but running on Java {}, using platform threads",
+                     System.getProperty("java.version"));
+            return false;
+        }
+        return virtualThreadsEnabled;
+    }
+}
@@ -1,15 +1,76 @@
 package com.checkmarx.configuration;
 
+import com.checkmarx.utils.ConditionalRequestInterceptor;
+import com.checkmarx.utils.RateLimitInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class RestTemplateConfig {
 
+    @Value("${http.client.max.connections}")
+    private int maxConnections;
+
+    @Value("${http.client.max.connections.per.host}")
+    private int maxConnectionsPerHost;
+
+    @Value("${http.client.connect.timeout}")
+    private int connectTimeout;
+
+    @Value("${http.client.read.timeout}")
+    private int readTimeout;
+
+    @Value("${http.client.connection.request.timeout}")
+    private int connectionRequestTimeout;
+
+    @Value("${http.client.idle.eviction}")
+    private long idleEviction;
+
+    /**
+     * httpClient bean used by all outbound calls (Scms and DataStore), keeps connections alive in
+     * a pool so TLS handshakes are paid once per connection instead of once per request
+     *
+     * @return pooled http client, closed together with the application context
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEviction, TimeUnit.SECONDS)
+                .build();
+    }
+
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder) {
-        return restTemplateBuilder.build();
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder, HttpClient httpClient,
+                                     ConditionalRequestInterceptor conditionalRequestInterceptor,
+                                     RateLimitInterceptor rateLimitInterceptor) {
+        return restTemplateBuilder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+                //rate limit interceptor must stay last, its retries re-execute the request only
+                .additionalInterceptors(conditionalRequestInterceptor, rateLimitInterceptor)
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package com.checkmarx.configuration;
+
+import com.checkmarx.utils.JsonFileSpanExporter;
+import com.checkmarx.utils.Traces;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+@Slf4j
+@Configuration
+public class TracingConfig {
+
+    private static final String LOG_EXPORTER = "log";
+    private static final String FILE_EXPORTER = "file";
+    private static final String SERVICE_NAME = "cx-integrations-repos-manager";
+
+    @Value("${tracing.enabled}")
+    private boolean enabled;
+
+    @Value("${tracing.sampler.ratio}")
+    private double samplerRatio;
+
+    @Value("${tracing.exporter}")
+    private String exporter;
+
+    @Value("${tracing.exporter.file}")
+    private String exporterFile;
+
+    /**
+     * openTelemetry bean creates the spans of incoming requests, Scm crawl phases and outbound
+     * calls. A trace is sampled when it starts, tracing.sampler.ratio of the traces are kept and
+     * their spans are exported in batches to the log or to tracing.exporter.file
+     *
+     * @return OpenTelemetry sdk, closed with the application context so pending spans are
+     * exported, no-op implementation when tracing.enabled isn't set
+     */
+    @Bean
+    public OpenTelemetry openTelemetry() {
+        if (!enabled) {
+            return OpenTelemetry.noop();
+        }
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(Resource.create(
+                        Attributes.builder().put("service.name", SERVICE_NAME).build())))
+                .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(samplerRatio)))
+                .addSpanProcessor(BatchSpanProcessor.builder(createExporter()).build())
+                .build();
+        log.info("Tracing enabled, sampling ratio: {}, exporter: {}", samplerRatio, exporter);
+        return OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build();
+    }
+
+    @Bean
+    public Tracer tracer(OpenTelemetry openTelemetry) {
+        return openTelemetry.getTracer(Traces.INSTRUMENTATION_NAME);
+    }
+
+    private SpanExporter createExporter() {
+        switch (exporter.trim()) {
+            case LOG_EXPORTER:
+                return LoggingSpanExporter.create();
+            case FILE_EXPORTER:
+                try {
+                    return new JsonFileSpanExporter(Paths.get(exporterFile.trim()));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Can't open tracing.exporter.file: " + exporterFile, ex);
+                }
+            default:
+                throw new IllegalArgumentException("Unsupported tracing.exporter: " + exporter
+                                                           + ", expected " + LOG_EXPORTER + " or " + FILE_EXPORTER);
+        }
+    }
+}
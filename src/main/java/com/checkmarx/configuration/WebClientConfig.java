@@ -0,0 +1,64 @@
+package com.checkmarx.configuration;
+
+import com.checkmarx.utils.RateLimitFilter;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+@Configuration
+public class WebClientConfig {
+
+    @Value("${http.client.max.connections}")
+    private int maxConnections;
+
+    @Value("${http.client.connect.timeout}")
+    private int connectTimeout;
+
+    @Value("${http.client.read.timeout}")
+    private int readTimeout;
+
+    @Value("${http.client.connection.request.timeout}")
+    private int connectionRequestTimeout;
+
+    @Value("${http.client.idle.eviction}")
+    private long idleEviction;
+
+    /**
+     * scmConnectionProvider bean keeps the non-blocking Scm calls connections alive in a pool,
+     * sized and timed out like the blocking http client pool
+     *
+     * @return connection pool, disposed together with the application context
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider scmConnectionProvider() {
+        return ConnectionProvider.builder("scm")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(connectionRequestTimeout))
+                .maxIdleTime(Duration.ofSeconds(idleEviction))
+                .build();
+    }
+
+    /**
+     * webClient bean used by the reactive Scm services flavor, requests are served by a handful
+     * of event loop threads instead of a thread per in-flight request. Calls are scheduled by the
+     * same rate limit budgets as the blocking ones
+     */
+    @Bean
+    public WebClient webClient(WebClient.Builder webClientBuilder, ConnectionProvider scmConnectionProvider,
+                               RateLimitFilter rateLimitFilter) {
+        HttpClient httpClient = HttpClient.create(scmConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                .responseTimeout(Duration.ofMillis(readTimeout));
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(rateLimitFilter)
+                .build();
+    }
+}
@@ -0,0 +1,127 @@
+package com.checkmarx.controller;
+
+import com.checkmarx.dto.BaseDto;
+import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.service.ReactiveScmService;
+import com.checkmarx.service.RepoSnapshotService;
+import com.checkmarx.service.ScmService;
+import com.checkmarx.utils.Traces;
+import io.opentelemetry.context.Context;
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.validation.constraints.Pattern;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static com.checkmarx.controller.WebController.VALIDATION_REGEX;
+
+/**
+ * AsyncWebController exposes the Scm calls heavy apis of WebController without holding a servlet
+ * thread while the Scm answers. Scms implementing ReactiveScmService are called via WebClient, the
+ * others are called through their blocking flavor on a bounded elastic scheduler.
+ */
+@Slf4j
+@RestController
+@RequestMapping(value = "/async")
+@Validated
+public class AsyncWebController {
+
+    @Autowired
+    ApplicationContext applicationContext;
+
+    @Autowired
+    RepoSnapshotService repoSnapshotService;
+
+    /**
+     * @param scmType Given Scm to handle
+     * @param orgId organization name used to retrieve the relevant repositories
+     * @return Mono of ResponseEntity with http status:200, Body: all organization repositories
+     *         (public and private), freshly fetched from the Scm
+     */
+    @Operation(summary = "Non-blocking rest api used to get for specific organization all repositories (private and public)")
+    @GetMapping(value = "/{scmType}/orgs/{orgId}/repos")
+    public Mono<ResponseEntity<List<RepoWebDto>>> getOrganizationRepositories(@PathVariable String scmType,
+                                                                              @PathVariable @Pattern(regexp = VALIDATION_REGEX) String orgId) {
+        log.trace("getOrganizationRepositoriesAsync: scmType={}, orgId={}", scmType, orgId);
+        ScmService scmService = getScmService(scmType);
+        Mono<List<RepoWebDto>> repos = scmService instanceof ReactiveScmService
+                ? ((ReactiveScmService) scmService).getScmOrgReposAsync(orgId)
+                : fromBlocking(() -> scmService.getScmOrgRepos(orgId));
+        return Traces.withCurrentParent(repos.map(repoWebDtos -> {
+            log.info("Return Scm: {} Organization: {} repositories: {}", scmType, orgId, repoWebDtos);
+            return ResponseEntity.ok(repoWebDtos);
+        }));
+    }
+
+    /**
+     * @param scmType Given Scm to handle
+     * @param orgId organization name
+     * @param repoId repository name to create webhook
+     * @return Mono of ResponseEntity with http status:200, Body: webhook id
+     */
+    @Operation(summary = "Non-blocking rest api used to create webhook for given scm organization repository")
+    @PostMapping(value = "/{scmType}/orgs/{orgId}/repos/{repoId}/webhooks")
+    public Mono<ResponseEntity<BaseDto>> createWebhook(@PathVariable String scmType,
+                                                       @PathVariable @Pattern(regexp = VALIDATION_REGEX) String orgId,
+                                                       @PathVariable @Pattern(regexp = VALIDATION_REGEX) String repoId) {
+        log.trace("createWebhookAsync: scmType={}, orgId={}, repoName={}", scmType, orgId, repoId);
+        ScmService scmService = getScmService(scmType);
+        Mono<BaseDto> webhookId = scmService instanceof ReactiveScmService
+                ? ((ReactiveScmService) scmService).createWebhookAsync(orgId, repoId)
+                : fromBlocking(() -> scmService.createWebhook(orgId, repoId));
+        return Traces.withCurrentParent(webhookId.map(baseDto -> {
+            repoSnapshotService.invalidate(scmService, orgId);
+            log.info("{} CXFlow Webhook created successfully!", repoId);
+            return ResponseEntity.ok(baseDto);
+        }));
+    }
+
+    /**
+     * @param scmType Given Scm to handle
+     * @param orgId organization name
+     * @param repoId repository name
+     * @param webhookId webhook id
+     * @return Mono of ResponseEntity with http status:200
+     */
+    @Operation(summary = "Non-blocking rest api used to delete webhook from given scm organization repository")
+    @DeleteMapping(value = "/{scmType}/orgs/{orgId}/repos/{repoId}/webhooks/{webhookId}")
+    public Mono<ResponseEntity<Void>> deleteWebhook(@PathVariable String scmType,
+                                                    @PathVariable @Pattern(regexp = VALIDATION_REGEX) String orgId,
+                                                    @PathVariable @Pattern(regexp = VALIDATION_REGEX) String repoId,
+                                                    @PathVariable @Pattern(regexp = VALIDATION_REGEX) String webhookId) {
+        log.trace("deleteWebhookAsync: scmType={}, orgId={}, repoId={}, webhookId={}", scmType, orgId,
+                  repoId, webhookId);
+        ScmService scmService = getScmService(scmType);
+        Mono<Void> deletion = scmService instanceof ReactiveScmService
+                ? ((ReactiveScmService) scmService).deleteWebhookAsync(orgId, repoId, webhookId)
+                : fromBlocking(() -> {
+                    scmService.deleteWebhook(orgId, repoId, webhookId);
+                    return null;
+                });
+        return Traces.withCurrentParent(deletion.then(Mono.fromCallable(() -> {
+            repoSnapshotService.invalidate(scmService, orgId);
+            log.info("{} CXFlow Webhook removed successfully!", repoId);
+            return ResponseEntity.ok().build();
+        })));
+    }
+
+    /**
+     * fromBlocking method runs the blocking call on a bounded elastic scheduler, within the
+     * request trace context
+     */
+    private static <T> Mono<T> fromBlocking(Callable<T> call) {
+        return Mono.fromCallable(Context.current().wrap(call)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private ScmService getScmService(String scmName) {
+        return (ScmService) applicationContext.getBean(scmName);
+    }
+}
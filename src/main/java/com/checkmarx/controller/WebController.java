@@ -1,21 +1,34 @@
 package com.checkmarx.controller;
 
+import com.checkmarx.controller.exception.ScmException;
 import com.checkmarx.dto.BaseDto;
+import com.checkmarx.dto.RepoEventDto;
 import com.checkmarx.dto.cxflow.CxFlowConfigDto;
 import com.checkmarx.dto.web.OrgSettingsWebDto;
 import com.checkmarx.dto.web.OrganizationWebDto;
 import com.checkmarx.dto.web.RepoWebDto;
 import com.checkmarx.dto.web.ScmConfigWebDto;
+import com.checkmarx.dto.web.WebhookWebDto;
 import com.checkmarx.service.ConfigurationService;
+import com.checkmarx.service.RepoEventService;
+import com.checkmarx.service.RepoSnapshotService;
+import com.checkmarx.service.RepoSnapshotService.RepoSnapshot;
+import com.checkmarx.service.ScmEventSource;
 import com.checkmarx.service.ScmService;
+import com.checkmarx.utils.RestWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import javax.validation.constraints.Pattern;
+import java.io.IOException;
 import java.util.List;
 
 @Slf4j
@@ -30,8 +43,17 @@ public class WebController {
     @Autowired
     ConfigurationService genericScmService;
 
+    @Autowired
+    RepoSnapshotService repoSnapshotService;
+
+    @Autowired
+    RepoEventService repoEventService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
     //no special character regex validation
-    private static final String VALIDATION_REGEX = "^[^`~!@#$%^&*+={}:;<>?๐฿]*$";
+    static final String VALIDATION_REGEX = "^[^`~!@#$%^&*+={}:;<>?๐฿]*$";
 
     /**
      * @param scmType Given Scm to handle
@@ -73,17 +95,19 @@ public class WebController {
      * @param scmType Given Scm to handle
      * @param orgId organization name used to retrieve the relevant repositories
      * @return ResponseEntity with http status:200, Body: all organization repositories (public
-     *         and private)
+     *         and private), Last-Modified header: time the repositories were fetched from the Scm
      */
     @Operation(summary = "Rest api used to get for specific organization all repositories (private and public)")
     @GetMapping(value = "/{scmType}/orgs/{orgId}/repos")
     public ResponseEntity<List<RepoWebDto>> getOrganizationRepositories(@PathVariable String scmType,
                                                                         @PathVariable @Pattern(regexp = VALIDATION_REGEX) String orgId) {
         log.trace("getOrganizationRepositories: scmType={}, orgId={}", scmType, orgId);
-        List<RepoWebDto> repoWebDtos = getScmService(scmType).getScmOrgRepos(orgId);
-        log.info("Return Scm: {} Organization: {} repositories: {}", scmType, orgId,
-                 repoWebDtos);
-        return ResponseEntity.ok(repoWebDtos);
+        RepoSnapshot snapshot = repoSnapshotService.getScmOrgRepos(getScmService(scmType), orgId);
+        log.info("Return Scm: {} Organization: {} repositories fetched at {}: {}", scmType, orgId,
+                 snapshot.getFetchedAt(), snapshot.getRepos());
+        return ResponseEntity.ok()
+                .lastModified(snapshot.getFetchedAt())
+                .body(snapshot.getRepos());
     }
 
     /**
@@ -99,6 +123,7 @@ public class WebController {
                                         @PathVariable @Pattern(regexp = VALIDATION_REGEX) String repoId) {
         log.trace("createWebhook: scmType={}, orgId={}, repoName={}", scmType, orgId, repoId);
         BaseDto webhookId = getScmService(scmType).createWebhook(orgId, repoId);
+        repoSnapshotService.invalidate(getScmService(scmType), orgId);
         log.info("{} CXFlow Webhook created successfully!",repoId);
         return ResponseEntity.ok(webhookId);
     }
@@ -119,10 +144,49 @@ public class WebController {
         log.trace("deleteWebhook: scmType={}, repoId={}, repoId={}, webhookId={}",scmType, orgId,
                 repoId, webhookId);
         getScmService(scmType).deleteWebhook(orgId, repoId, webhookId);
+        repoSnapshotService.invalidate(getScmService(scmType), orgId);
         log.info("{} CXFlow Webhook removed successfully!",repoId);
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * @param scmType Given Scm to handle
+     * @param orgId organization name
+     * @param repoIds repositories names to create webhook on
+     * @return ResponseEntity with http status:200, Body: per repository result & webhook id
+     */
+    @Operation(summary = "Rest api used to create webhooks for list of given scm organization repositories")
+    @PostMapping(value = "/{scmType}/orgs/{orgId}/webhooks")
+    public ResponseEntity<List<WebhookWebDto>> createWebhooks(@PathVariable String scmType,
+                                                              @PathVariable @Pattern(regexp = VALIDATION_REGEX) String orgId,
+                                                              @RequestBody List<@Pattern(regexp = VALIDATION_REGEX) String> repoIds) {
+        log.trace("createWebhooks: scmType={}, orgId={}, repoIds={}", scmType, orgId, repoIds);
+        List<WebhookWebDto> results = getScmService(scmType).createWebhooks(orgId, repoIds);
+        repoSnapshotService.invalidate(getScmService(scmType), orgId);
+        log.info("Scm: {} Organization: {} bulk webhooks creation results: {}", scmType, orgId,
+                 results);
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * @param scmType Given Scm to handle
+     * @param orgId organization name
+     * @param webhooks repositories names & webhooks ids to delete
+     * @return ResponseEntity with http status:200, Body: per repository result
+     */
+    @Operation(summary = "Rest api used to delete webhooks from list of given scm organization repositories")
+    @DeleteMapping(value = "/{scmType}/orgs/{orgId}/webhooks")
+    public ResponseEntity<List<WebhookWebDto>> deleteWebhooks(@PathVariable String scmType,
+                                                              @PathVariable @Pattern(regexp = VALIDATION_REGEX) String orgId,
+                                                              @RequestBody List<WebhookWebDto> webhooks) {
+        log.trace("deleteWebhooks: scmType={}, orgId={}, webhooks={}", scmType, orgId, webhooks);
+        List<WebhookWebDto> results = getScmService(scmType).deleteWebhooks(orgId, webhooks);
+        repoSnapshotService.invalidate(getScmService(scmType), orgId);
+        log.info("Scm: {} Organization: {} bulk webhooks removal results: {}", scmType, orgId,
+                 results);
+        return ResponseEntity.ok(results);
+    }
+
     /**
      * @param scmType Given Scm to handle
      * @param orgId organization name
@@ -173,6 +237,41 @@ public class WebController {
         return ResponseEntity.ok(cxFlowConfigDto);
     }
 
+    /**
+     * Rest api receiving Scm organization, repository & webhook events (GitHub organization
+     * webhook, GitLab system hook, Azure service hook subscription), applied as deltas to the
+     * stored organization repositories state. The delivery is checked against the Scm events
+     * secret before the payload is parsed.
+     *
+     * @param scmType Given Scm to handle
+     * @param headers event delivery headers
+     * @param payload raw event payload
+     * @return ResponseEntity with http status:200, also for events not affecting repositories,
+     * http status:401 when the delivery signature or credentials don't match the events secret
+     */
+    @Operation(summary = "Rest api used by Scms to send organization & repository events")
+    @PostMapping(value = "/{scmType}/events")
+    public ResponseEntity ingestEvent(@PathVariable String scmType, @RequestHeader HttpHeaders headers,
+                                      @RequestBody byte[] payload) throws IOException {
+        log.trace("ingestEvent: scmType={}", scmType);
+        ScmService scmService = getScmService(scmType);
+        if (!(scmService instanceof ScmEventSource)) {
+            log.error(RestWrapper.SCM_EVENTS_NOT_SUPPORTED + " scmType={}", scmType);
+            throw new ScmException(RestWrapper.SCM_EVENTS_NOT_SUPPORTED);
+        }
+        ScmEventSource eventSource = (ScmEventSource) scmService;
+        if (!eventSource.isAuthentic(headers, payload)) {
+            log.warn("Rejected Scm: {} event, signature doesn't match the events secret", scmType);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        JsonNode event = objectMapper.readTree(payload);
+        log.trace("ingestEvent: scmType={}, event={}", scmType, event);
+        List<RepoEventDto> repoEvents = eventSource.toRepoEvents(headers, event);
+        int updated = repoEventService.apply(scmService, repoEvents);
+        log.info("Scm: {} event applied, repositories updated: {}", scmType, updated);
+        return ResponseEntity.ok().build();
+    }
+
     private ScmService getScmService(String scmName) {
         return (ScmService) applicationContext.getBean(scmName);
     }
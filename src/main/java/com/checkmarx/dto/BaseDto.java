@@ -9,6 +9,7 @@ import org.apache.commons.lang3.StringUtils;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,6 +23,16 @@ public @Data class BaseDto {
     public BaseDto(String id1, String id2){
         id = id1 + SEPARATOR + id2;
     }
+
+    /**
+     * Joins all given ids at once, empty ids are skipped
+     */
+    public BaseDto(List<String> ids){
+        String joinedIds = ids.stream()
+                .filter(StringUtils::isNotEmpty)
+                .collect(Collectors.joining(SEPARATOR));
+        id = joinedIds.isEmpty() ? null : joinedIds;
+    }
     
     public BaseDto join(BaseDto inDto){
         return join(inDto.id);
@@ -0,0 +1,34 @@
+package com.checkmarx.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Repository change taken from a Scm organization event, in the identities used by DataStore
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RepoEventDto {
+
+    public enum Action {
+        CREATED,
+        DELETED,
+        RENAMED,
+        WEBHOOK_REMOVED
+    }
+
+    private Action action;
+    private String orgIdentity;
+    private String repoIdentity;
+    private String repoName;
+    /**
+     * Repository identity before a rename, equals repoIdentity when the Scm identity doesn't
+     * change on rename
+     */
+    private String previousRepoIdentity;
+    private String webhookId;
+}
@@ -17,5 +17,7 @@ public class RepoBitbucketListDto  {
     @JsonProperty("values")
     private List<RepoBitbucketDto> elements;
 
+    @JsonProperty("next")
+    private String next;
 
 }
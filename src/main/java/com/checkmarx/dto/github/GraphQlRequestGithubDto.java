@@ -0,0 +1,17 @@
+package com.checkmarx.dto.github;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@AllArgsConstructor
+@NoArgsConstructor
+public @Data class GraphQlRequestGithubDto {
+
+    private String query;
+    private Map<String, Object> variables;
+}
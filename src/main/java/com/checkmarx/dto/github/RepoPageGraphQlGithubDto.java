@@ -0,0 +1,92 @@
+package com.checkmarx.dto.github;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Single page of organization repositories returned by GitHub GraphQL api
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@AllArgsConstructor
+@NoArgsConstructor
+public @Data class RepoPageGraphQlGithubDto {
+
+    private static final String ADMIN_PERMISSION = "ADMIN";
+
+    private ResponseData data;
+    private List<Error> errors;
+
+    /**
+     * @return organization repositories page, null when GraphQL couldn't resolve the organization
+     */
+    public Repositories getRepositories() {
+        if (data == null || data.getOrganization() == null) {
+            return null;
+        }
+        return data.getOrganization().getRepositories();
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class ResponseData {
+        private Organization organization;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class Organization {
+        private Repositories repositories;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class Repositories {
+        private PageInfo pageInfo;
+        private List<Repository> nodes;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class PageInfo {
+        private boolean hasNextPage;
+        private String endCursor;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class Repository {
+        private String name;
+        private String viewerPermission;
+
+        /**
+         * @return false only when the user surely can't read the repository webhooks, unknown
+         * permission is treated as admin so the webhooks are still checked over REST
+         */
+        public boolean canAdminHooks() {
+            return viewerPermission == null || ADMIN_PERMISSION.equals(viewerPermission);
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    public static class Error {
+        private String type;
+        private String message;
+    }
+}
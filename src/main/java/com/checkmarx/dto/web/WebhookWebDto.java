@@ -0,0 +1,23 @@
+package com.checkmarx.dto.web;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Single repository entry of the bulk webhook apis, repoId & webhookId are given on delete
+ * requests, success & error are set on responses
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public @Data class WebhookWebDto {
+
+    private String repoId;
+    private String webhookId;
+    private Boolean success;
+    private String error;
+}
@@ -1,14 +1,28 @@
 package com.checkmarx.service;
 
+import com.checkmarx.controller.exception.DataStoreException;
 import com.checkmarx.controller.exception.ScmException;
 import com.checkmarx.dto.*;
 
 import com.checkmarx.dto.cxflow.CxFlowConfigDto;
 
+import com.checkmarx.dto.datastore.OrgDto;
 import com.checkmarx.dto.datastore.OrgPropertiesDto;
+import com.checkmarx.dto.datastore.OrgReposDto;
+import com.checkmarx.dto.datastore.ScmAccessTokenDto;
+import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.dto.web.WebhookWebDto;
 
+import com.checkmarx.utils.AccessTokenCache;
 import com.checkmarx.utils.AccessTokenManager;
+import com.checkmarx.utils.Converter;
+import com.checkmarx.utils.FanOutExecutor;
+import com.checkmarx.utils.ReactiveRestWrapper;
+import com.checkmarx.utils.RestOperation;
 import com.checkmarx.utils.RestWrapper;
+import com.checkmarx.utils.Traces;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,19 +31,57 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.net.URI;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public abstract class AbstractScmService {
     
+    protected static final String LIST_REPOS = "list-repos";
+    protected static final String LIST_HOOKS = "list-hooks";
+    protected static final String CREATE_HOOK = "create-hook";
+    protected static final String DELETE_HOOK = "delete-hook";
+    protected static final String LIST_ORGS = "list-orgs";
+    protected static final String TOKEN = "token";
+    protected static final String VALIDATE_TOKEN = "validate-token";
+
+    private static final String CRAWL_REPOS = "crawl-repos";
+    private static final String RESOLVE_TOKEN = "resolve-token";
+    private static final String DISCOVER_REPOS = "discover-repos";
+    private static final String STORE_REPOS = "store-repos";
+
+    /**
+     * Set while a bulk webhooks operation handles a repository, its webhook state write is then
+     * coalesced with the other repositories writes
+     */
+    private static final ThreadLocal<Boolean> IN_BULK_OPERATION = ThreadLocal.withInitial(() -> false);
+
     protected final RestWrapper restWrapper;
     
     protected final DataService dataStoreService;
+
+    protected final FanOutExecutor fanOutExecutor;
+
+    protected final AccessTokenCache accessTokenCache;
+
+    protected final ReactiveRestWrapper reactiveRestWrapper;
+
+    @Autowired
+    protected Tracer tracer = Traces.NOOP_TRACER;
     
     @Value("${redirect.url}")
     private String redirectUrl;
@@ -94,6 +146,132 @@ public abstract class AbstractScmService {
     
     public abstract String getBaseDbKey();
 
+    /**
+     * @param orgId organization id
+     * @return organization access token, served from cache when possible
+     */
+    protected AccessTokenManager getAccessTokenManager(String orgId) {
+        return accessTokenCache.get(getBaseDbKey(), orgId);
+    }
+
+    /**
+     * getAccessTokenManagerAsync method resolves organization access token off the event loop,
+     * DataStore calls are still blocking
+     *
+     * @param orgId organization id
+     * @return Mono of organization access token, served from cache when possible
+     */
+    protected Mono<AccessTokenManager> getAccessTokenManagerAsync(String orgId) {
+        return Mono.fromCallable(() -> getAccessTokenManager(orgId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * runBlocking method runs a blocking DataStore call off the event loop
+     */
+    protected static Mono<Void> runBlocking(Runnable task) {
+        return Mono.fromRunnable(task)
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * getScmOrgRepos method gets organization repositories with their CxFlow webhook state from
+     * the Scm and saves the state in DataStore
+     *
+     * @param orgId organization id
+     * @return organization repositories
+     */
+    public List<RepoWebDto> getScmOrgRepos(@NonNull String orgId) {
+        return inPhase(CRAWL_REPOS, orgId, () -> {
+            AccessTokenManager accessTokenManager = inPhase(RESOLVE_TOKEN, orgId,
+                                                            () -> getAccessTokenManager(orgId));
+            List<? extends IRepoDto> repoDtos = discoverOrgReposInPhase(orgId, accessTokenManager);
+            OrgReposDto orgReposDto = Converter.convertToOrgRepoDto(accessTokenManager.getDbDto(), repoDtos);
+            inPhase(STORE_REPOS, orgId, () -> {
+                dataStoreService.updateScmOrgRepo(orgReposDto);
+                return null;
+            });
+            return Converter.convertToListRepoWebDto(repoDtos);
+        });
+    }
+
+    /**
+     * getScmOrgRepoStates method gets organization repositories webhook state from the Scm,
+     * without saving it in DataStore
+     *
+     * @param orgId organization id
+     * @return organization repositories webhook state, in DataStore structure
+     */
+    public OrgReposDto getScmOrgRepoStates(@NonNull String orgId) {
+        return inPhase(CRAWL_REPOS, orgId, () -> {
+            AccessTokenManager accessTokenManager = inPhase(RESOLVE_TOKEN, orgId,
+                                                            () -> getAccessTokenManager(orgId));
+            List<? extends IRepoDto> repoDtos = discoverOrgReposInPhase(orgId, accessTokenManager);
+            return Converter.convertToOrgRepoDto(accessTokenManager.getDbDto(), repoDtos);
+        });
+    }
+
+    private List<? extends IRepoDto> discoverOrgReposInPhase(String orgId,
+                                                             AccessTokenManager accessTokenManager) {
+        return inPhase(DISCOVER_REPOS, orgId, () -> {
+            List<? extends IRepoDto> repoDtos = discoverOrgRepos(orgId, accessTokenManager);
+            Span.current().setAttribute("repos", repoDtos.size());
+            return repoDtos;
+        });
+    }
+
+    /**
+     * inPhase method runs an organization crawl phase within its own span, child of the current
+     * span (request span, enclosing phase)
+     */
+    protected <T> T inPhase(String phase, String orgId, Supplier<T> call) {
+        Span span = tracer.spanBuilder(getBaseDbKey() + " " + phase)
+                .setAttribute("scm", getBaseDbKey())
+                .setAttribute("org", orgId)
+                .startSpan();
+        return Traces.inSpan(span, call);
+    }
+
+    /**
+     * discoverOrgRepos method lists organization repositories from the Scm, each one with its
+     * CxFlow webhook details
+     *
+     * @param orgId              organization id
+     * @param accessTokenManager organization access token
+     * @return organization repositories
+     */
+    protected abstract List<? extends IRepoDto> discoverOrgRepos(@NonNull String orgId,
+                                                                 AccessTokenManager accessTokenManager);
+
+    /**
+     * storeOrgs method saves organizations with their new token in DataStore and drops the
+     * previous organizations token from cache
+     *
+     * @param orgDtos organizations to save
+     */
+    protected void storeOrgs(List<OrgDto> orgDtos) {
+        dataStoreService.storeOrgs(orgDtos);
+        accessTokenCache.invalidate(orgDtos);
+    }
+
+    /**
+     * @param name logical operation name
+     * @return operation of this Scm, used to tag outbound calls metrics
+     */
+    protected RestOperation getOperation(String name) {
+        return RestOperation.of(getBaseDbKey(), name);
+    }
+
+    /**
+     * @param orgId organization id
+     * @return key identifying the organization across all Scms, used to cap the organization
+     * concurrent calls
+     */
+    protected String getOrgKey(String orgId) {
+        return getBaseDbKey() + "/" + orgId;
+    }
+
     protected IWebhookDto getActiveHook(List<? extends IWebhookDto> webhookDtos) {
         for (IWebhookDto webhookDto : webhookDtos) {
             if (webhookDto != null  && webhookDto.getUrl().equals(getCxFlowUrl()) && webhookDto.isActive() && webhookDto.isPushOrPull())
@@ -103,14 +281,181 @@ public abstract class AbstractScmService {
     }
 
 
+    /**
+     * forEachPage method walks a paginated Scm api following the response Link header, each page
+     * is handed to the consumer as soon as it arrives
+     *
+     * @param operation    pages operation, used as metrics tags
+     * @param path         first page url
+     * @param responseType expected class structure of a single page
+     * @param accessToken  access token
+     * @param pageConsumer page handler
+     */
+    protected <T> void forEachPage(RestOperation operation, String path, Class<T> responseType,
+                                   String accessToken, Consumer<T> pageConsumer) {
+        forEachPage(operation, path, responseType, accessToken,
+                    response -> RestWrapper.getNextPageUri(response.getHeaders()), pageConsumer);
+    }
+
+    /**
+     * forEachPage method walks a paginated Scm api following the next page uri extracted from each
+     * response, for Scms linking the next page elsewhere than in the Link header
+     *
+     * @param operation    pages operation, used as metrics tags
+     * @param path         first page url
+     * @param responseType expected class structure of a single page
+     * @param accessToken  access token
+     * @param nextPageUri  extracts the next page uri from a page response, null on the last page
+     * @param pageConsumer page handler
+     */
+    protected <T> void forEachPage(RestOperation operation, String path, Class<T> responseType,
+                                   String accessToken, Function<ResponseEntity<T>, URI> nextPageUri,
+                                   Consumer<T> pageConsumer) {
+        ResponseEntity<T> response = restWrapper.sendBearerAuthRequest(operation, path, HttpMethod.GET,
+                                                                       null, null, responseType, accessToken);
+        pageConsumer.accept(Objects.requireNonNull(response.getBody()));
+        URI nextPage = nextPageUri.apply(response);
+        while (nextPage != null) {
+            response = restWrapper.sendBearerAuthPageRequest(operation, nextPage, responseType, accessToken);
+            pageConsumer.accept(Objects.requireNonNull(response.getBody()));
+            nextPage = nextPageUri.apply(response);
+        }
+    }
+
+    /**
+     * forEachPage method walks a paginated Scm api and submits every item of every page to the
+     * given batch, so items are processed while the next pages are still being fetched
+     *
+     * @param operation    pages operation, used as metrics tags
+     * @param path         first page url
+     * @param responseType expected class structure of a single page
+     * @param accessToken  access token
+     * @param batch        batch processing the page items
+     */
+    protected <T> void forEachPage(RestOperation operation, String path, Class<T[]> responseType,
+                                   String accessToken, FanOutExecutor.Batch<? super T, ?> batch) {
+        try {
+            forEachPage(operation, path, responseType, accessToken, (T[] page) -> {
+                for (T item : page) {
+                    batch.submit(item);
+                }
+            });
+        } catch (RuntimeException ex) {
+            batch.cancel();
+            throw ex;
+        }
+    }
+
+    public abstract BaseDto createWebhook(@NonNull String orgId, @NonNull String repoId);
+
+    public abstract void deleteWebhook(@NonNull String orgId, @NonNull String repoId,
+                                       @NonNull String webhookId);
+
+    /**
+     * createWebhooks method creates CxFlow webhook on each given repository concurrently, a
+     * single repository failure doesn't fail the others
+     *
+     * @param orgId   organization id
+     * @param repoIds repositories to create webhook on
+     * @return per repository result, in the given repositories order
+     */
+    public List<WebhookWebDto> createWebhooks(@NonNull String orgId, @NonNull List<String> repoIds) {
+        //resolve the organization token once, the per-repository calls are served from cache
+        getAccessTokenManager(orgId);
+        return fanOutExecutor.map(getOrgKey(orgId), repoIds, repoId -> {
+            WebhookWebDto result = WebhookWebDto.builder().repoId(repoId).build();
+            try {
+                result.setWebhookId(inBulkOperation(() -> createWebhook(orgId, repoId)).getId());
+                result.setSuccess(true);
+            } catch (RuntimeException ex) {
+                setWebhookFailure(result, ex);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * deleteWebhooks method deletes given CxFlow webhooks concurrently, a single repository
+     * failure doesn't fail the others
+     *
+     * @param orgId    organization id
+     * @param webhooks repository & webhook ids to delete
+     * @return per repository result, in the given webhooks order
+     */
+    public List<WebhookWebDto> deleteWebhooks(@NonNull String orgId, @NonNull List<WebhookWebDto> webhooks) {
+        getAccessTokenManager(orgId);
+        return fanOutExecutor.map(getOrgKey(orgId), webhooks, webhook -> {
+            WebhookWebDto result = WebhookWebDto.builder()
+                    .repoId(webhook.getRepoId())
+                    .webhookId(webhook.getWebhookId())
+                    .build();
+            try {
+                inBulkOperation(() -> {
+                    deleteWebhook(orgId, webhook.getRepoId(), webhook.getWebhookId());
+                    return null;
+                });
+                result.setSuccess(true);
+            } catch (RuntimeException ex) {
+                setWebhookFailure(result, ex);
+            }
+            return result;
+        });
+    }
+
+    private static <T> T inBulkOperation(Supplier<T> operation) {
+        IN_BULK_OPERATION.set(true);
+        try {
+            return operation.get();
+        } finally {
+            IN_BULK_OPERATION.remove();
+        }
+    }
+
+    /**
+     * updateWebhookState method writes repository webhook state to DataStore, directly for a
+     * single repository operation and through the per organization coalescing writer for a bulk one
+     */
+    protected void updateWebhookState(@NonNull String repoId, ScmAccessTokenDto scmAccessTokenDto,
+                                      String webhookId, Boolean isWebhook) {
+        if (!IN_BULK_OPERATION.get()) {
+            dataStoreService.updateWebhook(repoId, scmAccessTokenDto, webhookId, isWebhook);
+            return;
+        }
+        try {
+            dataStoreService.updateWebhookBatched(repoId, scmAccessTokenDto, webhookId, isWebhook).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new DataStoreException(RestWrapper.UPDATE_ORG_REPO_FAILURE);
+        }
+    }
+
+    private static void setWebhookFailure(WebhookWebDto result, RuntimeException ex) {
+        String error = ex instanceof ScmException || ex instanceof DataStoreException
+                ? ex.getMessage() : RestWrapper.GENERAL_RUNTIME_EXCEPTION;
+        log.error("Repository: {} webhook operation failed: {}", result.getRepoId(), ex.getMessage());
+        result.setSuccess(false);
+        result.setError(error);
+    }
+
     protected void deleteWebhook(@NonNull String orgId, @NonNull String repoId, String deleteUrl, Class<?> type) {
         
-        AccessTokenManager accessTokenWrapper = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenWrapper = getAccessTokenManager(orgId);
         
+        sendDeleteWebhook(deleteUrl, type, accessTokenWrapper.getAccessTokenStr());
+
+        updateWebhookState(repoId, accessTokenWrapper.getDbDto(), null, false);
+    }
+
+    /**
+     * sendDeleteWebhook method deletes webhook from Scm only, without updating its state in
+     * DataStore
+     */
+    protected void sendDeleteWebhook(String deleteUrl, Class<?> type, String accessToken) {
         try {
-            restWrapper.sendBearerAuthRequest(deleteUrl, HttpMethod.DELETE, null, null,
-                    type,
-                    accessTokenWrapper.getAccessTokenStr());
+            restWrapper.sendBearerAuthRequest(getOperation(DELETE_HOOK), deleteUrl,
+                                              HttpMethod.DELETE, null, null, type, accessToken);
             
         } catch (HttpClientErrorException ex){
             if(ex.getStatusCode().equals(HttpStatus.NOT_FOUND)){
@@ -119,8 +464,34 @@ public abstract class AbstractScmService {
             }
             throw new ScmException(RestWrapper.GENERAL_RUNTIME_EXCEPTION);
         }
+    }
 
-        dataStoreService.updateWebhook(repoId, accessTokenWrapper.getDbDto(), null, false);
+    /**
+     * deleteWebhookAsync method is the non-blocking flavor of deleteWebhook, webhook state is
+     * updated in DataStore through the batched writer
+     */
+    protected Mono<Void> deleteWebhookAsync(@NonNull String orgId, @NonNull String repoId,
+                                            String deleteUrl, Class<?> type) {
+        return getAccessTokenManagerAsync(orgId).flatMap(accessTokenWrapper ->
+                sendDeleteWebhookAsync(deleteUrl, type, accessTokenWrapper.getAccessTokenStr())
+                        .then(Mono.fromFuture(() -> dataStoreService.updateWebhookBatched(
+                                repoId, accessTokenWrapper.getDbDto(), null, false))));
+    }
+
+    /**
+     * sendDeleteWebhookAsync method deletes webhook from Scm only, failures are mapped as in
+     * sendDeleteWebhook
+     */
+    protected Mono<Void> sendDeleteWebhookAsync(String deleteUrl, Class<?> type, String accessToken) {
+        return reactiveRestWrapper.sendBearerAuthRequest(getOperation(DELETE_HOOK),
+                                                         deleteUrl, HttpMethod.DELETE, null, type, accessToken)
+                .then()
+                .onErrorMap(WebClientResponseException.class, ex -> {
+                    if (ex.getStatusCode().equals(HttpStatus.NOT_FOUND)) {
+                        log.error("Webhook not found: {}", ex.getMessage());
+                        return new ScmException(RestWrapper.WEBHOOK_DELETE_FAILURE);
+                    }
+                    return new ScmException(RestWrapper.GENERAL_RUNTIME_EXCEPTION);
+                });
     }
-    
 }
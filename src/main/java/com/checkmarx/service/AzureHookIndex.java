@@ -0,0 +1,36 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.azure.AzureWebhookDto;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * AzureHookIndex indexes organization CxFlow subscriptions by project id and then by repository
+ * id, built once per crawl so the per-project lookup doesn't re-scan all organization hooks.
+ * Read-only after construction, safe to share between crawl threads.
+ */
+class AzureHookIndex {
+
+    private final Map<String, Map<String, List<String>>> hookIdsByProject = new HashMap<>();
+
+    AzureHookIndex(List<AzureWebhookDto> organizationHooks) {
+        for (AzureWebhookDto hook : organizationHooks) {
+            //project level hooks - will be skipped
+            if (StringUtils.isEmpty(hook.getRepositoryId())) {
+                continue;
+            }
+            hookIdsByProject.computeIfAbsent(hook.getProjectId(), projectId -> new HashMap<>())
+                    .computeIfAbsent(hook.getRepositoryId(), repoId -> new ArrayList<>())
+                    .add(hook.getHookId());
+        }
+    }
+
+    /**
+     * @param projectId Azure project id
+     * @return CxFlow hook ids of the project repositories, keyed by repository id
+     */
+    Map<String, List<String>> getRepoHooks(String projectId) {
+        return hookIdsByProject.getOrDefault(projectId, Collections.emptyMap());
+    }
+}
@@ -2,21 +2,26 @@ package com.checkmarx.service;
 
 import com.checkmarx.controller.exception.ScmException;
 import com.checkmarx.dto.BaseDto;
+import com.checkmarx.dto.RepoEventDto;
 import com.checkmarx.dto.azure.*;
 import com.checkmarx.dto.cxflow.CxFlowConfigDto;
 import com.checkmarx.dto.datastore.OrgDto;
-import com.checkmarx.dto.datastore.OrgReposDto;
-import com.checkmarx.dto.datastore.ScmAccessTokenDto;
 import com.checkmarx.dto.datastore.ScmDto;
 import com.checkmarx.dto.gitlab.WebhookGitLabDto;
 import com.checkmarx.dto.web.OrganizationWebDto;
-import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.utils.AccessTokenCache;
 import com.checkmarx.utils.AccessTokenManager;
 import com.checkmarx.utils.Converter;
+import com.checkmarx.utils.EventSignatures;
+import com.checkmarx.utils.FanOutExecutor;
+import com.checkmarx.utils.ReactiveRestWrapper;
 import com.checkmarx.utils.RestWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -26,13 +31,23 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.UnknownContentTypeException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 
 @Slf4j
 @Service("azure")
-public class AzureService extends AbstractScmService implements ScmService  {
+public class AzureService extends AbstractScmService implements ScmService, ScmEventSource {
+
+    private static final String LIST_PROJECTS = "list-projects";
 
     private static final String API_VERSION = "6.0";
+
+    private static final List<AzureEvent> SUBSCRIPTION_EVENTS = Collections.unmodifiableList(
+            Arrays.asList(AzureEvent.CREATE_PULL_REQEUST, AzureEvent.UPDATE_PULL_REQEUST, AzureEvent.PUSH));
     
     private static final String BASE_HIGH_LEVEL_API_URL = "https://app.vssps.visualstudio.com";
 
@@ -50,6 +65,8 @@ public class AzureService extends AbstractScmService implements ScmService  {
 
     private static final String BASE_DB_KEY = "azure.com";
 
+    private static final String LEGACY_ACCOUNT_HOST = ".visualstudio.com";
+
     private static final String SCOPES ="vso.code_full vso.code_status vso.project_manage vso.threads_full vso.work_full";
 
     private static final String URL_GET_WEBHOOKS =    BASE_API_URL + "/%s/_apis/hooks/subscriptions?api-version=" + API_VERSION;
@@ -60,8 +77,16 @@ public class AzureService extends AbstractScmService implements ScmService  {
     private static final String AZURE_CONSUMER_USERNAME = "cxflow";
     private static final String AZURE_CONSUMER_PASSWORD = "1234";
 
-    public AzureService(RestWrapper restWrapper, DataService dataStoreService) {
-        super(restWrapper, dataStoreService);
+    @Value("${azure.project.crawl.parallel}")
+    private boolean parallelProjectCrawl;
+
+    @Value("${azure.events.secret}")
+    private String eventsSecret;
+
+    public AzureService(RestWrapper restWrapper, DataService dataStoreService,
+                        FanOutExecutor fanOutExecutor, AccessTokenCache accessTokenCache,
+                        ReactiveRestWrapper reactiveRestWrapper) {
+        super(restWrapper, dataStoreService, fanOutExecutor, accessTokenCache, reactiveRestWrapper);
     }
 
 
@@ -92,7 +117,7 @@ public class AzureService extends AbstractScmService implements ScmService  {
     }
 
     private ResponseEntity<AccessTokenAzureDto> sendAccessTokenRequest(RestWrapper restWrapper, String path, Map<String, String> headers, MultiValueMap<String, String> body) {
-        return  restWrapper.sendUrlEncodedPostRequest(path, 
+        return  restWrapper.sendUrlEncodedPostRequest(getOperation(TOKEN), path,
                 body, headers,AccessTokenAzureDto.class);
     }
 
@@ -120,6 +145,68 @@ public class AzureService extends AbstractScmService implements ScmService  {
         return BASE_DB_KEY;
     }
 
+    /**
+     * Service hook subscription deliveries authenticate with basic authentication, the password
+     * being the events secret
+     */
+    @Override
+    public boolean isAuthentic(@NonNull HttpHeaders headers, @NonNull byte[] payload) {
+        return EventSignatures.isBasicAuthPassword(eventsSecret, headers);
+    }
+
+    /**
+     * Handles service hook subscription repository events (git.repo.created, git.repo.deleted &
+     * git.repo.renamed), repositories are identified by project & repository ids as in
+     * getScmOrgRepos
+     */
+    @Override
+    public List<RepoEventDto> toRepoEvents(@NonNull HttpHeaders headers, @NonNull JsonNode event) {
+        String orgId = getAccountName(event.path("resourceContainers").path("account").path("baseUrl").asText());
+        JsonNode resource = event.path("resource");
+        JsonNode repository = resource.path("repository");
+        String projectId = repository.path("project").path("id").asText(resource.path("projectId").asText(null));
+        String repoId = repository.path("id").asText(resource.path("repositoryId").asText(null));
+        if (orgId == null || projectId == null || repoId == null) {
+            return Collections.emptyList();
+        }
+        String repoName = repository.path("name").asText(resource.path("repositoryName").asText(""));
+        String projectName = repository.path("project").path("name").asText(repoName);
+        String repoIdentity = new BaseDto(projectId, repoId).getId();
+        RepoEventDto.RepoEventDtoBuilder repoEvent = RepoEventDto.builder()
+                .orgIdentity(orgId)
+                .repoIdentity(repoIdentity)
+                .repoName(projectName.trim().equals(repoName.trim()) ? repoName : projectName + " / " + repoName);
+        switch (event.path("eventType").asText()) {
+            case "git.repo.created":
+                return Collections.singletonList(repoEvent.action(RepoEventDto.Action.CREATED).build());
+            case "git.repo.deleted":
+                return Collections.singletonList(repoEvent.action(RepoEventDto.Action.DELETED).build());
+            case "git.repo.renamed":
+                return Collections.singletonList(repoEvent.action(RepoEventDto.Action.RENAMED)
+                                                         .previousRepoIdentity(repoIdentity)
+                                                         .build());
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param accountUrl https://dev.azure.com/{organization}/ or legacy
+     *                   https://{organization}.visualstudio.com/
+     * @return organization name, null if the url doesn't hold one
+     */
+    private static String getAccountName(String accountUrl) {
+        String host = StringUtils.substringBetween(accountUrl, "://", "/");
+        if (host == null) {
+            return null;
+        }
+        if (host.endsWith(LEGACY_ACCOUNT_HOST)) {
+            return StringUtils.removeEnd(host, LEGACY_ACCOUNT_HOST);
+        }
+        String path = StringUtils.substringAfter(accountUrl, host + "/");
+        return StringUtils.defaultIfEmpty(StringUtils.substringBefore(path, "/"), null);
+    }
+
     @Override
     public List<OrganizationWebDto> getOrganizations(@NonNull String authCode) {
         AccessTokenAzureDto accessToken = generateAccessToken(authCode);
@@ -129,84 +216,87 @@ public class AzureService extends AbstractScmService implements ScmService  {
 
     private List<OrganizationWebDto> getAndStoreOrganizations(AccessTokenAzureDto accessToken) {
         ResponseEntity<BaseDto> responseId =
-                restWrapper.sendBearerAuthRequest(URL_GET_USER_ID, HttpMethod.GET, null, null,
-                                                  BaseDto.class, accessToken.getAccessToken());
+                restWrapper.sendBearerAuthRequest(getOperation(LIST_ORGS), URL_GET_USER_ID, HttpMethod.GET,
+                                                  null, null, BaseDto.class, accessToken.getAccessToken());
         BaseDto userId = Objects.requireNonNull(responseId.getBody());
 
         String urlAccounts = String.format(URL_GET_USER_ACCOUNTS, userId.getId());
 
         ResponseEntity<AzureUserOrganizationsDto> response =
-                restWrapper.sendBearerAuthRequest(urlAccounts, HttpMethod.GET, null, null,
+                restWrapper.sendBearerAuthRequest(getOperation(LIST_ORGS), urlAccounts, HttpMethod.GET, null, null,
                                                   AzureUserOrganizationsDto.class, accessToken.getAccessToken());
 
         AzureUserOrganizationsDto azureUserOrganizationsDto = Objects.requireNonNull(response.getBody());
         String tokenJson = AccessTokenManager.convertObjectToJson(accessToken);
         List<OrgDto> orgDtos = Converter.convertToListOrg(tokenJson,
                                                      azureUserOrganizationsDto.getOrganizations(), getBaseDbKey());
-        dataStoreService.storeOrgs(orgDtos);
+        storeOrgs(orgDtos);
         return Converter.convertToListOrgWebDtos(azureUserOrganizationsDto.getOrganizations());
     }
 
     @Override
-    public List<RepoWebDto> getScmOrgRepos(@NonNull String orgId) {
-        AccessTokenManager accessTokenWrapper = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+    protected List<RepoAzureDto> discoverOrgRepos(@NonNull String orgId, AccessTokenManager accessTokenWrapper) {
         String urlProjectsApi = String.format(URL_GET_ALL_PROJECTS, orgId);
         ResponseEntity<AzureProjectsDto> responseProjects =  restWrapper
-                .sendBearerAuthRequest(urlProjectsApi, HttpMethod.GET,
+                .sendBearerAuthRequest(getOperation(LIST_PROJECTS), urlProjectsApi, HttpMethod.GET,
                         null, null,
                         AzureProjectsDto.class, accessTokenWrapper.getAccessTokenStr());
 
         AzureProjectsDto azureProjectsIds = Objects.requireNonNull(responseProjects.getBody());
 
-        ArrayList<RepoAzureDto>  projectsAndReposHooks = new ArrayList<>();
-
-        List<AzureWebhookDto> orgHooks = getOrganizationCxFlowHooks(orgId, accessTokenWrapper.getAccessTokenStr());
-
-        for (int i=0; i<azureProjectsIds.getCount() && azureProjectsIds.getProjectIds()!=null ; i++) {
-
-            RepoAzureDto project = azureProjectsIds.getProjectIds().get(i);
-            Map<String, List<String>> repoHooks = getHooksOnRepoLevel(orgHooks, project.getId());
-            RepoListAzureDto projectRepos = getProjectRepos(orgId, accessTokenWrapper.getAccessTokenStr(), project.getId());
-
-            if(projectRepos.getCount()>0 && projectRepos.getRepos()!=null) {
-                setAdditionalDetails(repoHooks, projectRepos, project);
-                projectsAndReposHooks.addAll(projectRepos.getRepos());
-            }
-            
+        String accessToken = accessTokenWrapper.getAccessTokenStr();
+        AzureHookIndex hookIndex = new AzureHookIndex(getOrganizationCxFlowHooks(orgId, accessToken));
+
+        List<RepoAzureDto> projects = getProjects(azureProjectsIds);
+        Function<RepoAzureDto, List<RepoAzureDto>> projectCrawl =
+                project -> getProjectReposAndHooks(orgId, accessToken, project, hookIndex);
+        List<List<RepoAzureDto>> reposByProject;
+        if (parallelProjectCrawl) {
+            reposByProject = fanOutExecutor.map(getOrgKey(orgId), projects, projectCrawl);
+        } else {
+            reposByProject = projects.stream().map(projectCrawl).collect(Collectors.toList());
         }
-        OrgReposDto orgReposDto = Converter.convertToOrgRepoDto(accessTokenWrapper.getDbDto(), projectsAndReposHooks);
-        dataStoreService.updateScmOrgRepo(orgReposDto);
-        return Converter.convertToListRepoWebDto(projectsAndReposHooks);
+
+        ArrayList<RepoAzureDto>  projectsAndReposHooks = new ArrayList<>();
+        reposByProject.forEach(projectsAndReposHooks::addAll);
+        return projectsAndReposHooks;
     }
 
 
     
 
-    private Map<String, List<String>> getHooksOnRepoLevel(List<AzureWebhookDto> organizationHooks,
-                                                          String projectId) {
+    private List<RepoAzureDto> getProjects(AzureProjectsDto azureProjectsIds) {
+        if (azureProjectsIds.getProjectIds() == null) {
+            return Collections.emptyList();
+        }
+        int count = Math.min(azureProjectsIds.getCount(), azureProjectsIds.getProjectIds().size());
+        return azureProjectsIds.getProjectIds().subList(0, count);
+    }
 
-        Map<String, List<String>> repoHooks = new HashMap<>();
-        
-        organizationHooks.stream().forEach(projectHook -> {
-            if(projectHook.getProjectId().equals(projectId) && !StringUtils.isEmpty(projectHook.getRepositoryId())){
-                //hook on repo level
-                //project level hooks - will be skipped
-                if(repoHooks.get(projectHook.getRepositoryId()) == null){
-                    repoHooks.put(projectHook.getRepositoryId(), new LinkedList<>());
-                }
-                repoHooks.get(projectHook.getRepositoryId()).add(projectHook.getHookId());
-            }
-        });
-        
-        return repoHooks;
-       
+    /**
+     * getProjectReposAndHooks method retrieves given project repositories and sets their CxFlow
+     * hooks details
+     *
+     * @return project repositories, empty list if the project has no repositories
+     */
+    private List<RepoAzureDto> getProjectReposAndHooks(@NonNull String orgId, String token,
+                                                       RepoAzureDto project,
+                                                       AzureHookIndex hookIndex) {
+        Map<String, List<String>> repoHooks = hookIndex.getRepoHooks(project.getId());
+        RepoListAzureDto projectRepos = getProjectRepos(orgId, token, project.getId());
+
+        if(projectRepos.getCount()>0 && projectRepos.getRepos()!=null) {
+            setAdditionalDetails(repoHooks, projectRepos, project);
+            return projectRepos.getRepos();
+        }
+        return Collections.emptyList();
     }
 
     private RepoListAzureDto getProjectRepos(@NonNull String orgId, String token, String projectId) {
         String urlReposApi = String.format(URL_GET_REPOS, orgId, projectId);
 
         ResponseEntity<RepoListAzureDto> response = restWrapper
-                .sendBearerAuthRequest(urlReposApi, HttpMethod.GET,
+                .sendBearerAuthRequest(getOperation(LIST_REPOS), urlReposApi, HttpMethod.GET,
                         null, null,
                         RepoListAzureDto.class, token);
         return Objects.requireNonNull(response.getBody());
@@ -215,12 +305,10 @@ public class AzureService extends AbstractScmService implements ScmService  {
     private void setAdditionalDetails(Map<String, List<String>> cxFlowHooks, RepoListAzureDto repoAzureDtos, RepoAzureDto project) {
         for (RepoAzureDto repository : repoAzureDtos.getRepos()) {
 
-            if (cxFlowHooks.containsKey(repository.getId())) {
-                List<String> listHooks = cxFlowHooks.get(repository.getId());
-                BaseDto multipleHookId = new BaseDto();
-                listHooks.stream().forEach(id -> multipleHookId.join(id));
+            List<String> listHooks = cxFlowHooks.get(repository.getId());
+            if (listHooks != null) {
                 repository.setWebHookEnabled(true);
-                repository.setWebhookId(multipleHookId.getId());
+                repository.setWebhookId(new BaseDto(listHooks).getId());
             }
 
             repository.setId(new BaseDto(project.getId(),repository.getId()));
@@ -234,7 +322,7 @@ public class AzureService extends AbstractScmService implements ScmService  {
 
     @Override
     public BaseDto createWebhook(@NonNull String orgId, @NonNull String projectAndRepoIds ) {
-        AccessTokenManager accessTokenWrapper = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenWrapper = getAccessTokenManager(orgId);
         String path = String.format(URL_CREATE_WEBHOOK, orgId, getCxFlowUrl(), accessTokenWrapper.getAccessTokenStr()) ;
 
         List<String> listProjectAndRepo = getProjectAndRepoIds(projectAndRepoIds);
@@ -242,14 +330,45 @@ public class AzureService extends AbstractScmService implements ScmService  {
         String projectId = listProjectAndRepo.get(0);
         String repoId = listProjectAndRepo.get(1);
         
-        BaseDto hookDtoHook1 = createHook(projectId, repoId, accessTokenWrapper.getAccessTokenStr(), path, AzureEvent.CREATE_PULL_REQEUST );
-        BaseDto hookDtoHook2 = createHook(projectId, repoId, accessTokenWrapper.getAccessTokenStr(), path, AzureEvent.UPDATE_PULL_REQEUST);
-        BaseDto hookDtoHook3 = createHook(projectId, repoId, accessTokenWrapper.getAccessTokenStr(), path, AzureEvent.PUSH);
-        BaseDto hookDto = hookDtoHook1.join(hookDtoHook2).join(hookDtoHook3);
-        dataStoreService.updateWebhook(repoId, accessTokenWrapper.getDbDto(), hookDto.getId(), true);
+        String accessToken = accessTokenWrapper.getAccessTokenStr();
+        Map<AzureEvent, BaseDto> createdHooks = new ConcurrentHashMap<>();
+        List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+        fanOutExecutor.map(getOrgKey(orgId), SUBSCRIPTION_EVENTS, event -> {
+            try {
+                createdHooks.put(event, createHook(projectId, repoId, accessToken, path, event));
+            } catch (RuntimeException ex) {
+                failures.add(ex);
+            }
+            return null;
+        });
+        if (!failures.isEmpty()) {
+            rollbackHooks(orgId, createdHooks.values(), accessToken);
+            throw failures.get(0);
+        }
+
+        BaseDto hookDto = new BaseDto(SUBSCRIPTION_EVENTS.stream()
+                                              .map(event -> createdHooks.get(event).getId())
+                                              .collect(Collectors.toList()));
+        updateWebhookState(repoId, accessTokenWrapper.getDbDto(), hookDto.getId(), true);
         return hookDto;
     }
 
+    /**
+     * rollbackHooks method deletes subscriptions created for a repository whose webhook creation
+     * failed, so a partially configured repository isn't left behind
+     */
+    private void rollbackHooks(String orgId, Collection<BaseDto> createdHooks, String accessToken) {
+        for (BaseDto createdHook : createdHooks) {
+            String path = String.format(URL_DELETE_WEBHOOK, orgId, createdHook.getId());
+            try {
+                sendDeleteWebhook(path, WebhookGitLabDto.class, accessToken);
+            } catch (RuntimeException ex) {
+                log.error("Failed to rollback subscription: {} of organization: {}",
+                          createdHook.getId(), orgId);
+            }
+        }
+    }
+
     private List<String> getProjectAndRepoIds(@NonNull String projectAndRepoId) {
         List<String> listProjectAndRepo = new BaseDto(projectAndRepoId).split();
 
@@ -263,7 +382,7 @@ public class AzureService extends AbstractScmService implements ScmService  {
                                String token, String path, AzureEvent event)  {
         AzureWebhookDto hookData = generateHookData(repoId,projectId, event);
         ResponseEntity<BaseDto> response =  restWrapper
-                .sendBearerAuthRequest(path, HttpMethod.POST,
+                .sendBearerAuthRequest(getOperation(CREATE_HOOK), path, HttpMethod.POST,
                         hookData, null,
                         BaseDto.class, token);
 
@@ -283,22 +402,36 @@ public class AzureService extends AbstractScmService implements ScmService  {
     public void deleteWebhook(@NonNull String orgId, @NonNull String repoId,
                               @NonNull String deleteUrl) {
 
-       ScmAccessTokenDto scmAccessTokenDto = dataStoreService.getSCMOrgToken(getBaseDbKey(), orgId);
-     
+        AccessTokenManager accessTokenWrapper = getAccessTokenManager(orgId);
+        String accessToken = accessTokenWrapper.getAccessTokenStr();
+
         List<String> webhookIds = new BaseDto(deleteUrl).split();
 
-        for (String currWebhookId:webhookIds) {
+        AtomicBoolean anyDeleted = new AtomicBoolean();
+        List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+        fanOutExecutor.map(getOrgKey(orgId), webhookIds, currWebhookId -> {
             String path = String.format(URL_DELETE_WEBHOOK, orgId, currWebhookId);
-            super.deleteWebhook( orgId,  repoId, path, WebhookGitLabDto.class);
-
+            try {
+                sendDeleteWebhook(path, WebhookGitLabDto.class, accessToken);
+                anyDeleted.set(true);
+            } catch (RuntimeException ex) {
+                failures.add(ex);
+            }
+            return null;
+        });
+        //once any subscription is gone the repository is no longer fully configured
+        if (anyDeleted.get()) {
+            updateWebhookState(repoId, accessTokenWrapper.getDbDto(), null, false);
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
         }
-        dataStoreService.updateWebhook(repoId, scmAccessTokenDto, null, false);
     }
     
 
     @Override
     public CxFlowConfigDto getCxFlowConfiguration(@NonNull String orgId) {
-        AccessTokenManager accessTokenManager = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenManager = getAccessTokenManager(orgId);
         CxFlowConfigDto cxFlowConfigDto = getOrganizationSettings(orgId, accessTokenManager.getAccessTokenStr());
         Object accessTokenAzureDto  = accessTokenManager.getFullAccessToken(AccessTokenAzureDto.class);
         return validateCxFlowConfig(cxFlowConfigDto, (AccessTokenAzureDto)accessTokenAzureDto);
@@ -312,8 +445,8 @@ public class AzureService extends AbstractScmService implements ScmService  {
             throw new ScmException("CxFlow configuration settings validation failure, missing data");
         }
         try {
-            restWrapper.sendBearerAuthRequest(URL_GET_USER_ID, HttpMethod.GET, null, null,
-                                              BaseDto.class,
+            restWrapper.sendBearerAuthRequest(getOperation(VALIDATE_TOKEN), URL_GET_USER_ID, HttpMethod.GET,
+                                              null, null, BaseDto.class,
                                                       cxFlowConfigDto.getScmAccessToken());
             log.info("Azure token validation passed successfully!");
         } catch (HttpClientErrorException | UnknownContentTypeException ex){
@@ -354,7 +487,7 @@ public class AzureService extends AbstractScmService implements ScmService  {
                                                                                  @NonNull String accessToken){
         String path = String.format(URL_GET_WEBHOOKS, orgId);  
         
-        ResponseEntity<WebhookListAzureDto> response =  restWrapper.sendBearerAuthRequest(path, HttpMethod.GET,
+        ResponseEntity<WebhookListAzureDto> response =  restWrapper.sendBearerAuthRequest(getOperation(LIST_HOOKS), path, HttpMethod.GET,
                 null, null,
                 WebhookListAzureDto.class, accessToken);
         
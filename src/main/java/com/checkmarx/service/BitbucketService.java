@@ -5,12 +5,13 @@ import com.checkmarx.dto.BaseDto;
 import com.checkmarx.dto.bitbucket.*;
 import com.checkmarx.dto.cxflow.CxFlowConfigDto;
 import com.checkmarx.dto.datastore.OrgDto;
-import com.checkmarx.dto.datastore.OrgReposDto;
 import com.checkmarx.dto.datastore.ScmDto;
 import com.checkmarx.dto.web.OrganizationWebDto;
-import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.utils.AccessTokenCache;
 import com.checkmarx.utils.AccessTokenManager;
 import com.checkmarx.utils.Converter;
+import com.checkmarx.utils.FanOutExecutor;
+import com.checkmarx.utils.ReactiveRestWrapper;
 import com.checkmarx.utils.RestWrapper;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -24,6 +25,7 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.HttpClientErrorException;
 
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
@@ -42,7 +44,7 @@ public class BitbucketService extends AbstractScmService implements ScmService
     private static final String URL_GET_WORKSPACES = BASE_API_URL + API_VERSION + "/workspaces";
 
     private static final String URL_GET_REPOSITORIES =  BASE_API_URL + API_VERSION  + "/repositories/%s" +
-            "?include_subgroups=true";
+            "?include_subgroups=true&pagelen=100";
 
     private static final String BASE_DB_KEY = "bitbucket.com";
 
@@ -57,8 +59,10 @@ public class BitbucketService extends AbstractScmService implements ScmService
 
     private static final String URL_VALIDATE_TOKEN = BASE_API_URL + API_VERSION + "/user";
 
-    public BitbucketService(RestWrapper restWrapper, DataService dataStoreService) {
-        super(restWrapper, dataStoreService);
+    public BitbucketService(RestWrapper restWrapper, DataService dataStoreService,
+                            FanOutExecutor fanOutExecutor, AccessTokenCache accessTokenCache,
+                            ReactiveRestWrapper reactiveRestWrapper) {
+        super(restWrapper, dataStoreService, fanOutExecutor, accessTokenCache, reactiveRestWrapper);
     }
 
 
@@ -80,35 +84,26 @@ public class BitbucketService extends AbstractScmService implements ScmService
 
 
     @Override
-    public List<RepoWebDto> getScmOrgRepos(@NonNull String workspaceId) {
-        AccessTokenManager accessTokenManager = new AccessTokenManager(getBaseDbKey(), workspaceId, dataStoreService);
+    protected List<RepoBitbucketDto> discoverOrgRepos(@NonNull String workspaceId,
+                                                      AccessTokenManager accessTokenManager) {
         String path = String.format(URL_GET_REPOSITORIES, workspaceId);
-        ResponseEntity<RepoBitbucketListDto> response =  restWrapper
-                .sendBearerAuthRequest(path, HttpMethod.GET,
-                                       null, null,
-                        RepoBitbucketListDto.class, accessTokenManager.getAccessTokenStr());
-        List<RepoBitbucketDto> repoDtos = 
-                Objects.requireNonNull(response.getBody()).getElements();
-        for (RepoBitbucketDto repoDto : repoDtos) {
-            WebhookBitbucketDto webhookDto = getRepositoryCxFlowWebhook(repoDto.getId(),workspaceId,
-                    accessTokenManager.getAccessTokenStr());
-            setWebhookDetails(repoDto, webhookDto);
-        }
-        OrgReposDto orgReposDto = Converter.convertToOrgRepoDto(accessTokenManager.getDbDto(), repoDtos);
-        dataStoreService.updateScmOrgRepo(orgReposDto);
-        return Converter.convertToListRepoWebDto(repoDtos);
+        String accessToken = accessTokenManager.getAccessTokenStr();
+        FanOutExecutor.Batch<RepoBitbucketDto, RepoBitbucketDto> webhookDiscovery = fanOutExecutor.newBatch(
+                getOrgKey(workspaceId), repoDto -> discoverRepositoryWebhook(repoDto, workspaceId, accessToken));
+        forEachRepositoryPage(path, accessToken, webhookDiscovery);
+        return webhookDiscovery.join();
     }
     
 
     @Override
     public BaseDto createWebhook(@NonNull String orgId, @NonNull String repoId ) {
-        AccessTokenManager accessTokenManager = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenManager = getAccessTokenManager(orgId);
         String path = String.format(URL_CREATE_WEBHOOK, orgId, repoId) ;
-         ResponseEntity<WebhookBitbucketDto> response =  restWrapper.sendBearerAuthRequest(path, HttpMethod.POST,
+         ResponseEntity<WebhookBitbucketDto> response =  restWrapper.sendBearerAuthRequest(getOperation(CREATE_HOOK), path, HttpMethod.POST,
                  getHookDto(repoId), null, WebhookBitbucketDto.class, accessTokenManager.getAccessTokenStr());
         WebhookBitbucketDto webhookDto = response.getBody();
         validateWebhookDto(webhookDto);
-        dataStoreService.updateWebhook(repoId, accessTokenManager.getDbDto(), webhookDto.getId(), true);
+        updateWebhookState(repoId, accessTokenManager.getDbDto(), webhookDto.getId(), true);
         return new BaseDto(webhookDto.getId());
     }
 
@@ -135,7 +130,7 @@ public class BitbucketService extends AbstractScmService implements ScmService
 
     @Override
     public CxFlowConfigDto getCxFlowConfiguration(@NonNull String orgId) {
-        AccessTokenManager accessTokenManager = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenManager = getAccessTokenManager(orgId);
         CxFlowConfigDto cxFlowConfigDto = getOrganizationSettings(orgId, accessTokenManager.getAccessTokenStr());
         Object accessTokenBitbucketDto  =
                 accessTokenManager.getFullAccessToken(AccessTokenBitbucketDto.class);
@@ -145,13 +140,13 @@ public class BitbucketService extends AbstractScmService implements ScmService
     
     private List<OrganizationWebDto> getAndStoreOrganizations(AccessTokenBitbucketDto token) {
         ResponseEntity<BitbucketBaseListDto> response =
-                restWrapper.sendBearerAuthRequest(URL_GET_WORKSPACES, HttpMethod.GET, null, null,
+                restWrapper.sendBearerAuthRequest(getOperation(LIST_ORGS), URL_GET_WORKSPACES, HttpMethod.GET, null, null,
                         BitbucketBaseListDto.class, token.getAccessToken());
         List<BitbucketBase> organizationWebDtos = response.getBody().getElements();
         String tokenJson = AccessTokenManager.convertObjectToJson(token);
         List<OrgDto> orgDtos =
                 Converter.convertToListOrg(tokenJson, organizationWebDtos, getBaseDbKey());
-        dataStoreService.storeOrgs(orgDtos);
+        storeOrgs(orgDtos);
 
         return Converter.convertToListOrgWebDtos(organizationWebDtos);
     }
@@ -163,7 +158,7 @@ public class BitbucketService extends AbstractScmService implements ScmService
             throw new ScmException("CxFlow configuration settings validation failure, missing data");
         }
         try {
-            restWrapper.sendBearerAuthRequest(URL_VALIDATE_TOKEN, HttpMethod.GET, null, null,
+            restWrapper.sendBearerAuthRequest(getOperation(VALIDATE_TOKEN), URL_VALIDATE_TOKEN, HttpMethod.GET, null, null,
                                               CxFlowConfigDto.class,
                                               cxFlowConfigDto.getScmAccessToken());
             log.info("Bitbucket token validation passed successfully!");
@@ -188,10 +183,39 @@ public class BitbucketService extends AbstractScmService implements ScmService
                                               getBodyRefreshAccessToken(refreshToken));
     }
 
+    /**
+     * forEachRepositoryPage method walks workspace repositories pages following the "next" link of
+     * the response body, each repository is submitted to the batch as soon as its page arrives
+     */
+    private void forEachRepositoryPage(String path, String accessToken,
+                                       FanOutExecutor.Batch<RepoBitbucketDto, ?> batch) {
+        try {
+            forEachPage(getOperation(LIST_REPOS), path, RepoBitbucketListDto.class, accessToken,
+                        BitbucketService::getNextPageUri,
+                        page -> page.getElements().forEach(batch::submit));
+        } catch (RuntimeException ex) {
+            batch.cancel();
+            throw ex;
+        }
+    }
+
+    private static URI getNextPageUri(ResponseEntity<RepoBitbucketListDto> response) {
+        String next = Objects.requireNonNull(response.getBody()).getNext();
+        return StringUtils.isNotEmpty(next) ? URI.create(next) : null;
+    }
+
+    private RepoBitbucketDto discoverRepositoryWebhook(RepoBitbucketDto repoDto, @NonNull String workspaceId,
+                                                       @NonNull String accessToken) {
+        WebhookBitbucketDto webhookDto = getRepositoryCxFlowWebhook(repoDto.getId(), workspaceId,
+                                                                    accessToken);
+        setWebhookDetails(repoDto, webhookDto);
+        return repoDto;
+    }
+
     private WebhookBitbucketDto getRepositoryCxFlowWebhook(@NonNull String repoId, @NonNull String workspaceId,
                                                            @NonNull String accessToken){
         String path = String.format(URL_GET_WEBHOOKS, workspaceId, repoId);
-        ResponseEntity<WebhookBitbucketListDto> response =  restWrapper.sendBearerAuthRequest(path, HttpMethod.GET,
+        ResponseEntity<WebhookBitbucketListDto> response =  restWrapper.sendBearerAuthRequest(getOperation(LIST_HOOKS), path, HttpMethod.GET,
                 null, null,
                 WebhookBitbucketListDto.class, accessToken);
         WebhookBitbucketListDto webhookDtos = Objects.requireNonNull(response.getBody());
@@ -223,7 +247,8 @@ public class BitbucketService extends AbstractScmService implements ScmService
 
 
     private AccessTokenBitbucketDto sendGenerateAccessTokenRequest(String path, HttpHeaders headers, MultiValueMap<String, String> body) {
-        ResponseEntity<AccessTokenBitbucketDto> response = restWrapper.sendUrlEncodedPostRequest(path,body, headers, AccessTokenBitbucketDto.class);
+        ResponseEntity<AccessTokenBitbucketDto> response = restWrapper.sendUrlEncodedPostRequest(getOperation(TOKEN), path, body,
+                                                                                                        headers, AccessTokenBitbucketDto.class);
 
         AccessTokenBitbucketDto accessTokenDto = response.getBody();
         if(!verifyAccessToken(accessTokenDto)){
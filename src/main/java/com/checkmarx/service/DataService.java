@@ -4,6 +4,7 @@ import com.checkmarx.dto.datastore.*;
 import lombok.NonNull;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface DataService {
     void storeScmOrgsToken(@NonNull List<ScmAccessTokenDto> scmAccessTokenDtos);
@@ -19,5 +20,8 @@ public interface DataService {
     void storeScmOrgSettings(@NonNull OrgPropertiesDto orgPropertiesDto);
     void updateWebhook(@NonNull String repoId, ScmAccessTokenDto scmAccessTokenDto,
                        String webhookId, Boolean isWebhook);
+    CompletableFuture<Void> updateWebhookBatched(@NonNull String repoId, ScmAccessTokenDto scmAccessTokenDto,
+                                                 String webhookId, Boolean isWebhook);
     void storeOrgs(List<OrgDto> orgDtos);
+    List<OrgDto> getScmOrgs(@NonNull String scmUrl);
 }
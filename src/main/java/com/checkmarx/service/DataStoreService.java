@@ -3,7 +3,12 @@ package com.checkmarx.service;
 import com.checkmarx.controller.exception.DataStoreException;
 import com.checkmarx.controller.exception.ScmException;
 import com.checkmarx.dto.datastore.*;
+import com.checkmarx.utils.RestOperation;
 import com.checkmarx.utils.RestWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -15,8 +20,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.client.HttpClientErrorException;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -24,9 +33,40 @@ import java.util.List;
 @Qualifier("dataStoreService")
 public class DataStoreService implements DataService {
 
+    private static final RestOperation STORE_TOKEN = RestOperation.of(RestOperation.DATASTORE, "store-token");
+    private static final RestOperation GET_TOKEN = RestOperation.of(RestOperation.DATASTORE, "get-token");
+    private static final RestOperation STORE_SCM = RestOperation.of(RestOperation.DATASTORE, "store-scm");
+    private static final RestOperation GET_SCM = RestOperation.of(RestOperation.DATASTORE, "get-scm");
+    private static final RestOperation STORE_REPOS = RestOperation.of(RestOperation.DATASTORE, "store-repos");
+    private static final RestOperation GET_REPOS = RestOperation.of(RestOperation.DATASTORE, "get-repos");
+    private static final RestOperation GET_REPO = RestOperation.of(RestOperation.DATASTORE, "get-repo");
+    private static final RestOperation UPDATE_REPOS = RestOperation.of(RestOperation.DATASTORE, "update-repos");
+    private static final RestOperation GET_ORG_PROPERTIES = RestOperation.of(RestOperation.DATASTORE, "get-org-properties");
+    private static final RestOperation STORE_ORG_PROPERTIES = RestOperation.of(RestOperation.DATASTORE, "store-org-properties");
+    private static final RestOperation STORE_ORGS = RestOperation.of(RestOperation.DATASTORE, "store-orgs");
+    private static final RestOperation GET_ORGS = RestOperation.of(RestOperation.DATASTORE, "get-orgs");
+
     @Value("${data.store}")
     private String dataStoreBase;
 
+    @Value("${data.store.scm.cache.ttl}")
+    private long scmCacheTtl;
+
+    @Value("${data.store.scm.cache.size}")
+    private long scmCacheSize;
+
+    @Value("${data.store.webhook.batch.window}")
+    private long webhookBatchWindow;
+
+    @Value("${data.store.webhook.batch.size}")
+    private int webhookBatchSize;
+
+    @Value("${data.store.webhook.queue.capacity}")
+    private int webhookQueueCapacity;
+
+    @Value("${data.store.webhook.update.timeout}")
+    private long webhookUpdateTimeout;
+
     private String urlPatternDataSourceSaveScmOrgToken;
 
     private String urlPatternDataSourceGetScmOrgToken;
@@ -39,6 +79,8 @@ public class DataStoreService implements DataService {
 
     private String urlPatternDataStoreOrg;
 
+    private String urlPatternDataStoreScmOrgs;
+
     private String urlPatternDataSourceGetScmOrgRepos;
 
     private String urlPatternDataSourceGetScmOrgRepo;
@@ -50,6 +92,15 @@ public class DataStoreService implements DataService {
 
     private final RestWrapper restWrapper;
 
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Scm client id & secret rarely change, cached to save a DataStore round-trip on every
+     * OAuth flow and FE start-up
+     */
+    private Cache<String, ScmDto> scmCache;
+
+    private WebhookStateBatcher webhookStateBatcher;
 
     @PostConstruct
     private void initMembers() {
@@ -69,9 +120,27 @@ public class DataStoreService implements DataService {
 
         urlPatternDataStoreOrg = dataStoreBase + "/orgs";
 
+        urlPatternDataStoreScmOrgs = dataStoreBase + "/orgs?scmBaseUrl=%s";
+
         urlPatternDataSourceScmOrg = dataStoreBase + "/orgs/properties?scmBaseUrl=%s&orgIdentity=%s";
 
         urlPatternDataSourceScmOrgProperties = dataStoreBase + "/orgs/properties";
+
+        scmCache = Caffeine.newBuilder()
+                .expireAfterWrite(scmCacheTtl, TimeUnit.SECONDS)
+                .maximumSize(scmCacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, scmCache, "scm.credentials");
+
+        webhookStateBatcher = new WebhookStateBatcher(this::updateScmOrgRepo, webhookBatchWindow,
+                                                      webhookBatchSize, webhookQueueCapacity,
+                                                      TimeUnit.SECONDS.toMillis(webhookUpdateTimeout));
+    }
+
+    @PreDestroy
+    private void flushPendingWrites() {
+        webhookStateBatcher.close();
     }
     
     @Override
@@ -79,7 +148,7 @@ public class DataStoreService implements DataService {
         log.trace("storeScmOrgsToken: ScmAccessTokenDto={}", scmAccessTokenDtos);
 
         try {
-            restWrapper.sendRequest(urlPatternDataSourceSaveScmOrgToken, HttpMethod.PUT, scmAccessTokenDtos
+            restWrapper.sendRequest(STORE_TOKEN, urlPatternDataSourceSaveScmOrgToken, HttpMethod.PUT, scmAccessTokenDtos
                     , null , ResponseEntity.class);
         }  catch(HttpClientErrorException ex){
             logHttpException(ex);
@@ -97,7 +166,7 @@ public class DataStoreService implements DataService {
 
         ResponseEntity<ScmAccessTokenDto> response;
         try {
-            response = restWrapper.sendRequest(path, HttpMethod.GET, null, null,
+            response = restWrapper.sendRequest(GET_TOKEN, path, HttpMethod.GET, null, null,
                                                ScmAccessTokenDto.class);
         }  catch(HttpClientErrorException ex){
             logHttpException(ex);
@@ -114,25 +183,32 @@ public class DataStoreService implements DataService {
         log.trace("storeScm: ScmDto={}", scmDto);
 
         try {
-            restWrapper.sendRequest(urlPatternDataSourceStoreScm, HttpMethod.POST, scmDto, null,
+            restWrapper.sendRequest(STORE_SCM, urlPatternDataSourceStoreScm, HttpMethod.POST, scmDto, null,
                                     ResponseEntity.class);
         }  catch(HttpClientErrorException ex){
             logHttpException(ex);
             log.error(RestWrapper.STORE_SCM_FAILURE + " ScmDto={}", scmDto);
             throw new DataStoreException(RestWrapper.STORE_SCM_FAILURE, ex);
         }
+        if (scmDto.getBaseUrl() != null) {
+            scmCache.invalidate(scmDto.getBaseUrl());
+        }
         log.debug("Save Scm: {} passed successfully", scmDto.getBaseUrl());
     }
 
     @Override
     public ScmDto getScm(@NonNull String scmUrl) {
         log.trace("getScm: scmUrl={}", scmUrl);
+        return scmCache.get(scmUrl, this::fetchScm);
+    }
+
+    private ScmDto fetchScm(String scmUrl) {
 
         String path = String.format(urlPatternDataSourceGetScm, scmUrl);
 
         ResponseEntity<ScmDto> response;
         try {
-            response = restWrapper.sendRequest(path, HttpMethod.GET, null, null,
+            response = restWrapper.sendRequest(GET_SCM, path, HttpMethod.GET, null, null,
                                                ScmDto.class);
         }  catch(HttpClientErrorException ex){
             logHttpException(ex);
@@ -156,7 +232,7 @@ public class DataStoreService implements DataService {
         log.trace("storeScmOrgRepos: ScmRepoDto={}", orgReposDto);
 
         try {
-            restWrapper.sendRequest(urlPatternDataSourceRepos, HttpMethod.POST, orgReposDto, null,
+            restWrapper.sendRequest(STORE_REPOS, urlPatternDataSourceRepos, HttpMethod.POST, orgReposDto, null,
                                     ResponseEntity.class);
         }  catch(HttpClientErrorException ex){
             logHttpException(ex);
@@ -172,9 +248,9 @@ public class DataStoreService implements DataService {
         log.trace("getScmOrgRepos: scmUrl={}, orgIdentity={}", scmUrl, orgIdentity);
 
         String path = String.format(urlPatternDataSourceGetScmOrgRepos, scmUrl, orgIdentity);
-        ResponseEntity<List<RepoDto>> response;
+        ResponseEntity<RepoDto[]> response;
         try {
-            response = restWrapper.sendRequest(path, HttpMethod.GET, null, null, List.class);
+            response = restWrapper.sendRequest(GET_REPOS, path, HttpMethod.GET, null, null, RepoDto[].class);
         }  catch(HttpClientErrorException ex){
             logHttpException(ex);
             logOrgError(RestWrapper.GET_ORG_REPOS_FAILURE, scmUrl, orgIdentity);
@@ -184,7 +260,7 @@ public class DataStoreService implements DataService {
         }
         log.debug("Get from DataStore Scm: {} Org: {} Repos: {} passed successfully", scmUrl,
                   orgIdentity, response.getBody());
-        return response.getBody();
+        return response.getBody() == null ? Collections.emptyList() : Arrays.asList(response.getBody());
     }
 
     @Override
@@ -197,7 +273,7 @@ public class DataStoreService implements DataService {
                                     orgIdentity);
         ResponseEntity<RepoDto> responseEntity;
         try {
-            responseEntity = restWrapper.sendRequest(path, HttpMethod.GET, null, null, RepoDto.class);
+            responseEntity = restWrapper.sendRequest(GET_REPO, path, HttpMethod.GET, null, null, RepoDto.class);
         }  catch(HttpClientErrorException ex){
             String exceptionMessage;
             if (ex.getStatusCode().equals(HttpStatus.NOT_FOUND)) {
@@ -220,7 +296,7 @@ public class DataStoreService implements DataService {
         log.trace("updateScmOrgRepo: SCMRepoDto={}", orgReposDto);
 
         try {
-            restWrapper.sendRequest(urlPatternDataSourceRepos, HttpMethod.PUT, orgReposDto,
+            restWrapper.sendRequest(UPDATE_REPOS, urlPatternDataSourceRepos, HttpMethod.PUT, orgReposDto,
                     null, OrgReposDto.class);
         } catch (HttpClientErrorException ex) {
             String exceptionMessage;
@@ -246,7 +322,7 @@ public class DataStoreService implements DataService {
         String path = String.format(urlPatternDataSourceScmOrg, scmUrl, orgIdentity);
         try {
             responseEntity = restWrapper
-                    .sendRequest(path, HttpMethod.GET, null, null, OrgPropertiesDto.class);
+                    .sendRequest(GET_ORG_PROPERTIES, path, HttpMethod.GET, null, null, OrgPropertiesDto.class);
         }  catch(HttpClientErrorException ex){
             String exceptionMessage ;
             if (ex.getStatusCode().equals(HttpStatus.NOT_FOUND)) {
@@ -267,7 +343,7 @@ public class DataStoreService implements DataService {
         log.trace("storeScmOrgSettings: CxFlowPropertiesDto={}", orgPropertiesDto);
 
         try {
-            restWrapper.sendRequest(urlPatternDataSourceScmOrgProperties, HttpMethod.POST,
+            restWrapper.sendRequest(STORE_ORG_PROPERTIES, urlPatternDataSourceScmOrgProperties, HttpMethod.POST,
                                     orgPropertiesDto,
                                     null, OrgPropertiesDto.class);
         }  catch(HttpClientErrorException ex){
@@ -298,12 +374,28 @@ public class DataStoreService implements DataService {
                 .build());
     }
 
+    /**
+     * updateWebhookBatched method queues repository webhook state update, updates of the same
+     * organization arriving within data.store.webhook.batch.window millis are sent as a single
+     * DataStore request. Meant for bulk operations, single updates use updateWebhook. Fails when
+     * the update isn't written within data.store.webhook.update.timeout seconds
+     *
+     * @return future completed once the update is written to DataStore
+     */
+    @Override
+    public CompletableFuture<Void> updateWebhookBatched(@NonNull String repoId, ScmAccessTokenDto scmAccessTokenDto,
+                                                        String webhookId, Boolean isWebhook) {
+        RepoDto repoDto = RepoDto.builder().repoIdentity(repoId).webhookId(webhookId).isWebhookConfigured(isWebhook).build();
+        return webhookStateBatcher.submit(scmAccessTokenDto.getScmUrl(),
+                                          scmAccessTokenDto.getOrgIdentity(), repoDto);
+    }
+
     @Override
     public void storeOrgs(List<OrgDto> orgDtos) {
         log.trace("storeOrgs: orgDtos={}", orgDtos);
 
         try {
-            restWrapper.sendRequest(urlPatternDataStoreOrg, HttpMethod.PUT,
+            restWrapper.sendRequest(STORE_ORGS, urlPatternDataStoreOrg, HttpMethod.PUT,
                                     orgDtos, null, ResponseEntity.class);
         } catch (HttpClientErrorException ex) {
             logHttpException(ex);
@@ -313,6 +405,23 @@ public class DataStoreService implements DataService {
         log.debug("Save orgs: {} passed successfully!", orgDtos);
     }
 
+    @Override
+    public List<OrgDto> getScmOrgs(@NonNull String scmUrl) {
+        log.trace("getScmOrgs: scmUrl={}", scmUrl);
+
+        String path = String.format(urlPatternDataStoreScmOrgs, scmUrl);
+        ResponseEntity<OrgDto[]> response;
+        try {
+            response = restWrapper.sendRequest(GET_ORGS, path, HttpMethod.GET, null, null, OrgDto[].class);
+        } catch (HttpClientErrorException ex) {
+            logHttpException(ex);
+            log.error(RestWrapper.GET_SCM_ORGS_FAILURE + " scmUrl={}", scmUrl);
+            throw new DataStoreException(RestWrapper.GET_SCM_ORGS_FAILURE + " scmUrl=" + scmUrl, ex);
+        }
+        log.debug("Get from DataStore Scm: {} orgs passed successfully", scmUrl);
+        return response.getBody() == null ? Collections.emptyList() : Arrays.asList(response.getBody());
+    }
+
     private static void logRepoError(String message, String orgIdentity, Object repoIdentity) {
         log.error("{}. orgIdentity={}, repoIdentity={}", message, orgIdentity, repoIdentity);
     }
@@ -5,31 +5,38 @@ import com.checkmarx.dto.github.*;
 import com.checkmarx.dto.BaseDto;
 
 import com.checkmarx.dto.IRepoDto;
+import com.checkmarx.dto.RepoEventDto;
 import com.checkmarx.dto.cxflow.CxFlowConfigDto;
 import com.checkmarx.dto.datastore.*;
 import com.checkmarx.dto.web.OrganizationWebDto;
 import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.utils.AccessTokenCache;
 import com.checkmarx.utils.AccessTokenManager;
 import com.checkmarx.utils.Converter;
+import com.checkmarx.utils.EventSignatures;
+import com.checkmarx.utils.FanOutExecutor;
+import com.checkmarx.utils.ReactiveRestWrapper;
 import com.checkmarx.utils.RestWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 @Slf4j
 @Service("github")
-public class GitHubService extends AbstractScmService implements ScmService {
+public class GitHubService extends AbstractScmService implements ScmService, ReactiveScmService, ScmEventSource {
     
     private static final String URL_GENERATE_TOKEN = "https://github.com/login/oauth/access_token" +
             "?client_id=%s&client_secret=%s&code=%s";
@@ -46,14 +53,33 @@ public class GitHubService extends AbstractScmService implements ScmService {
 
     private static final String URL_VALIDATE_TOKEN = GITHUB_BASE_URL + "/user";
 
+    private static final String URL_GRAPHQL = GITHUB_BASE_URL + "/graphql";
+
+    private static final String GRAPHQL_DISCOVERY_ENGINE = "graphql";
+
+    private static final String QUERY_ORG_REPOS = "query($org: String!, $cursor: String) {" +
+            " organization(login: $org) { repositories(first: 100, after: $cursor) {" +
+            " pageInfo { hasNextPage endCursor } nodes { name viewerPermission } } } }";
+
     private static final String GIT_HUB_DB_KEY = "github.com";
     
     private static final String SCOPES = "repo,admin:repo_hook,read:org,read:user";
 
     private static final String INVALID_TOKEN = "Github token validation failure";
 
-    public GitHubService(RestWrapper restWrapper, DataService dataStoreService) {
-        super(restWrapper, dataStoreService);
+    private static final String EVENT_HEADER = "X-GitHub-Event";
+    private static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+
+    @Value("${github.discovery.engine}")
+    private String discoveryEngine;
+
+    @Value("${github.events.secret}")
+    private String eventsSecret;
+
+    public GitHubService(RestWrapper restWrapper, DataService dataStoreService,
+                         FanOutExecutor fanOutExecutor, AccessTokenCache accessTokenCache,
+                         ReactiveRestWrapper reactiveRestWrapper) {
+        super(restWrapper, dataStoreService, fanOutExecutor, accessTokenCache, reactiveRestWrapper);
     }
 
 
@@ -64,7 +90,7 @@ public class GitHubService extends AbstractScmService implements ScmService {
         log.info("Access token generated successfully");
 
         ResponseEntity<OrganizationGithubDto[]> response =
-                restWrapper.sendBearerAuthRequest(URL_GET_ORGANIZATIONS, HttpMethod.GET, null, null,
+                restWrapper.sendBearerAuthRequest(getOperation(LIST_ORGS), URL_GET_ORGANIZATIONS, HttpMethod.GET, null, null,
                                                   OrganizationGithubDto[].class, accessToken.getAccessToken());
         List<OrganizationGithubDto> userOrgGithubDtos =
                 new ArrayList<>(Arrays.asList(Objects.requireNonNull(response.getBody())));
@@ -72,56 +98,37 @@ public class GitHubService extends AbstractScmService implements ScmService {
         List<OrgDto> orgDtos =
                 Converter.convertToListOrg(tokenJson, userOrgGithubDtos,
                                                       getBaseDbKey());
-        dataStoreService.storeOrgs(orgDtos);
+        storeOrgs(orgDtos);
         return Converter.convertToListOrgWebDtos(userOrgGithubDtos);
     }
 
     @Override
-    public List<RepoWebDto> getScmOrgRepos(@NonNull String orgId) {
-
-        AccessTokenManager accessTokenWrapper = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
-
+    protected List<IRepoDto> discoverOrgRepos(@NonNull String orgId, AccessTokenManager accessTokenWrapper) {
         String path = String.format(URL_GET_REPOS, orgId);
-        ResponseEntity<RepoGithubDto[]> response =  restWrapper
-                .sendBearerAuthRequest(path, HttpMethod.GET,
-                                       null, null,
-                                       RepoGithubDto[].class, accessTokenWrapper.getAccessTokenStr());
-        ArrayList<RepoGithubDto> orgRepoGithubDtos = new ArrayList<>(Arrays.asList(
-                Objects.requireNonNull(response.getBody())));
-
-        List<IRepoDto> outputDTOs =  new ArrayList<>();
-        for (IRepoDto repoDto : orgRepoGithubDtos) {
-            try {
-                WebhookGithubDto webhookDto = getRepositoryCxFlowWebhook(orgId, repoDto.getName(),
-                        accessTokenWrapper.getAccessTokenStr());
-                setWebhookDetails(repoDto, webhookDto);
-                outputDTOs.add(repoDto);
-            } catch (HttpClientErrorException ex){
-                if(ex.getStatusCode().equals(HttpStatus.NOT_FOUND)){
-                    log.info("User can't access repository '{}' webhook settings",
-                            repoDto.getName());
-                }
-            }
+        String accessToken = accessTokenWrapper.getAccessTokenStr();
+        FanOutExecutor.Batch<IRepoDto, IRepoDto> webhookDiscovery = fanOutExecutor.newBatch(
+                getOrgKey(orgId), repoDto -> discoverRepositoryWebhook(orgId, repoDto, accessToken));
+        if (!GRAPHQL_DISCOVERY_ENGINE.equals(discoveryEngine)
+                || !forEachGraphQlPage(orgId, accessToken, webhookDiscovery)) {
+            forEachPage(getOperation(LIST_REPOS), path, RepoGithubDto[].class, accessToken, webhookDiscovery);
         }
-        OrgReposDto orgReposDto = Converter.convertToOrgRepoDto(accessTokenWrapper.getDbDto(), outputDTOs);
-        dataStoreService.updateScmOrgRepo(orgReposDto);
-        return Converter.convertToListRepoWebDto(outputDTOs);
+        return webhookDiscovery.join();
     }
     
     @Override
     public BaseDto createWebhook(@NonNull String orgId, @NonNull String repoId) {
-        AccessTokenManager accessTokenWrapper = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenWrapper = getAccessTokenManager(orgId);
 
         String path = String.format(URL_WEBHOOK_OPERATION, orgId, repoId);
         WebhookGithubDto webhookGithubDto = initWebhook();
         ResponseEntity<WebhookGithubDto> response =  restWrapper
-                .sendBearerAuthRequest(path, HttpMethod.POST,
+                .sendBearerAuthRequest(getOperation(CREATE_HOOK), path, HttpMethod.POST,
                                        webhookGithubDto, null,
                                        WebhookGithubDto.class,
                                        accessTokenWrapper.getAccessTokenStr());
         webhookGithubDto = response.getBody();
         validateWebhookDto(webhookGithubDto);
-        dataStoreService.updateWebhook(repoId, accessTokenWrapper.getDbDto(),webhookGithubDto.getId(), true);
+        updateWebhookState(repoId, accessTokenWrapper.getDbDto(),webhookGithubDto.getId(), true);
 
         return new BaseDto(webhookGithubDto.getId());
     }
@@ -133,9 +140,53 @@ public class GitHubService extends AbstractScmService implements ScmService {
         super.deleteWebhook(orgId, repoId, path, WebhookGithubDto.class);
     }
 
+    /**
+     * getScmOrgReposAsync method is the non-blocking flavor of getScmOrgRepos, repositories are
+     * listed via REST whatever github.discovery.engine is set to
+     */
+    @Override
+    public Mono<List<RepoWebDto>> getScmOrgReposAsync(@NonNull String orgId) {
+        return getAccessTokenManagerAsync(orgId).flatMap(accessTokenWrapper -> {
+            String accessToken = accessTokenWrapper.getAccessTokenStr();
+            return reactiveRestWrapper
+                    .getPages(getOperation(LIST_REPOS), String.format(URL_GET_REPOS, orgId), RepoGithubDto[].class, accessToken)
+                    .flatMapIterable(Arrays::asList)
+                    .flatMapSequential(repoDto -> discoverRepositoryWebhookAsync(orgId, repoDto, accessToken),
+                                       fanOutExecutor.getOrgConcurrency())
+                    .collectList()
+                    .flatMap(outputDTOs -> {
+                        OrgReposDto orgReposDto = Converter.convertToOrgRepoDto(accessTokenWrapper.getDbDto(), outputDTOs);
+                        return runBlocking(() -> dataStoreService.updateScmOrgRepo(orgReposDto))
+                                .thenReturn(Converter.convertToListRepoWebDto(outputDTOs));
+                    });
+        });
+    }
+
+    @Override
+    public Mono<BaseDto> createWebhookAsync(@NonNull String orgId, @NonNull String repoId) {
+        String path = String.format(URL_WEBHOOK_OPERATION, orgId, repoId);
+        return getAccessTokenManagerAsync(orgId).flatMap(accessTokenWrapper -> reactiveRestWrapper
+                .sendBearerAuthRequest(getOperation(CREATE_HOOK), path, HttpMethod.POST, initWebhook(), WebhookGithubDto.class,
+                                       accessTokenWrapper.getAccessTokenStr())
+                .flatMap(response -> {
+                    WebhookGithubDto webhookGithubDto = response.getBody();
+                    validateWebhookDto(webhookGithubDto);
+                    return Mono.fromFuture(dataStoreService.updateWebhookBatched(
+                            repoId, accessTokenWrapper.getDbDto(), webhookGithubDto.getId(), true))
+                            .thenReturn(new BaseDto(webhookGithubDto.getId()));
+                }));
+    }
+
+    @Override
+    public Mono<Void> deleteWebhookAsync(@NonNull String orgId, @NonNull String repoId,
+                                         @NonNull String deleteUrl) {
+        String path = String.format(URL_DELETE_WEBHOOK, orgId, repoId, deleteUrl);
+        return deleteWebhookAsync(orgId, repoId, path, WebhookGithubDto.class);
+    }
+
     @Override
     public CxFlowConfigDto getCxFlowConfiguration(@NonNull String orgId) {
-        AccessTokenManager accessTokenWrapper = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenWrapper = getAccessTokenManager(orgId);
 
         CxFlowConfigDto cxFlowConfigDto = getOrganizationSettings(orgId, accessTokenWrapper.getAccessTokenStr());
         validateCxFlowConfig(cxFlowConfigDto);
@@ -149,7 +200,7 @@ public class GitHubService extends AbstractScmService implements ScmService {
             throw new ScmException("CxFlow configuration settings validation failure, missing data");
         }
         try {
-            restWrapper.sendBearerAuthRequest(URL_VALIDATE_TOKEN, HttpMethod.GET, null, null,
+            restWrapper.sendBearerAuthRequest(getOperation(VALIDATE_TOKEN), URL_VALIDATE_TOKEN, HttpMethod.GET, null, null,
                                               CxFlowConfigDto.class,
                                               cxFlowConfigDto.getScmAccessToken());
         } catch (HttpClientErrorException ex) {
@@ -168,11 +219,105 @@ public class GitHubService extends AbstractScmService implements ScmService {
                 .build();
     }
 
+    /**
+     * forEachGraphQlPage method lists organization repositories via GraphQL, 100 per request.
+     * GraphQL doesn't expose webhooks, so only repositories the user administrates are submitted
+     * for REST webhook lookup, the others would fail with 404 anyway and are skipped without any
+     * request
+     *
+     * @return false if GraphQL couldn't resolve the organization, nothing was submitted and REST
+     * discovery should be used instead
+     */
+    private boolean forEachGraphQlPage(String orgId, String accessToken,
+                                       FanOutExecutor.Batch<IRepoDto, ?> batch) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("org", orgId);
+        try {
+            RepoPageGraphQlGithubDto.Repositories repositories;
+            do {
+                ResponseEntity<RepoPageGraphQlGithubDto> response = restWrapper
+                        .sendBearerAuthRequest(getOperation(LIST_REPOS), URL_GRAPHQL, HttpMethod.POST,
+                                               new GraphQlRequestGithubDto(QUERY_ORG_REPOS, variables), null,
+                                               RepoPageGraphQlGithubDto.class, accessToken);
+                RepoPageGraphQlGithubDto page = Objects.requireNonNull(response.getBody());
+                repositories = page.getRepositories();
+                if (repositories == null) {
+                    if (variables.containsKey("cursor")) {
+                        log.error("GraphQL repositories paging failure, errors: {}", page.getErrors());
+                        throw new ScmException(RestWrapper.GENERAL_RUNTIME_EXCEPTION);
+                    }
+                    log.warn("Organization: {} isn't visible via GraphQL, errors: {}", orgId,
+                             page.getErrors());
+                    return false;
+                }
+                for (RepoPageGraphQlGithubDto.Repository repository : repositories.getNodes()) {
+                    if (repository.canAdminHooks()) {
+                        batch.submit(RepoGithubDto.builder().name(repository.getName()).build());
+                    }
+                }
+                variables.put("cursor", repositories.getPageInfo().getEndCursor());
+            } while (repositories.getPageInfo().isHasNextPage());
+        } catch (RuntimeException ex) {
+            batch.cancel();
+            throw ex;
+        }
+        return true;
+    }
+
+    /**
+     * discoverRepositoryWebhook method sets given repository CxFlow webhook details
+     *
+     * @return given repository, null if user can't access repository webhook settings
+     */
+    private IRepoDto discoverRepositoryWebhook(@NonNull String orgName, IRepoDto repoDto,
+                                               @NonNull String accessToken) {
+        try {
+            WebhookGithubDto webhookDto = getRepositoryCxFlowWebhook(orgName, repoDto.getName(),
+                                                                     accessToken);
+            setWebhookDetails(repoDto, webhookDto);
+            return repoDto;
+        } catch (HttpClientErrorException ex){
+            if(ex.getStatusCode().equals(HttpStatus.NOT_FOUND)){
+                log.info("User can't access repository '{}' webhook settings",
+                        repoDto.getName());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * discoverRepositoryWebhookAsync method is the non-blocking flavor of discoverRepositoryWebhook
+     *
+     * @return Mono of given repository, empty if user can't access repository webhook settings
+     */
+    private Mono<IRepoDto> discoverRepositoryWebhookAsync(@NonNull String orgName, IRepoDto repoDto,
+                                                          @NonNull String accessToken) {
+        String path = String.format(URL_WEBHOOK_OPERATION, orgName, repoDto.getName());
+        return reactiveRestWrapper
+                .sendBearerAuthRequest(getOperation(LIST_HOOKS), path, HttpMethod.GET, null,
+                                       WebhookGithubDto[].class, accessToken)
+                .map(response -> {
+                    List<WebhookGithubDto> webhookDtos = Arrays.asList(Objects.requireNonNull(response.getBody()));
+                    setWebhookDetails(repoDto, getActiveHook(webhookDtos));
+                    return repoDto;
+                })
+                .onErrorResume(WebClientResponseException.class, ex -> {
+                    if (ex.getStatusCode().is4xxClientError()) {
+                        if (ex.getStatusCode().equals(HttpStatus.NOT_FOUND)) {
+                            log.info("User can't access repository '{}' webhook settings",
+                                     repoDto.getName());
+                        }
+                        return Mono.empty();
+                    }
+                    return Mono.error(ex);
+                });
+    }
+
     private WebhookGithubDto getRepositoryCxFlowWebhook(@NonNull String orgName, @NonNull String repoName,
                                                         @NonNull String accessToken){
         String path = String.format(URL_WEBHOOK_OPERATION, orgName, repoName);
         ResponseEntity<WebhookGithubDto[]> response =  restWrapper
-                .sendBearerAuthRequest(path, HttpMethod.GET,
+                .sendBearerAuthRequest(getOperation(LIST_HOOKS), path, HttpMethod.GET,
                                        null, null,
                                        WebhookGithubDto[].class, accessToken);
         ArrayList<WebhookGithubDto> webhookDtos = new ArrayList<>(Arrays.asList(
@@ -196,7 +341,7 @@ public class GitHubService extends AbstractScmService implements ScmService {
     }
 
     private AccessTokenGithubDto sendAccessTokenRequest(String path) {
-        ResponseEntity<AccessTokenGithubDto> response = restWrapper.sendRequest(path, HttpMethod.POST,
+        ResponseEntity<AccessTokenGithubDto> response = restWrapper.sendRequest(getOperation(TOKEN), path, HttpMethod.POST,
                                                                           null, null, AccessTokenGithubDto.class);
         AccessTokenGithubDto accessTokenDto = response.getBody();
         if(!verifyAccessToken(accessTokenDto)){
@@ -213,6 +358,56 @@ public class GitHubService extends AbstractScmService implements ScmService {
     }
 
 
+    /**
+     * Handles organization webhook "repository" events (created, deleted & renamed) and "meta"
+     * events of a deleted CxFlow repository webhook
+     */
+    @Override
+    public List<RepoEventDto> toRepoEvents(@NonNull HttpHeaders headers, @NonNull JsonNode event) {
+        String eventType = headers.getFirst(EVENT_HEADER);
+        String action = event.path("action").asText();
+        String orgId = event.path("organization").path("login").asText(null);
+        String repoName = event.path("repository").path("name").asText(null);
+        if (orgId == null || repoName == null) {
+            return Collections.emptyList();
+        }
+        RepoEventDto.RepoEventDtoBuilder repoEvent = RepoEventDto.builder()
+                .orgIdentity(orgId)
+                .repoIdentity(repoName)
+                .repoName(repoName);
+        if ("repository".equals(eventType)) {
+            switch (action) {
+                case "created":
+                    return Collections.singletonList(repoEvent.action(RepoEventDto.Action.CREATED).build());
+                case "deleted":
+                    return Collections.singletonList(repoEvent.action(RepoEventDto.Action.DELETED).build());
+                case "renamed":
+                    String previousName = event.path("changes").path("repository").path("name")
+                            .path("from").asText(repoName);
+                    return Collections.singletonList(repoEvent.action(RepoEventDto.Action.RENAMED)
+                                                             .previousRepoIdentity(previousName)
+                                                             .build());
+                default:
+                    return Collections.emptyList();
+            }
+        }
+        if ("meta".equals(eventType) && "deleted".equals(action)
+                && getCxFlowUrl().equals(event.path("hook").path("config").path("url").asText())) {
+            return Collections.singletonList(repoEvent.action(RepoEventDto.Action.WEBHOOK_REMOVED)
+                                                     .webhookId(event.path("hook_id").asText(null))
+                                                     .build());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Organization webhook deliveries are signed with the webhook secret (X-Hub-Signature-256)
+     */
+    @Override
+    public boolean isAuthentic(@NonNull HttpHeaders headers, @NonNull byte[] payload) {
+        return EventSignatures.isHmacSha256(eventsSecret, payload, headers.getFirst(SIGNATURE_HEADER));
+    }
+
     @Override
     public String getScopes() {
         return SCOPES;
@@ -2,15 +2,17 @@ package com.checkmarx.service;
 
 import com.checkmarx.controller.exception.ScmException;
 import com.checkmarx.dto.BaseDto;
+import com.checkmarx.dto.RepoEventDto;
 import com.checkmarx.dto.cxflow.CxFlowConfigDto;
 import com.checkmarx.dto.datastore.*;
 import com.checkmarx.dto.gitlab.*;
 import com.checkmarx.dto.web.OrganizationWebDto;
-import com.checkmarx.dto.web.RepoWebDto;
 import com.checkmarx.utils.*;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
@@ -23,7 +25,7 @@ import java.util.stream.Collectors;
 
 @Slf4j
 @Service("gitlab")
-public class GitLabService extends AbstractScmService implements ScmService  {
+public class GitLabService extends AbstractScmService implements ScmService, ScmEventSource {
 
     private static final String URL_AUTH_TOKEN = "https://gitlab.com/oauth/token";
 
@@ -36,11 +38,19 @@ public class GitLabService extends AbstractScmService implements ScmService  {
 
     private static final String URL_GET_GROUPS = BASE_API_URL + "/groups?top_level_only=true";
 
+    //keyset pagination is documented for /projects only, on /groups/:id/projects GitLab may
+    //silently fall back to offset pagination, hence the stable id order and the Link header walk
     private static final String URL_GET_PROJECTS = BASE_API_URL + "/groups/%s/projects" +
-            "?include_subgroups=true";
+            "?include_subgroups=true&pagination=keyset&order_by=id&sort=asc&per_page=100";
 
     private static final String BASE_DB_KEY = "gitlab.com";
 
+    private static final String EVENT_HEADER = "X-Gitlab-Event";
+
+    private static final String SYSTEM_HOOK_EVENT = "System Hook";
+
+    private static final String TOKEN_HEADER = "X-Gitlab-Token";
+
     private static final String SCOPES ="api";
 
     private static final String GRANT_TYPE ="refresh_token";
@@ -55,8 +65,13 @@ public class GitLabService extends AbstractScmService implements ScmService  {
 
     private static final String TOKEN_REQUEST_USER_AGENT = "CxIntegrations";
 
-    public GitLabService(RestWrapper restWrapper, DataService dataStoreService) {
-        super(restWrapper, dataStoreService);
+    @Value("${gitlab.events.secret}")
+    private String eventsSecret;
+
+    public GitLabService(RestWrapper restWrapper, DataService dataStoreService,
+                         FanOutExecutor fanOutExecutor, AccessTokenCache accessTokenCache,
+                         ReactiveRestWrapper reactiveRestWrapper) {
+        super(restWrapper, dataStoreService, fanOutExecutor, accessTokenCache, reactiveRestWrapper);
     }
 
 
@@ -69,6 +84,57 @@ public class GitLabService extends AbstractScmService implements ScmService  {
         return BASE_DB_KEY;
     }
 
+    /**
+     * System hook deliveries carry the system hook secret token (X-Gitlab-Token)
+     */
+    @Override
+    public boolean isAuthentic(@NonNull HttpHeaders headers, @NonNull byte[] payload) {
+        return EventSignatures.isToken(eventsSecret, headers.getFirst(TOKEN_HEADER));
+    }
+
+    /**
+     * Handles system hook project events (create, destroy, rename & transfer), the organization
+     * is the project top level group as listed by getOrganizations
+     */
+    @Override
+    public List<RepoEventDto> toRepoEvents(@NonNull HttpHeaders headers, @NonNull JsonNode event) {
+        String projectId = event.path("project_id").asText(null);
+        String path = event.path("path_with_namespace").asText(null);
+        if (!SYSTEM_HOOK_EVENT.equals(headers.getFirst(EVENT_HEADER)) || projectId == null || path == null) {
+            return Collections.emptyList();
+        }
+        RepoEventDto.RepoEventDtoBuilder repoEvent = RepoEventDto.builder()
+                .orgIdentity(getTopLevelGroup(path))
+                .repoIdentity(projectId)
+                .repoName(path);
+        switch (event.path("event_name").asText()) {
+            case "project_create":
+                return Collections.singletonList(repoEvent.action(RepoEventDto.Action.CREATED).build());
+            case "project_destroy":
+                return Collections.singletonList(repoEvent.action(RepoEventDto.Action.DELETED).build());
+            case "project_rename":
+            case "project_transfer":
+                String previousGroup = getTopLevelGroup(event.path("old_path_with_namespace").asText(path));
+                if (previousGroup.equals(getTopLevelGroup(path))) {
+                    return Collections.singletonList(repoEvent.action(RepoEventDto.Action.RENAMED)
+                                                             .previousRepoIdentity(projectId)
+                                                             .build());
+                }
+                return Arrays.asList(RepoEventDto.builder()
+                                             .action(RepoEventDto.Action.DELETED)
+                                             .orgIdentity(previousGroup)
+                                             .repoIdentity(projectId)
+                                             .build(),
+                                     repoEvent.action(RepoEventDto.Action.CREATED).build());
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private static String getTopLevelGroup(String pathWithNamespace) {
+        return StringUtils.substringBefore(pathWithNamespace, "/");
+    }
+
     @Override
     public List<OrganizationWebDto> getOrganizations(@NonNull String authCode) {
         AccessTokenGitlabDto accessToken = generateAccessToken(authCode);
@@ -77,33 +143,21 @@ public class GitLabService extends AbstractScmService implements ScmService  {
     }
 
     @Override
-    public List<RepoWebDto> getScmOrgRepos(@NonNull String orgId) {
-        AccessTokenManager accessTokenManager = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
-
+    protected List<RepoGitlabDto> discoverOrgRepos(@NonNull String orgId, AccessTokenManager accessTokenManager) {
         String path = String.format(URL_GET_PROJECTS, orgId);
-        ResponseEntity<RepoGitlabDto[]> response =  restWrapper
-                .sendBearerAuthRequest(path, HttpMethod.GET,
-                                       null, null,
-                                       RepoGitlabDto[].class, accessTokenManager.getAccessTokenStr());
-        ArrayList<RepoGitlabDto> repoGitlabDtos = new ArrayList<>(Arrays.asList(
-                Objects.requireNonNull(response.getBody())));
-        for (RepoGitlabDto repoDto : repoGitlabDtos) {
-            WebhookGitLabDto webhookDto = getRepositoryCxFlowWebhook(repoDto.getId(),
-                    accessTokenManager.getAccessTokenStr());
-            setWebhookDetails(repoDto, webhookDto);
-            repoDto.setName(StringUtils.substringAfter(repoDto.getName(), "/"));
-        }
-        OrgReposDto orgReposDto = Converter.convertToOrgRepoDto(accessTokenManager.getDbDto(), repoGitlabDtos);
-        dataStoreService.updateScmOrgRepo(orgReposDto);
-        return Converter.convertToListRepoWebDto(repoGitlabDtos);
+        String accessToken = accessTokenManager.getAccessTokenStr();
+        FanOutExecutor.Batch<RepoGitlabDto, RepoGitlabDto> webhookDiscovery = fanOutExecutor.newBatch(
+                getOrgKey(orgId), repoDto -> discoverRepositoryWebhook(repoDto, accessToken));
+        forEachPage(getOperation(LIST_REPOS), path, RepoGitlabDto[].class, accessToken, webhookDiscovery);
+        return webhookDiscovery.join();
     }
 
     @Override
     public BaseDto createWebhook(@NonNull String orgId, @NonNull String projectId ) {
-        AccessTokenManager accessTokenManager = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager accessTokenManager = getAccessTokenManager(orgId);
 
         String path = String.format(URL_WEBHOOK, projectId, getCxFlowUrl(), "1234") ;
-         ResponseEntity<WebhookGitLabDto> response =  restWrapper.sendBearerAuthRequest(path, HttpMethod.POST,
+         ResponseEntity<WebhookGitLabDto> response =  restWrapper.sendBearerAuthRequest(getOperation(CREATE_HOOK), path, HttpMethod.POST,
                                                                                         new WebhookGitLabDto(), null,
                                                                                         WebhookGitLabDto.class,
                                                                                         accessTokenManager.getAccessTokenStr());
@@ -111,7 +165,7 @@ public class GitLabService extends AbstractScmService implements ScmService  {
                 response.getBody(), "Missing webhook creation response.") ;
 
         validateWebhookDto(webhookGitLabDto);
-        dataStoreService.updateWebhook(projectId, accessTokenManager.getDbDto(), webhookGitLabDto.getId(), true);
+        updateWebhookState(projectId, accessTokenManager.getDbDto(), webhookGitLabDto.getId(), true);
         return new BaseDto(webhookGitLabDto.getId());
     }
 
@@ -124,7 +178,7 @@ public class GitLabService extends AbstractScmService implements ScmService  {
 
     @Override
     public CxFlowConfigDto getCxFlowConfiguration(@NonNull String orgId) {
-        AccessTokenManager tokenManager = new AccessTokenManager(getBaseDbKey(), orgId, dataStoreService);
+        AccessTokenManager tokenManager = getAccessTokenManager(orgId);
         CxFlowConfigDto result = getOrganizationSettings(orgId, tokenManager.getAccessTokenStr());
         Object tokenDto  = tokenManager.getFullAccessToken(AccessTokenGitlabDto.class);
         validateCxFlowConfig(result, (AccessTokenGitlabDto)tokenDto);
@@ -137,14 +191,14 @@ public class GitLabService extends AbstractScmService implements ScmService  {
         String tokenResponseJson = AccessTokenManager.convertObjectToJson(tokenResponse);
 
         List<OrgDto> dataStoreOrgs = toDataStoreOrganizations(groups, tokenResponseJson);
-        dataStoreService.storeOrgs(dataStoreOrgs);
+        storeOrgs(dataStoreOrgs);
 
         return toOrganizationsForWebClient(groups);
     }
 
     private List<GroupGitlabDto> getUserGroups(String accessToken) {
         ResponseEntity<GroupGitlabDto[]> response =
-                restWrapper.sendBearerAuthRequest(URL_GET_GROUPS, HttpMethod.GET, null, null,
+                restWrapper.sendBearerAuthRequest(getOperation(LIST_ORGS), URL_GET_GROUPS, HttpMethod.GET, null, null,
                                                   GroupGitlabDto[].class, accessToken);
 
         return Arrays.asList(Objects.requireNonNull(response.getBody()));
@@ -182,7 +236,7 @@ public class GitLabService extends AbstractScmService implements ScmService  {
     private boolean accessTokenIsValid(String token) {
         boolean result = false;
         try {
-            restWrapper.sendBearerAuthRequest(URL_VALIDATE_TOKEN, HttpMethod.GET, null, null,
+            restWrapper.sendBearerAuthRequest(getOperation(VALIDATE_TOKEN), URL_VALIDATE_TOKEN, HttpMethod.GET, null, null,
                     CxFlowConfigDto.class,
                     token);
             result =true;
@@ -219,10 +273,17 @@ public class GitLabService extends AbstractScmService implements ScmService  {
                              scmDto.getClientId(), scmDto.getClientSecret());
     }
 
+    private RepoGitlabDto discoverRepositoryWebhook(RepoGitlabDto repoDto, @NonNull String accessToken) {
+        WebhookGitLabDto webhookDto = getRepositoryCxFlowWebhook(repoDto.getId(), accessToken);
+        setWebhookDetails(repoDto, webhookDto);
+        repoDto.setName(StringUtils.substringAfter(repoDto.getName(), "/"));
+        return repoDto;
+    }
+
     private WebhookGitLabDto getRepositoryCxFlowWebhook(@NonNull String repoId,
                                                         @NonNull String accessToken){
         String path = String.format(URL_GET_WEBHOOKS, repoId);
-        ResponseEntity<WebhookGitLabDto[]> response =  restWrapper.sendBearerAuthRequest(path, HttpMethod.GET,
+        ResponseEntity<WebhookGitLabDto[]> response =  restWrapper.sendBearerAuthRequest(getOperation(LIST_HOOKS), path, HttpMethod.GET,
                 null, null,
                 WebhookGitLabDto[].class, accessToken);
         ArrayList<WebhookGitLabDto> webhookDtos = new ArrayList<>(Arrays.asList(
@@ -247,7 +308,8 @@ public class GitLabService extends AbstractScmService implements ScmService  {
     }
 
     private AccessTokenGitlabDto sendAccessTokenRequest(String path, Map<String, String> headers) {
-        ResponseEntity<AccessTokenGitlabDto> response = restWrapper.sendRequest(path, HttpMethod.POST, null, headers, AccessTokenGitlabDto.class);
+        ResponseEntity<AccessTokenGitlabDto> response = restWrapper.sendRequest(getOperation(TOKEN), path, HttpMethod.POST, null, headers,
+                                                                                         AccessTokenGitlabDto.class);
 
         AccessTokenGitlabDto tokenGitlabDto = Objects.requireNonNull(
                 response.getBody(), "Missing access token generation response.");
@@ -0,0 +1,22 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.BaseDto;
+import com.checkmarx.dto.web.RepoWebDto;
+import lombok.NonNull;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * ReactiveScmService is the non-blocking flavor of ScmService, implemented by the Scm services
+ * whose calls can run on WebClient without holding a thread per in-flight request
+ */
+public interface ReactiveScmService {
+
+    Mono<List<RepoWebDto>> getScmOrgReposAsync(@NonNull String orgId);
+    Mono<BaseDto> createWebhookAsync(@NonNull String orgId, @NonNull String repoId);
+    Mono<Void> deleteWebhookAsync(@NonNull String orgId, @NonNull String repoId,
+                                  @NonNull String webhookId);
+    String getBaseDbKey();
+
+}
@@ -0,0 +1,131 @@
+package com.checkmarx.service;
+
+import com.checkmarx.controller.exception.DataStoreException;
+import com.checkmarx.dto.RepoEventDto;
+import com.checkmarx.dto.datastore.OrgReposDto;
+import com.checkmarx.dto.datastore.RepoDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RepoEventService applies repository changes received as Scm events to the organization
+ * repositories state, as deltas: only the repositories an event touches are written to DataStore,
+ * and a cached organization repositories snapshot is patched instead of being re-crawled.
+ * Deleted repositories are stored as not hooked, since DataStore has no repository removal. A
+ * removed webhook is only applied when it is the stored one, so a late event of an older CxFlow
+ * webhook doesn't clear a re-created one.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RepoEventService {
+
+    private final DataService dataStoreService;
+
+    private final RepoSnapshotService repoSnapshotService;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param scmService Scm the events were sent by
+     * @param events     repository changes, may span several organizations
+     * @return number of repositories updated in DataStore
+     */
+    public int apply(ScmService scmService, List<RepoEventDto> events) {
+        String scm = scmService.getBaseDbKey();
+        Map<String, List<RepoEventDto>> eventsByOrg = new LinkedHashMap<>();
+        for (RepoEventDto event : events) {
+            eventsByOrg.computeIfAbsent(event.getOrgIdentity(), orgId -> new ArrayList<>()).add(event);
+            meterRegistry.counter("scm.events", "scm", scm, "action", event.getAction().name()).increment();
+        }
+        int updated = 0;
+        for (Map.Entry<String, List<RepoEventDto>> orgEvents : eventsByOrg.entrySet()) {
+            List<RepoDto> repoDtos = toRepoDtos(scm, orgEvents.getKey(), orgEvents.getValue());
+            if (!repoDtos.isEmpty()) {
+                dataStoreService.updateScmOrgRepo(OrgReposDto.builder()
+                                                          .scmUrl(scm)
+                                                          .orgIdentity(orgEvents.getKey())
+                                                          .repoList(repoDtos)
+                                                          .build());
+                updated += repoDtos.size();
+            }
+            repoSnapshotService.apply(scmService, orgEvents.getKey(), orgEvents.getValue());
+            log.info("Applied Scm: {} Org: {} repository events: {}", scm, orgEvents.getKey(),
+                     orgEvents.getValue());
+        }
+        return updated;
+    }
+
+    /**
+     * @return DataStore state of the repositories the organization events touch, last event of a
+     * repository wins
+     */
+    private List<RepoDto> toRepoDtos(String scm, String orgId, List<RepoEventDto> events) {
+        Map<String, RepoDto> repoDtos = new LinkedHashMap<>();
+        for (RepoEventDto event : events) {
+            switch (event.getAction()) {
+                case CREATED:
+                case DELETED:
+                    repoDtos.put(event.getRepoIdentity(), notHooked(event.getRepoIdentity()));
+                    break;
+                case WEBHOOK_REMOVED:
+                    RepoDto stored = repoDtos.containsKey(event.getRepoIdentity())
+                            ? repoDtos.get(event.getRepoIdentity())
+                            : getStoredRepo(scm, orgId, event.getRepoIdentity());
+                    if (isRemovedWebhook(event, stored.getWebhookId())) {
+                        repoDtos.put(event.getRepoIdentity(), notHooked(event.getRepoIdentity()));
+                    } else {
+                        log.info("Skipped removal of webhook: {} of Scm: {} Org: {} repository: {}, stored webhook: {}",
+                                 event.getWebhookId(), scm, orgId, event.getRepoIdentity(), stored.getWebhookId());
+                    }
+                    break;
+                case RENAMED:
+                    String previousId = event.getPreviousRepoIdentity();
+                    if (previousId == null || previousId.equals(event.getRepoIdentity())) {
+                        break;
+                    }
+                    RepoDto previous = repoDtos.containsKey(previousId)
+                            ? repoDtos.get(previousId)
+                            : getStoredRepo(scm, orgId, previousId);
+                    repoDtos.put(previousId, notHooked(previousId));
+                    repoDtos.put(event.getRepoIdentity(), RepoDto.builder()
+                            .repoIdentity(event.getRepoIdentity())
+                            .webhookId(previous.getWebhookId())
+                            .isWebhookConfigured(previous.isWebhookConfigured())
+                            .build());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new ArrayList<>(repoDtos.values());
+    }
+
+    private RepoDto getStoredRepo(String scm, String orgId, String repoId) {
+        try {
+            RepoDto stored = dataStoreService.getScmOrgRepo(scm, orgId, repoId);
+            return stored != null ? stored : notHooked(repoId);
+        } catch (DataStoreException ex) {
+            log.debug("Repository: {} isn't stored for Scm: {} Org: {}", repoId, scm, orgId);
+            return notHooked(repoId);
+        }
+    }
+
+    /**
+     * @return true if the webhook the event removes is the given current webhook of the repository
+     */
+    static boolean isRemovedWebhook(RepoEventDto event, String webhookId) {
+        return event.getWebhookId() != null && event.getWebhookId().equals(webhookId);
+    }
+
+    private static RepoDto notHooked(String repoId) {
+        return RepoDto.builder().repoIdentity(repoId).isWebhookConfigured(false).build();
+    }
+}
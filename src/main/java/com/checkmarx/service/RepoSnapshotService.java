@@ -0,0 +1,181 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.RepoEventDto;
+import com.checkmarx.dto.web.RepoWebDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RepoSnapshotService keeps the last known repositories & webhooks list of each Scm organization.
+ * A snapshot older than repos.snapshot.refresh.after is still served right away while it's rebuilt
+ * from the Scm in the background (stale-while-revalidate), a snapshot older than
+ * repos.snapshot.max.staleness is dropped and the list is rebuilt on the caller thread.
+ * Concurrent listings of the same organization, snapshot enabled or not, share a single Scm crawl
+ * (and DataStore update), counted by the repos.crawls metric. Repository changes received as Scm
+ * events are patched into the snapshot without a crawl. Invalidation bumps the organization
+ * generation, crawls started before it neither store their snapshot nor take new callers.
+ */
+@Slf4j
+@Service
+public class RepoSnapshotService {
+
+    private final ExecutorService refreshExecutor;
+    private final boolean enabled;
+    private final Duration refreshAfter;
+
+    private final Cache<String, RepoSnapshot> snapshots;
+    private final SingleFlight<RepoSnapshot> crawls;
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    public RepoSnapshotService(@Qualifier("repoSnapshotRefreshExecutorService") ExecutorService refreshExecutor,
+                               MeterRegistry meterRegistry,
+                               @Value("${repos.snapshot.enabled}") boolean enabled,
+                               @Value("${repos.snapshot.refresh.after}") long refreshAfter,
+                               @Value("${repos.snapshot.max.staleness}") long maxStaleness,
+                               @Value("${repos.snapshot.size}") long maxSize) {
+        this.refreshExecutor = refreshExecutor;
+        this.enabled = enabled;
+        this.refreshAfter = Duration.ofSeconds(refreshAfter);
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxStaleness, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "repos.snapshot");
+        this.crawls = new SingleFlight<>(meterRegistry, "repos.crawls");
+    }
+
+    /**
+     * @param scmService Scm to rebuild the organization repositories list from
+     * @param orgId      organization id
+     * @return last known organization repositories list and the time it was fetched from the Scm
+     */
+    public RepoSnapshot getScmOrgRepos(ScmService scmService, String orgId) {
+        String key = getKey(scmService, orgId);
+        if (!enabled) {
+            return crawls.execute(scmService.getBaseDbKey(), key, () -> crawl(scmService, orgId));
+        }
+        long generation = getGeneration(key);
+        RepoSnapshot snapshot = snapshots.getIfPresent(key);
+        if (snapshot == null) {
+            return crawls.execute(scmService.getBaseDbKey(), key,
+                                  () -> refresh(key, generation, scmService, orgId));
+        }
+        if (snapshot.getFetchedAt().plus(refreshAfter).isBefore(Instant.now())) {
+            log.debug("Serving stale repositories snapshot of: {}, refreshing in background", key);
+            crawls.submit(scmService.getBaseDbKey(), key, () -> refresh(key, generation, scmService, orgId),
+                          refreshExecutor);
+        }
+        return snapshot;
+    }
+
+    /**
+     * invalidate method drops the organization snapshot, used once the organization webhooks
+     * were changed through this service
+     */
+    public void invalidate(ScmService scmService, String orgId) {
+        String key = getKey(scmService, orgId);
+        generations.merge(key, 1L, Long::sum);
+        crawls.detach(key);
+        snapshots.invalidate(key);
+    }
+
+    /**
+     * apply method patches the organization snapshot, if any, with repository changes received
+     * as Scm events. The snapshot fetch time is kept, so its refresh schedule doesn't change
+     *
+     * @param scmService Scm the events were sent by
+     * @param orgId      organization id
+     * @param events     organization repository changes
+     */
+    public void apply(ScmService scmService, String orgId, List<RepoEventDto> events) {
+        snapshots.asMap().computeIfPresent(getKey(scmService, orgId), (key, snapshot) ->
+                new RepoSnapshot(patch(snapshot.getRepos(), events), snapshot.getFetchedAt()));
+    }
+
+    private static List<RepoWebDto> patch(List<RepoWebDto> repos, List<RepoEventDto> events) {
+        Map<String, RepoWebDto> reposById = new LinkedHashMap<>();
+        for (RepoWebDto repo : repos) {
+            reposById.put(repo.getId(), repo);
+        }
+        for (RepoEventDto event : events) {
+            String repoId = event.getRepoIdentity();
+            RepoWebDto repo = reposById.get(repoId);
+            switch (event.getAction()) {
+                case CREATED:
+                    reposById.putIfAbsent(repoId, RepoWebDto.builder().id(repoId).name(event.getRepoName()).build());
+                    break;
+                case DELETED:
+                    reposById.remove(repoId);
+                    break;
+                case RENAMED:
+                    RepoWebDto previous = reposById.remove(event.getPreviousRepoIdentity());
+                    if (previous != null) {
+                        reposById.put(repoId, previous.toBuilder().id(repoId).name(event.getRepoName()).build());
+                    }
+                    break;
+                case WEBHOOK_REMOVED:
+                    if (repo != null && RepoEventService.isRemovedWebhook(event, repo.getWebhookId())) {
+                        reposById.put(repoId, repo.toBuilder().webhookId(null).webhookEnabled(false).build());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new ArrayList<>(reposById.values());
+    }
+
+    private RepoSnapshot refresh(String key, long generation, ScmService scmService, String orgId) {
+        try {
+            RepoSnapshot snapshot = crawl(scmService, orgId);
+            //an invalidation during the crawl makes it outdated
+            snapshots.asMap().compute(key, (snapshotKey, current) ->
+                    getGeneration(snapshotKey) == generation ? snapshot : current);
+            return snapshot;
+        } catch (RuntimeException ex) {
+            log.warn("Failed to refresh repositories snapshot of: {}", key, ex);
+            throw ex;
+        }
+    }
+
+    private static RepoSnapshot crawl(ScmService scmService, String orgId) {
+        return new RepoSnapshot(scmService.getScmOrgRepos(orgId), Instant.now());
+    }
+
+    private long getGeneration(String key) {
+        return generations.getOrDefault(key, 0L);
+    }
+
+    private static String getKey(ScmService scmService, String orgId) {
+        return scmService.getBaseDbKey() + "/" + orgId;
+    }
+
+    @Getter
+    public static class RepoSnapshot {
+        private final List<RepoWebDto> repos;
+        private final Instant fetchedAt;
+
+        private RepoSnapshot(List<RepoWebDto> repos, Instant fetchedAt) {
+            this.repos = repos;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.RepoEventDto;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.NonNull;
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+
+/**
+ * ScmEventSource is implemented by the Scm services able to turn their organization, repository
+ * and webhook events into repository changes. Events are only parsed once isAuthentic accepted
+ * their delivery.
+ */
+public interface ScmEventSource {
+
+    /**
+     * @param headers event delivery headers, carrying the event type for most Scms
+     * @param event   event payload
+     * @return repository changes the event implies, empty if it doesn't affect repositories or
+     *         CxFlow webhooks
+     */
+    List<RepoEventDto> toRepoEvents(@NonNull HttpHeaders headers, @NonNull JsonNode event);
+
+    /**
+     * @param headers event delivery headers, carrying the Scm signature or credentials
+     * @param payload raw event payload, as sent by the Scm
+     * @return true if the event was sent with the Scm configured events secret
+     */
+    boolean isAuthentic(@NonNull HttpHeaders headers, @NonNull byte[] payload);
+    String getBaseDbKey();
+
+}
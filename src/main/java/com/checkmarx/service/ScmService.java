@@ -2,8 +2,10 @@ package com.checkmarx.service;
 
 import com.checkmarx.dto.BaseDto;
 import com.checkmarx.dto.cxflow.CxFlowConfigDto;
+import com.checkmarx.dto.datastore.OrgReposDto;
 import com.checkmarx.dto.web.OrganizationWebDto;
 import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.dto.web.WebhookWebDto;
 import lombok.NonNull;
 
 import java.util.List;
@@ -13,9 +15,12 @@ public interface ScmService {
 
     List<OrganizationWebDto> getOrganizations(@NonNull String authCode);
     List<RepoWebDto> getScmOrgRepos(@NonNull String orgId);
+    OrgReposDto getScmOrgRepoStates(@NonNull String orgId);
     BaseDto createWebhook(@NonNull String orgId, @NonNull String repoId);
     void deleteWebhook(@NonNull String orgId, @NonNull String repoId,
                               @NonNull String webhookId);
+    List<WebhookWebDto> createWebhooks(@NonNull String orgId, @NonNull List<String> repoIds);
+    List<WebhookWebDto> deleteWebhooks(@NonNull String orgId, @NonNull List<WebhookWebDto> webhooks);
     CxFlowConfigDto getCxFlowConfiguration(@NonNull String orgId);
     String getBaseDbKey();
     String getScopes();
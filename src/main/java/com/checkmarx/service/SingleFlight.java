@@ -0,0 +1,113 @@
+package com.checkmarx.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight runs at most one call per (scm, key) at a time. Callers asking for a key while its
+ * call is in flight don't start it again, they wait for it and share its result or failure.
+ * Calls started and calls coalesced are counted per Scm under the given metric name. A detached
+ * call keeps running for the callers it already has, later callers start a new one.
+ */
+class SingleFlight<V> {
+
+    private final MeterRegistry meterRegistry;
+    private final String metricName;
+
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    SingleFlight(MeterRegistry meterRegistry, String metricName) {
+        this.meterRegistry = meterRegistry;
+        this.metricName = metricName;
+    }
+
+    /**
+     * execute method runs the call on the caller thread, or joins the same key call in flight
+     *
+     * @return call result, failure is re-thrown as is
+     */
+    V execute(String scm, String key, Supplier<V> call) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = start(scm, key, future);
+        if (running != null) {
+            return join(running);
+        }
+        run(key, future, call);
+        return join(future);
+    }
+
+    /**
+     * submit method runs the call on the given executor, or returns the same key call in flight
+     *
+     * @return future of the call result
+     */
+    CompletableFuture<V> submit(String scm, String key, Supplier<V> call, Executor executor) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = start(scm, key, future);
+        if (running != null) {
+            return running;
+        }
+        try {
+            executor.execute(() -> run(key, future, call));
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * detach method lets the next callers of the key start a new call instead of joining the one
+     * in flight, used once the call result is known to be outdated
+     */
+    void detach(String key) {
+        inFlight.remove(key);
+    }
+
+    /**
+     * @return the same key call in flight, null if the given future was registered as the one
+     */
+    private CompletableFuture<V> start(String scm, String key, CompletableFuture<V> future) {
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        getCounter(scm, running == null ? "started" : "coalesced").increment();
+        return running;
+    }
+
+    private void run(String key, CompletableFuture<V> future, Supplier<V> call) {
+        try {
+            future.complete(call.get());
+        } catch (RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private Counter getCounter(String scm, String result) {
+        return counters.computeIfAbsent(scm + " " + result, key ->
+                meterRegistry.counter(metricName, "scm", scm, "result", result));
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.checkmarx.service;
+
+import com.checkmarx.dto.datastore.OrgDto;
+import com.checkmarx.dto.datastore.OrgReposDto;
+import com.checkmarx.dto.datastore.RepoDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * WebhookReconciliationService walks the connected organizations of every Scm in the background,
+ * one organization at a time, and fixes DataStore webhook state that drifted from the Scm (hooks
+ * removed or re-created from the Scm UI, new or removed repositories). Only the repositories whose
+ * state differs are written, and stored state is read again right before writing: repositories
+ * whose stored state changed during the crawl (webhook created or deleted through the api) are
+ * left as they are. Organizations are visited in identity order at most
+ * webhook.reconciliation.orgs.per.minute per minute, evenly spaced; the walk position (Scm &
+ * last organization) is kept in webhook.reconciliation.cursor.file when set, so a restart resumes
+ * the walk instead of starting it over.
+ */
+@Slf4j
+@Service
+public class WebhookReconciliationService {
+
+    private static final String CURSOR_SCM = "scm";
+    private static final String CURSOR_ORG = "org";
+
+    private final List<ScmService> scmServices;
+    private final DataService dataStoreService;
+    private final RepoSnapshotService repoSnapshotService;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int orgsPerMinute;
+    private final Path cursorFile;
+
+    private ScheduledExecutorService scheduler;
+
+    private int scmIndex;
+    private String lastOrgIdentity;
+    private Deque<String> pendingOrgs;
+
+    public WebhookReconciliationService(List<ScmService> scmServices,
+                                        DataService dataStoreService,
+                                        RepoSnapshotService repoSnapshotService,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${webhook.reconciliation.enabled}") boolean enabled,
+                                        @Value("${webhook.reconciliation.orgs.per.minute}") int orgsPerMinute,
+                                        @Value("${webhook.reconciliation.cursor.file}") String cursorFile) {
+        this.scmServices = scmServices.stream()
+                .sorted(Comparator.comparing(ScmService::getBaseDbKey))
+                .collect(Collectors.toList());
+        this.dataStoreService = dataStoreService;
+        this.repoSnapshotService = repoSnapshotService;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.orgsPerMinute = orgsPerMinute;
+        this.cursorFile = StringUtils.isBlank(cursorFile) ? null : Paths.get(cursorFile.trim());
+    }
+
+    @PostConstruct
+    private void start() {
+        if (!enabled || scmServices.isEmpty()) {
+            return;
+        }
+        loadCursor();
+        long periodMillis = TimeUnit.MINUTES.toMillis(1) / Math.max(orgsPerMinute, 1);
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("webhook-reconciliation-"));
+        scheduler.scheduleWithFixedDelay(this::reconcileNextOrgSafely, periodMillis, periodMillis,
+                                         TimeUnit.MILLISECONDS);
+        log.info("Webhook reconciliation started, {} organizations per minute, resuming after: {} {}",
+                 orgsPerMinute, scmServices.get(scmIndex).getBaseDbKey(), lastOrgIdentity);
+    }
+
+    @PreDestroy
+    private void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * reconcileNextOrg method reconciles the organization following the cursor, moving to the
+     * next Scm once all organizations of the current one were visited
+     *
+     * @return identity of the reconciled organization, null if the current Scm had none left
+     */
+    public synchronized String reconcileNextOrg() {
+        ScmService scmService = scmServices.get(scmIndex);
+        if (pendingOrgs == null) {
+            pendingOrgs = getOrgsAfterCursor(scmService);
+        }
+        String orgIdentity = pendingOrgs.poll();
+        if (orgIdentity == null) {
+            scmIndex = (scmIndex + 1) % scmServices.size();
+            lastOrgIdentity = null;
+            pendingOrgs = null;
+        } else {
+            reconcile(scmService, orgIdentity);
+            lastOrgIdentity = orgIdentity;
+        }
+        saveCursor();
+        return orgIdentity;
+    }
+
+    /**
+     * reconcile method compares the organization repositories webhook state stored in DataStore
+     * with the Scm one, and writes the repositories that differ and weren't updated in DataStore
+     * meanwhile
+     *
+     * @return number of repositories updated in DataStore
+     */
+    public int reconcile(ScmService scmService, String orgIdentity) {
+        String scm = scmService.getBaseDbKey();
+        try {
+            Map<String, RepoDto> storedBeforeCrawl = getStoredRepos(scm, orgIdentity);
+            Map<String, RepoDto> storedRepos = new HashMap<>(storedBeforeCrawl);
+            OrgReposDto scmState = scmService.getScmOrgRepoStates(orgIdentity);
+            List<RepoDto> drifted = new ArrayList<>();
+            for (RepoDto repoDto : scmState.getRepoList()) {
+                RepoDto storedRepo = storedRepos.remove(repoDto.getRepoIdentity());
+                if (storedRepo == null || !isSameWebhook(storedRepo, repoDto)) {
+                    drifted.add(repoDto);
+                }
+            }
+            for (RepoDto storedRepo : storedRepos.values()) {
+                if (storedRepo.isWebhookConfigured()) {
+                    drifted.add(RepoDto.builder().repoIdentity(storedRepo.getRepoIdentity()).build());
+                }
+            }
+            if (!drifted.isEmpty()) {
+                drifted = skipUpdatedDuringCrawl(scm, orgIdentity, drifted, storedBeforeCrawl);
+            }
+            if (drifted.isEmpty()) {
+                countOrg(scm, "in_sync");
+                return 0;
+            }
+            log.info("Webhook state drifted for Scm: {} Org: {}, updating repositories: {}", scm,
+                     orgIdentity, drifted);
+            scmState.setRepoList(drifted);
+            dataStoreService.updateScmOrgRepo(scmState);
+            repoSnapshotService.invalidate(scmService, orgIdentity);
+            countOrg(scm, "drifted");
+            meterRegistry.counter("webhook.reconciliation.repos", "scm", scm).increment(drifted.size());
+            return drifted.size();
+        } catch (RuntimeException ex) {
+            log.warn("Webhook reconciliation of Scm: {} Org: {} failed, skipping it: {}", scm,
+                     orgIdentity, ex.getMessage());
+            countOrg(scm, "failed");
+            return 0;
+        }
+    }
+
+    private Map<String, RepoDto> getStoredRepos(String scm, String orgIdentity) {
+        Map<String, RepoDto> storedRepos = new HashMap<>();
+        for (RepoDto repoDto : dataStoreService.getScmOrgRepos(scm, orgIdentity)) {
+            storedRepos.put(repoDto.getRepoIdentity(), repoDto);
+        }
+        return storedRepos;
+    }
+
+    /**
+     * @return drifted repositories whose stored state is still the one read before the crawl
+     */
+    private List<RepoDto> skipUpdatedDuringCrawl(String scm, String orgIdentity, List<RepoDto> drifted,
+                                                 Map<String, RepoDto> storedBeforeCrawl) {
+        Map<String, RepoDto> storedNow = getStoredRepos(scm, orgIdentity);
+        List<RepoDto> unchanged = new ArrayList<>(drifted.size());
+        for (RepoDto repoDto : drifted) {
+            RepoDto before = storedBeforeCrawl.get(repoDto.getRepoIdentity());
+            RepoDto now = storedNow.get(repoDto.getRepoIdentity());
+            if (before == null ? now == null : now != null && isSameWebhook(before, now)) {
+                unchanged.add(repoDto);
+            } else {
+                log.info("Webhook state of Scm: {} Org: {} repository: {} changed during reconciliation, skipping it",
+                         scm, orgIdentity, repoDto.getRepoIdentity());
+                meterRegistry.counter("webhook.reconciliation.skipped", "scm", scm).increment();
+            }
+        }
+        return unchanged;
+    }
+
+    private void reconcileNextOrgSafely() {
+        try {
+            reconcileNextOrg();
+        } catch (RuntimeException ex) {
+            log.error("Webhook reconciliation tick failure", ex);
+        }
+    }
+
+    private Deque<String> getOrgsAfterCursor(ScmService scmService) {
+        List<OrgDto> orgDtos;
+        try {
+            orgDtos = dataStoreService.getScmOrgs(scmService.getBaseDbKey());
+        } catch (RuntimeException ex) {
+            log.warn("Webhook reconciliation can't list Scm: {} organizations, skipping it: {}",
+                     scmService.getBaseDbKey(), ex.getMessage());
+            return new ArrayDeque<>();
+        }
+        return orgDtos.stream()
+                .map(OrgDto::getOrgIdentity)
+                .filter(Objects::nonNull)
+                .filter(orgIdentity -> lastOrgIdentity == null || orgIdentity.compareTo(lastOrgIdentity) > 0)
+                .sorted()
+                .distinct()
+                .collect(Collectors.toCollection(ArrayDeque::new));
+    }
+
+    private static boolean isSameWebhook(RepoDto storedRepo, RepoDto scmRepo) {
+        if (storedRepo.isWebhookConfigured() != scmRepo.isWebhookConfigured()) {
+            return false;
+        }
+        return !scmRepo.isWebhookConfigured()
+                || Objects.equals(storedRepo.getWebhookId(), scmRepo.getWebhookId());
+    }
+
+    private void countOrg(String scm, String result) {
+        meterRegistry.counter("webhook.reconciliation.orgs", "scm", scm, "result", result).increment();
+    }
+
+    private void loadCursor() {
+        if (cursorFile == null || !Files.exists(cursorFile)) {
+            return;
+        }
+        Properties cursor = new Properties();
+        try (InputStream in = Files.newInputStream(cursorFile)) {
+            cursor.load(in);
+        } catch (IOException ex) {
+            log.warn("Webhook reconciliation cursor: {} unreadable, starting over: {}", cursorFile,
+                     ex.getMessage());
+            return;
+        }
+        String scm = cursor.getProperty(CURSOR_SCM);
+        for (int i = 0; i < scmServices.size(); i++) {
+            if (scmServices.get(i).getBaseDbKey().equals(scm)) {
+                scmIndex = i;
+                lastOrgIdentity = cursor.getProperty(CURSOR_ORG);
+                return;
+            }
+        }
+    }
+
+    private void saveCursor() {
+        if (cursorFile == null) {
+            return;
+        }
+        Properties cursor = new Properties();
+        cursor.setProperty(CURSOR_SCM, scmServices.get(scmIndex).getBaseDbKey());
+        if (lastOrgIdentity != null) {
+            cursor.setProperty(CURSOR_ORG, lastOrgIdentity);
+        }
+        //written aside then moved over the cursor, a crash mid-write never leaves it truncated
+        Path tempFile = cursorFile.resolveSibling(cursorFile.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                cursor.store(out, "Webhook reconciliation cursor");
+            }
+            Files.move(tempFile, cursorFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warn("Webhook reconciliation cursor: {} save failure: {}", cursorFile, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.checkmarx.service;
+
+import com.checkmarx.controller.exception.DataStoreException;
+import com.checkmarx.dto.datastore.OrgReposDto;
+import com.checkmarx.dto.datastore.RepoDto;
+import com.checkmarx.utils.RestWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * WebhookStateBatcher coalesces webhook state updates of the same (scmUrl, org) arriving within
+ * a short window into a single DataStore OrgReposDto update. The pending queue is bounded, when
+ * it's full callers wait for the writer up to the update timeout. When a coalesced update is
+ * rejected its repositories are written one by one, so only the rejected ones fail. Updates not
+ * written within the update timeout fail, the ones still queued are then dropped, a write already
+ * in flight may still land. Updates the writer can't flush (interrupted writer) fail instead of
+ * being left pending.
+ */
+@Slf4j
+class WebhookStateBatcher {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final Consumer<OrgReposDto> writer;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final long timeoutMillis;
+    private final BlockingQueue<PendingUpdate> queue;
+    private final ExecutorService flushExecutor;
+    private final ScheduledThreadPoolExecutor timeoutExecutor;
+
+    private volatile boolean running = true;
+
+    WebhookStateBatcher(Consumer<OrgReposDto> writer, long windowMillis, int maxBatchSize,
+                        int queueCapacity, long timeoutMillis) {
+        this.writer = writer;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutMillis = timeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushExecutor = Executors.newSingleThreadExecutor(
+                new CustomizableThreadFactory("webhook-state-writer-"));
+        flushExecutor.execute(this::flushLoop);
+        this.timeoutExecutor = new ScheduledThreadPoolExecutor(
+                1, new CustomizableThreadFactory("webhook-state-timeout-"));
+        timeoutExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * submit method queues a single repository webhook state update
+     *
+     * @return future completed once the update is written to DataStore
+     */
+    CompletableFuture<Void> submit(String scmUrl, String orgIdentity, RepoDto repoDto) {
+        PendingUpdate update = new PendingUpdate(scmUrl, orgIdentity, repoDto);
+        long start = System.nanoTime();
+        if (!running) {
+            flush(Collections.singletonList(update));
+            return update.future;
+        }
+        try {
+            if (!queue.offer(update, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.error(RestWrapper.UPDATE_ORG_REPO_FAILURE + " timed out queueing, orgIdentity={}, repoIdentity={}",
+                          orgIdentity, repoDto.getRepoIdentity());
+                throw new DataStoreException(RestWrapper.UPDATE_ORG_REPO_FAILURE);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DataStoreException(RestWrapper.UPDATE_ORG_REPO_FAILURE);
+        }
+        //writer stopped meanwhile, the update may have missed the final drain
+        if (!running && queue.remove(update)) {
+            flush(Collections.singletonList(update));
+            return update.future;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - (System.nanoTime() - start);
+        try {
+            ScheduledFuture<?> timeout = timeoutExecutor.schedule(update::expire, remaining, TimeUnit.NANOSECONDS);
+            update.future.whenComplete((result, ex) -> timeout.cancel(false));
+        } catch (RejectedExecutionException ex) {
+            //closing, the update is flushed by close
+        }
+        return update.future;
+    }
+
+    /**
+     * close method stops accepting new updates and flushes the pending ones
+     */
+    void close() {
+        running = false;
+        flushExecutor.shutdown();
+        timeoutExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(windowMillis + IDLE_POLL_MILLIS * 10, TimeUnit.MILLISECONDS)) {
+                log.warn("Webhook state writer didn't finish flushing in time");
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        //updates queued while the writer was stopping
+        List<PendingUpdate> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        if (!leftovers.isEmpty()) {
+            flush(leftovers);
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingUpdate> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingUpdate first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectWindow(batch);
+                //expired updates
+                batch.removeIf(update -> update.future.isDone());
+                flush(batch);
+            } catch (InterruptedException ex) {
+                running = false;
+            } catch (RuntimeException ex) {
+                log.error("Webhook state writer failure: ", ex);
+            } finally {
+                //no-op for the flushed updates
+                batch.forEach(update -> update.future.completeExceptionally(
+                        new DataStoreException(RestWrapper.UPDATE_ORG_REPO_FAILURE)));
+                batch.clear();
+            }
+        }
+    }
+
+    private void collectWindow(List<PendingUpdate> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingUpdate next = running && remaining > 0
+                    ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                    : queue.poll();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingUpdate> batch) {
+        Map<String, List<PendingUpdate>> updatesByOrg = new LinkedHashMap<>();
+        for (PendingUpdate update : batch) {
+            updatesByOrg.computeIfAbsent(update.scmUrl + "/" + update.orgIdentity,
+                                         key -> new ArrayList<>()).add(update);
+        }
+        updatesByOrg.values().forEach(this::flushOrg);
+    }
+
+    private void flushOrg(List<PendingUpdate> orgUpdates) {
+        //later update of the same repository wins
+        Map<String, RepoDto> repos = new LinkedHashMap<>();
+        Map<String, List<PendingUpdate>> updatesByRepo = new HashMap<>();
+        for (PendingUpdate update : orgUpdates) {
+            String repoId = update.repoDto.getRepoIdentity();
+            repos.put(repoId, update.repoDto);
+            updatesByRepo.computeIfAbsent(repoId, key -> new ArrayList<>()).add(update);
+        }
+        PendingUpdate first = orgUpdates.get(0);
+        try {
+            write(first, new ArrayList<>(repos.values()));
+            orgUpdates.forEach(update -> update.future.complete(null));
+            return;
+        } catch (RuntimeException ex) {
+            if (repos.size() == 1) {
+                orgUpdates.forEach(update -> update.future.completeExceptionally(ex));
+                return;
+            }
+            log.warn("Coalesced webhook state update of {} repositories failed, writing them one by one: {}",
+                     repos.size(), ex.getMessage());
+        }
+        for (RepoDto repoDto : repos.values()) {
+            List<PendingUpdate> repoUpdates = updatesByRepo.get(repoDto.getRepoIdentity());
+            try {
+                write(first, Collections.singletonList(repoDto));
+                repoUpdates.forEach(update -> update.future.complete(null));
+            } catch (RuntimeException ex) {
+                repoUpdates.forEach(update -> update.future.completeExceptionally(ex));
+            }
+        }
+    }
+
+    private void write(PendingUpdate orgUpdate, List<RepoDto> repos) {
+        writer.accept(OrgReposDto.builder()
+                              .scmUrl(orgUpdate.scmUrl)
+                              .orgIdentity(orgUpdate.orgIdentity)
+                              .repoList(repos)
+                              .build());
+    }
+
+    private static class PendingUpdate {
+        private final String scmUrl;
+        private final String orgIdentity;
+        private final RepoDto repoDto;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingUpdate(String scmUrl, String orgIdentity, RepoDto repoDto) {
+            this.scmUrl = scmUrl;
+            this.orgIdentity = orgIdentity;
+            this.repoDto = repoDto;
+        }
+
+        private void expire() {
+            if (future.completeExceptionally(new DataStoreException(RestWrapper.UPDATE_ORG_REPO_FAILURE))) {
+                log.error(RestWrapper.UPDATE_ORG_REPO_FAILURE + " timed out, orgIdentity={}, repoIdentity={}",
+                          orgIdentity, repoDto.getRepoIdentity());
+            }
+        }
+    }
+}
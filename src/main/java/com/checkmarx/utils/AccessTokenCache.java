@@ -0,0 +1,98 @@
+package com.checkmarx.utils;
+
+import com.checkmarx.dto.datastore.OrgDto;
+import com.checkmarx.service.DataService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccessTokenCache keeps a parsed AccessTokenManager per Scm organization, so the organization
+ * token isn't read from DataStore and parsed again on every request.
+ * An entry lives until the token own expiry, capped by access.token.cache.ttl, or until a new
+ * token is stored for the organization.
+ */
+@Component
+public class AccessTokenCache {
+
+    private final DataService dataStoreService;
+
+    private final long maxTtl;
+
+    private final Cache<String, AccessTokenManager> cache;
+
+    public AccessTokenCache(DataService dataStoreService, MeterRegistry meterRegistry,
+                            @Value("${access.token.cache.ttl}") long maxTtl,
+                            @Value("${access.token.cache.size}") long maxSize) {
+        this.dataStoreService = dataStoreService;
+        this.maxTtl = maxTtl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "access.tokens");
+    }
+
+    /**
+     * @param scmUrl Scm DataStore key
+     * @param orgId  organization id
+     * @return organization token, token json already parsed
+     */
+    public AccessTokenManager get(String scmUrl, String orgId) {
+        return cache.get(getKey(scmUrl, orgId), key -> load(scmUrl, orgId));
+    }
+
+    public void invalidate(String scmUrl, String orgId) {
+        cache.invalidate(getKey(scmUrl, orgId));
+    }
+
+    /**
+     * invalidate method drops cached tokens of organizations a new token was stored for
+     *
+     * @param orgDtos organizations just stored in DataStore
+     */
+    public void invalidate(List<OrgDto> orgDtos) {
+        for (OrgDto orgDto : orgDtos) {
+            invalidate(orgDto.getScmUrl(), orgDto.getOrgIdentity());
+        }
+    }
+
+    private AccessTokenManager load(String scmUrl, String orgId) {
+        AccessTokenManager accessTokenManager = new AccessTokenManager(scmUrl, orgId, dataStoreService);
+        accessTokenManager.getAccessTokenDto();
+        return accessTokenManager;
+    }
+
+    private static String getKey(String scmUrl, String orgId) {
+        return scmUrl + "/" + orgId;
+    }
+
+    private class TokenExpiry implements Expiry<String, AccessTokenManager> {
+
+        @Override
+        public long expireAfterCreate(String key, AccessTokenManager value, long currentTime) {
+            long ttl = Math.max(0, Math.min(maxTtl, value.getRemainingLifetime()));
+            return TimeUnit.SECONDS.toNanos(ttl);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, AccessTokenManager value, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, AccessTokenManager value, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -2,20 +2,53 @@ package com.checkmarx.utils;
 
 import com.checkmarx.controller.exception.ScmException;
 import com.checkmarx.dto.AccessTokenDto;
+import com.checkmarx.dto.azure.AccessTokenAzureDto;
+import com.checkmarx.dto.bitbucket.AccessTokenBitbucketDto;
 import com.checkmarx.dto.datastore.ScmAccessTokenDto;
 import com.checkmarx.dto.github.AccessTokenGithubDto;
+import com.checkmarx.dto.gitlab.AccessTokenGitlabDto;
 import com.checkmarx.service.DataService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.Getter;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Getter
 public class AccessTokenManager {
-    
+
+    private static final String EXPIRES_IN = "expires_in";
+    private static final String CREATED_AT = "created_at";
+
+    /**
+     * ObjectMapper, ObjectReader and ObjectWriter are thread-safe once configured, shared to save
+     * mapper construction and type introspection on every token (de)serialization
+     */
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final ObjectReader ACCESS_TOKEN_READER = OBJECT_MAPPER.readerFor(AccessTokenDto.class);
+
+    private static final Map<Class<?>, ObjectReader> FULL_ACCESS_TOKEN_READERS = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    static {
+        for (Class<?> tokenClass : new Class<?>[]{AccessTokenGithubDto.class, AccessTokenGitlabDto.class,
+                AccessTokenBitbucketDto.class, AccessTokenAzureDto.class}) {
+            FULL_ACCESS_TOKEN_READERS.put(tokenClass, createFullAccessTokenReader(tokenClass));
+            WRITERS.put(tokenClass, OBJECT_MAPPER.writerFor(tokenClass));
+        }
+    }
+
     private ScmAccessTokenDto dbDto;
-    private AccessTokenDto tokenDto = null;
-    private Object fullAccessToken = null;
+    private volatile AccessTokenDto tokenDto = null;
+    private volatile Object fullAccessToken = null;
     
     public AccessTokenManager(String dbKey, String orgId, DataService dataStoreService){
         dbDto = dataStoreService.getSCMOrgToken(dbKey, orgId);
@@ -27,10 +60,8 @@ public class AccessTokenManager {
     }
 
     private AccessTokenDto parse(String tokenJson) {
-        ObjectMapper objectMapper = new ObjectMapper()
-                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         try {
-            return objectMapper.readValue(tokenJson, AccessTokenDto.class);
+            return ACCESS_TOKEN_READER.readValue(tokenJson);
         } catch (JsonProcessingException ex){
             throw new ScmException("Unable to Json -> Object");
         }
@@ -58,22 +89,56 @@ public class AccessTokenManager {
         return fullAccessToken;
     }
 
-    private Object parse(Class responseType) {
-        ObjectMapper objectMapper = new ObjectMapper();
+    private Object parse(Class<?> responseType) {
+        ObjectReader reader = FULL_ACCESS_TOKEN_READERS.computeIfAbsent(responseType,
+                AccessTokenManager::createFullAccessTokenReader);
         try {
-            return objectMapper.readValue(getAccessTokenJson(), responseType);
+            return reader.readValue(getAccessTokenJson());
         } catch (JsonProcessingException ex){
             throw new ScmException("Unable to Json -> Object");
         }
     }
 
+    /**
+     * getRemainingLifetime method estimates for how long the token is still valid, using the
+     * expires_in and created_at fields when the Scm token response includes them
+     *
+     * @return remaining lifetime in seconds, Long.MAX_VALUE when the token has no known expiry
+     */
+    public long getRemainingLifetime() {
+        JsonNode token;
+        try {
+            token = OBJECT_MAPPER.readTree(getAccessTokenJson());
+        } catch (JsonProcessingException ex){
+            throw new ScmException("Unable to Json -> Object");
+        }
+        if (!token.hasNonNull(EXPIRES_IN)) {
+            return Long.MAX_VALUE;
+        }
+        long expiresIn = token.get(EXPIRES_IN).asLong();
+        if (!token.hasNonNull(CREATED_AT)) {
+            return expiresIn;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        return token.get(CREATED_AT).asLong() + expiresIn - now;
+    }
+
     public static String convertObjectToJson(Object obj) {
-        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectWriter writer = obj == null ? OBJECT_MAPPER.writer()
+                : WRITERS.computeIfAbsent(obj.getClass(), OBJECT_MAPPER::writerFor);
         try {
-            return objectMapper.writeValueAsString(obj);
+            return writer.writeValueAsString(obj);
         } catch (JsonProcessingException ex){
             throw new ScmException("Unable to parse -> Json");
         }
     }
 
+    /**
+     * Full Scm token is parsed strictly, unknown properties fail the parsing
+     */
+    private static ObjectReader createFullAccessTokenReader(Class<?> tokenClass) {
+        return OBJECT_MAPPER.readerFor(tokenClass)
+                .with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
 }
@@ -0,0 +1,141 @@
+package com.checkmarx.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConditionalRequestInterceptor keeps the validators (ETag / Last-Modified) and body of
+ * authenticated Scm GET responses, per url and token. Next request to the same url with the same
+ * token is sent with If-None-Match / If-Modified-Since, and a 304 answer is served from the kept
+ * body as a regular 200 response, so unchanged repositories & webhooks lists aren't downloaded
+ * again (GitHub doesn't count 304 answers against the rate limit).
+ */
+@Slf4j
+@Component
+public class ConditionalRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    private final Cache<String, CachedResponse> cache;
+
+    public ConditionalRequestInterceptor(MeterRegistry meterRegistry,
+                                         @Value("${rest.conditional.cache.ttl}") long ttl,
+                                         @Value("${rest.conditional.cache.size}") long maxBytes) {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterAccess(ttl, TimeUnit.SECONDS)
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedResponse response) -> response.body.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "rest.conditional");
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (request.getMethod() != HttpMethod.GET || authorization == null) {
+            return execution.execute(request, body);
+        }
+        //token identity is kept hashed, raw tokens stay out of the cache keys
+        String key = DigestUtils.sha256Hex(authorization) + " " + request.getURI();
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            cached.setValidators(request.getHeaders());
+        }
+
+        ClientHttpResponse response = execution.execute(request, body);
+        if (cached != null && response.getRawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            response.close();
+            log.debug("Not modified, serving cached body of: {}", request.getURI());
+            return cached.toResponse();
+        }
+        if (response.getRawStatusCode() != HttpStatus.OK.value() || !hasValidators(response.getHeaders())) {
+            return response;
+        }
+
+        CachedResponse fresh;
+        try {
+            fresh = new CachedResponse(response.getHeaders(), StreamUtils.copyToByteArray(response.getBody()));
+        } finally {
+            response.close();
+        }
+        cache.put(key, fresh);
+        return fresh.toResponse();
+    }
+
+    private static boolean hasValidators(HttpHeaders headers) {
+        return headers.getETag() != null || headers.getFirst(HttpHeaders.LAST_MODIFIED) != null;
+    }
+
+    private static class CachedResponse {
+        private final HttpHeaders headers;
+        private final byte[] body;
+
+        private CachedResponse(HttpHeaders headers, byte[] body) {
+            this.headers = HttpHeaders.readOnlyHttpHeaders(new HttpHeaders(headers));
+            this.body = body;
+        }
+
+        private void setValidators(HttpHeaders requestHeaders) {
+            if (headers.getETag() != null) {
+                requestHeaders.setIfNoneMatch(headers.getETag());
+            }
+            String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+            if (lastModified != null) {
+                requestHeaders.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+
+        private ClientHttpResponse toResponse() {
+            return new ClientHttpResponse() {
+                @Override
+                public HttpStatus getStatusCode() {
+                    return HttpStatus.OK;
+                }
+
+                @Override
+                public int getRawStatusCode() {
+                    return HttpStatus.OK.value();
+                }
+
+                @Override
+                public String getStatusText() {
+                    return HttpStatus.OK.getReasonPhrase();
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public void close() {
+                    //nothing to release, body is in memory
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.checkmarx.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * EventSignatures checks Scm events delivery credentials against the configured events secret.
+ * An empty secret rejects every event, and values are compared in constant time.
+ */
+@Slf4j
+public final class EventSignatures {
+
+    private static final String HMAC_SHA_256 = "HmacSHA256";
+    private static final String SHA_256_PREFIX = "sha256=";
+    private static final String BASIC_PREFIX = "Basic ";
+
+    private EventSignatures() {
+    }
+
+    /**
+     * @param secret    events secret
+     * @param payload   raw event payload
+     * @param signature signature header value, "sha256=" followed by the hex HMAC of the payload
+     * @return true if signature is the HMAC SHA-256 of the payload keyed with the secret
+     */
+    public static boolean isHmacSha256(String secret, byte[] payload, String signature) {
+        if (StringUtils.isEmpty(secret) || signature == null || !signature.startsWith(SHA_256_PREFIX)) {
+            return false;
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC_SHA_256);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_SHA_256));
+            String expected = Hex.encodeHexString(mac.doFinal(payload));
+            return isEqual(expected, signature.substring(SHA_256_PREFIX.length()));
+        } catch (GeneralSecurityException ex) {
+            log.error("Event signature check failure: ", ex);
+            return false;
+        }
+    }
+
+    /**
+     * @param secret events secret
+     * @param token  token header value
+     * @return true if token is the secret
+     */
+    public static boolean isToken(String secret, String token) {
+        return !StringUtils.isEmpty(secret) && token != null && isEqual(secret, token);
+    }
+
+    /**
+     * @param secret  events secret
+     * @param headers event delivery headers
+     * @return true if the basic authorization password is the secret, user name is not checked
+     */
+    public static boolean isBasicAuthPassword(String secret, HttpHeaders headers) {
+        String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+        if (StringUtils.isEmpty(secret) || authorization == null || !authorization.startsWith(BASIC_PREFIX)) {
+            return false;
+        }
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(authorization.substring(BASIC_PREFIX.length()).trim()),
+                                     StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        int separator = credentials.indexOf(':');
+        return separator >= 0 && isEqual(secret, credentials.substring(separator + 1));
+    }
+
+    private static boolean isEqual(String expected, String actual) {
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                                     actual.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,212 @@
+package com.checkmarx.utils;
+
+import com.checkmarx.controller.exception.ScmException;
+import io.opentelemetry.context.Context;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * FanOutExecutor runs per-repository Scm calls concurrently. Global parallelism is bounded by the
+ * shared thread pool, and the number of in-flight calls of a single organization is bounded by
+ * scm.fan.out.org.concurrency so one big organization can't starve the others. Fan-outs started
+ * from within a fan-out task run inline on the calling thread, so nested fan-outs can't exhaust
+ * the pool or the organization permits while waiting for each other. Tasks run within the
+ * submitting thread trace context, so their spans are children of the submitting span. A task
+ * cancelled before it started gives its organization permit back on cancellation.
+ */
+@Slf4j
+@Component
+public class FanOutExecutor {
+
+    private final ExecutorService executorService;
+
+    private final int orgConcurrency;
+
+    private final Map<String, Semaphore> orgPermits = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Boolean> IN_FAN_OUT_TASK = ThreadLocal.withInitial(() -> false);
+
+    public FanOutExecutor(@Qualifier("scmFanOutExecutorService") ExecutorService executorService,
+                          @Value("${scm.fan.out.org.concurrency}") int orgConcurrency) {
+        this.executorService = executorService;
+        this.orgConcurrency = orgConcurrency;
+    }
+
+    /**
+     * @return max in-flight calls of a single organization, also applied by the reactive Scm
+     * services flavor
+     */
+    public int getOrgConcurrency() {
+        return orgConcurrency;
+    }
+
+    /**
+     * map method applies task on each item concurrently
+     *
+     * @param orgKey organization key the per-organization concurrency cap is applied on
+     * @param items  items to process
+     * @param task   task to apply on each item, null result means the item should be skipped
+     * @return non null task results, in the same order as the given items
+     */
+    public <T, R> List<R> map(String orgKey, Collection<T> items, Function<T, R> task) {
+        Batch<T, R> batch = newBatch(orgKey, task);
+        for (T item : items) {
+            batch.submit(item);
+        }
+        return batch.join();
+    }
+
+    /**
+     * newBatch method opens a batch, items can be submitted to it while they are still being
+     * fetched (page by page etc.)
+     *
+     * @param orgKey organization key the per-organization concurrency cap is applied on
+     * @param task   task to apply on each submitted item, null result means the item should be
+     *               skipped
+     * @return new empty batch
+     */
+    public <T, R> Batch<T, R> newBatch(String orgKey, Function<T, R> task) {
+        Semaphore permits = orgPermits.computeIfAbsent(orgKey, key -> new Semaphore(orgConcurrency, true));
+        return new Batch<>(permits, task);
+    }
+
+    public class Batch<T, R> {
+
+        private final Semaphore permits;
+        private final Function<T, R> task;
+        private final List<Future<R>> futures = new ArrayList<>();
+        private final List<PermitTask> permitTasks = new ArrayList<>();
+
+        private Batch(Semaphore permits, Function<T, R> task) {
+            this.permits = permits;
+            this.task = task;
+        }
+
+        /**
+         * submit method schedules task execution on the given item, blocks while the
+         * organization already has scm.fan.out.org.concurrency calls in flight
+         *
+         * @param item item to process
+         */
+        public void submit(T item) {
+            if (IN_FAN_OUT_TASK.get()) {
+                futures.add(runInline(item));
+                return;
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new ScmException(RestWrapper.GENERAL_RUNTIME_EXCEPTION, ex);
+            }
+            PermitTask permitTask = new PermitTask(item);
+            try {
+                futures.add(executorService.submit(Context.current().wrap(permitTask)));
+                permitTasks.add(permitTask);
+            } catch (RejectedExecutionException ex) {
+                permits.release();
+                cancel();
+                throw ex;
+            }
+        }
+
+        private Future<R> runInline(T item) {
+            CompletableFuture<R> future = new CompletableFuture<>();
+            try {
+                future.complete(task.apply(item));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+            return future;
+        }
+
+        /**
+         * join method waits for all submitted tasks, first task failure is re-thrown as is
+         *
+         * @return non null task results, in submission order
+         */
+        public List<R> join() {
+            List<R> results = new ArrayList<>(futures.size());
+            try {
+                for (Future<R> future : futures) {
+                    R result = future.get();
+                    if (result != null) {
+                        results.add(result);
+                    }
+                }
+            } catch (ExecutionException ex) {
+                cancel();
+                throw unwrap(ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new ScmException(RestWrapper.GENERAL_RUNTIME_EXCEPTION, ex);
+            }
+            return results;
+        }
+
+        /**
+         * cancel method cancels all submitted tasks, used when the items producer fails
+         */
+        public void cancel() {
+            futures.forEach(future -> future.cancel(true));
+            permitTasks.forEach(PermitTask::releaseIfNotStarted);
+        }
+
+        /**
+         * Task holding one organization permit, released exactly once: when the task ends, or on
+         * cancellation when the task never started
+         */
+        private class PermitTask implements Callable<R> {
+
+            private final T item;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+
+            private PermitTask(T item) {
+                this.item = item;
+            }
+
+            @Override
+            public R call() {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                IN_FAN_OUT_TASK.set(true);
+                try {
+                    return task.apply(item);
+                } finally {
+                    IN_FAN_OUT_TASK.remove();
+                    permits.release();
+                }
+            }
+
+            private void releaseIfNotStarted() {
+                if (claimed.compareAndSet(false, true)) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        log.error("Fan-out task failure: ", cause);
+        return new ScmException(RestWrapper.GENERAL_RUNTIME_EXCEPTION, cause);
+    }
+}
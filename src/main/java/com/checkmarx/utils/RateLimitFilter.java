@@ -0,0 +1,40 @@
+package com.checkmarx.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * RateLimitFilter applies the RateLimitInterceptor budgets to the non-blocking Scm calls, so the
+ * blocking and reactive Scm services flavors share one budget per (Scm host, token). Calls are
+ * delayed without blocking the event loop, and fail with an ScmException when their wait would
+ * exceed rest.rate.limit.max.wait.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter implements ExchangeFilterFunction {
+
+    private final RateLimitInterceptor rateLimitInterceptor;
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        String authorization = request.headers().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null) {
+            return next.exchange(request);
+        }
+        String provider = request.url().getHost();
+        return Mono.fromCallable(() -> rateLimitInterceptor.reserve(provider, authorization))
+                .flatMap(wait -> wait > 0
+                        ? Mono.delay(Duration.ofMillis(wait)).then(next.exchange(request))
+                        : next.exchange(request))
+                .doOnNext(response -> rateLimitInterceptor.update(provider, authorization,
+                                                                  response.headers().asHttpHeaders()));
+    }
+}
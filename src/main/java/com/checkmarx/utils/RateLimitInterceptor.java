@@ -0,0 +1,268 @@
+package com.checkmarx.utils;
+
+import com.checkmarx.controller.exception.ScmException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RateLimitInterceptor schedules authenticated Scm calls per (Scm host, token), learning the
+ * limits from the rate limit response headers (GitHub, GitLab, Azure & Bitbucket flavours).
+ * Calls are paced once the remaining budget drops under rest.rate.limit.pacing.threshold of the
+ * limit, paced calls get evenly spaced send slots in arrival order. Once the budget is exhausted
+ * calls wait for the window reset and are released together. Calls fail right away with an
+ * ScmException when their wait would exceed rest.rate.limit.max.wait. Waits are reserved under
+ * the bucket lock and spent outside of it. Throttled calls (429, or 403 with exhausted budget /
+ * Retry-After) are retried with jittered backoff, and fail with an ScmException once out of
+ * retries or when the retry delay exceeds rest.rate.limit.max.wait. The non-blocking Scm calls
+ * share the same buckets through RateLimitFilter.
+ */
+@Slf4j
+@Component
+public class RateLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String[] REMAINING_HEADERS = {"X-RateLimit-Remaining", "RateLimit-Remaining"};
+    private static final String[] LIMIT_HEADERS = {"X-RateLimit-Limit", "RateLimit-Limit"};
+    private static final String[] RESET_HEADERS = {"X-RateLimit-Reset", "RateLimit-Reset"};
+
+    /**
+     * Reset header values lower than that are seconds from now rather than epoch seconds
+     */
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+    private final MeterRegistry meterRegistry;
+    private final int maxRetries;
+    private final long backoffMillis;
+    private final long maxWaitMillis;
+    private final double pacingThreshold;
+
+    private final Cache<String, TokenBucket> buckets;
+    private final Map<String, AtomicInteger> queueDepths = new ConcurrentHashMap<>();
+    private final Map<String, Counter> throttleCounters = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(MeterRegistry meterRegistry,
+                                @Value("${rest.rate.limit.max.retries}") int maxRetries,
+                                @Value("${rest.rate.limit.backoff}") long backoffMillis,
+                                @Value("${rest.rate.limit.max.wait}") long maxWaitSeconds,
+                                @Value("${rest.rate.limit.pacing.threshold}") double pacingThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.maxWaitMillis = TimeUnit.SECONDS.toMillis(maxWaitSeconds);
+        this.pacingThreshold = pacingThreshold;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        String authorization = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null) {
+            return execution.execute(request, body);
+        }
+        String provider = request.getURI().getHost();
+        TokenBucket bucket = getBucket(provider, authorization);
+        AtomicInteger queueDepth = getQueueDepth(provider);
+
+        for (int attempt = 0; ; attempt++) {
+            queueDepth.incrementAndGet();
+            try {
+                long wait = bucket.reserve();
+                if (wait > 0) {
+                    sleep(wait);
+                }
+            } finally {
+                queueDepth.decrementAndGet();
+            }
+
+            ClientHttpResponse response = execution.execute(request, body);
+            bucket.update(response.getHeaders());
+            long retryDelay = getRetryDelay(response, bucket, attempt);
+            if (retryDelay < 0) {
+                return response;
+            }
+            getThrottleCounter(provider).increment();
+            if (attempt >= maxRetries || retryDelay > maxWaitMillis) {
+                response.close();
+                log.warn("Scm: {} throttled the request, giving up after {} retries", provider, attempt);
+                throw new ScmException(RestWrapper.SCM_RATE_LIMIT_EXHAUSTED);
+            }
+            response.close();
+            log.info("Scm: {} throttled the request, retrying in {} ms", provider, retryDelay);
+            sleep(retryDelay);
+        }
+    }
+
+    /**
+     * reserve method takes a call from the (Scm host, token) budget without blocking
+     *
+     * @param provider      Scm host
+     * @param authorization request authorization header
+     * @return millis the call must wait before being sent
+     * @throws ScmException when the wait would exceed rest.rate.limit.max.wait
+     */
+    long reserve(String provider, String authorization) {
+        return getBucket(provider, authorization).reserve();
+    }
+
+    /**
+     * update method learns the (Scm host, token) budget from the response rate limit headers
+     */
+    void update(String provider, String authorization, HttpHeaders responseHeaders) {
+        getBucket(provider, authorization).update(responseHeaders);
+    }
+
+    private TokenBucket getBucket(String provider, String authorization) {
+        return buckets.get(provider + " " + DigestUtils.sha256Hex(authorization), key -> new TokenBucket());
+    }
+
+    /**
+     * @return millis to wait before retrying, -1 if the response isn't a throttling one
+     */
+    private long getRetryDelay(ClientHttpResponse response, TokenBucket bucket, int attempt)
+            throws IOException {
+        int status = response.getRawStatusCode();
+        String retryAfter = response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        boolean throttled = status == HttpStatus.TOO_MANY_REQUESTS.value()
+                || (status == HttpStatus.FORBIDDEN.value() && (retryAfter != null || bucket.isExhausted()));
+        if (!throttled) {
+            return -1;
+        }
+        long jitter = ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+        if (NumberUtils.isDigits(retryAfter)) {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter)) + jitter;
+        }
+        long untilReset = bucket.millisUntilReset();
+        if (untilReset > 0) {
+            return untilReset + jitter;
+        }
+        return (backoffMillis << Math.min(attempt, 10)) / 2 + jitter;
+    }
+
+    private AtomicInteger getQueueDepth(String provider) {
+        return queueDepths.computeIfAbsent(provider, key ->
+                meterRegistry.gauge("rest.rate.limit.queue", Tags.of("provider", key),
+                                    new AtomicInteger()));
+    }
+
+    private Counter getThrottleCounter(String provider) {
+        return throttleCounters.computeIfAbsent(provider, key ->
+                meterRegistry.counter("rest.rate.limit.throttled", "provider", key));
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Scm rate limit");
+        }
+    }
+
+    private static long getLongHeader(HttpHeaders headers, String[] names) {
+        for (String name : names) {
+            String value = headers.getFirst(name);
+            if (NumberUtils.isDigits(StringUtils.trim(value))) {
+                return Long.parseLong(value.trim());
+            }
+        }
+        return -1;
+    }
+
+    private class TokenBucket {
+
+        //fair lock, paced calls get their send slots in arrival order
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        private volatile long limit = -1;
+        private volatile long remaining = -1;
+        private volatile long resetAtMillis;
+        private long nextSlotMillis;
+
+        /**
+         * @return millis to wait before sending the call, the lock is only held to reserve it
+         */
+        private long reserve() {
+            lock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                if (resetAtMillis <= now) {
+                    remaining = -1;
+                    return 0;
+                }
+                if (remaining == 0) {
+                    //exhausted budget, every waiting call is released at the window reset
+                    return checkWait(resetAtMillis - now);
+                }
+                long wait = 0;
+                if (remaining > 0 && remaining < limit * pacingThreshold) {
+                    long slot = Math.max(now, nextSlotMillis);
+                    wait = checkWait(slot - now);
+                    nextSlotMillis = slot + (resetAtMillis - now) / remaining;
+                }
+                if (remaining > 0) {
+                    remaining--;
+                }
+                return wait;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long checkWait(long wait) {
+            if (wait > maxWaitMillis) {
+                log.warn("Scm rate limit exhausted for {} more seconds", TimeUnit.MILLISECONDS.toSeconds(wait));
+                throw new ScmException(RestWrapper.SCM_RATE_LIMIT_EXHAUSTED);
+            }
+            return wait;
+        }
+
+        private void update(HttpHeaders headers) {
+            long newRemaining = getLongHeader(headers, REMAINING_HEADERS);
+            if (newRemaining < 0) {
+                return;
+            }
+            long reset = getLongHeader(headers, RESET_HEADERS);
+            if (reset >= 0) {
+                resetAtMillis = reset < EPOCH_SECONDS_THRESHOLD
+                        ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(reset)
+                        : TimeUnit.SECONDS.toMillis(reset);
+            }
+            limit = Math.max(getLongHeader(headers, LIMIT_HEADERS), newRemaining);
+            remaining = newRemaining;
+        }
+
+        private boolean isExhausted() {
+            return remaining == 0;
+        }
+
+        private long millisUntilReset() {
+            return resetAtMillis - System.currentTimeMillis();
+        }
+    }
+}
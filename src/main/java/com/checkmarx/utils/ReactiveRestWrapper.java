@@ -0,0 +1,124 @@
+package com.checkmarx.utils;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * ReactiveRestWrapper is the non-blocking counterpart of RestWrapper, sends requests via
+ * WebClient. Error responses are signalled as WebClientResponseException.
+ */
+@Slf4j
+@Component
+public class ReactiveRestWrapper {
+
+    @Autowired
+    WebClient webClient;
+
+    @Autowired
+    RestMetrics restMetrics;
+
+    @Autowired
+    Tracer tracer;
+
+    /**
+     * sendBearerAuthRequest method used as rest request template with bearer token in header,
+     * sends request via WebClient
+     *
+     * @param operation    called provider & logical operation, used as metrics tags
+     * @param path         url path
+     * @param method       http method
+     * @param body         request body
+     * @param responseType expected class structure as response
+     * @param token        access token
+     * @return Mono of ResponseEntity, emitted once the whole response body was read
+     */
+    public <T> Mono<ResponseEntity<T>> sendBearerAuthRequest(RestOperation operation, String path,
+                                                             HttpMethod method, Object body,
+                                                             Class<T> responseType, String token) {
+        WebClient.RequestBodySpec request = webClient.method(method)
+                .uri(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> headers.setBearerAuth(token));
+        if (body != null) {
+            request.bodyValue(body);
+        }
+        return record(operation, method, path, request.retrieve().toEntity(responseType));
+    }
+
+    /**
+     * sendBearerAuthPageRequest method used to fetch next page of a paginated api, the page uri
+     * is taken as is from the previous response so it is sent without any further encoding
+     *
+     * @param operation    called provider & logical operation, used as metrics tags
+     * @param pageUri      encoded page url
+     * @param responseType expected class structure as response
+     * @param token        access token
+     * @return Mono of ResponseEntity
+     */
+    public <T> Mono<ResponseEntity<T>> sendBearerAuthPageRequest(RestOperation operation, URI pageUri,
+                                                                 Class<T> responseType, String token) {
+        return record(operation, HttpMethod.GET, pageUri.toString(), webClient.get()
+                .uri(pageUri)
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> headers.setBearerAuth(token))
+                .retrieve()
+                .toEntity(responseType));
+    }
+
+    /**
+     * getPages method walks a paginated Scm api following the response Link header
+     *
+     * @param operation    called provider & logical operation, used as metrics tags
+     * @param path         first page url
+     * @param responseType expected class structure of a single page
+     * @param token        access token
+     * @return Flux of pages bodies, a page is emitted as soon as it arrives
+     */
+    public <T> Flux<T> getPages(RestOperation operation, String path, Class<T> responseType, String token) {
+        return sendBearerAuthRequest(operation, path, HttpMethod.GET, null, responseType, token)
+                .expand(response -> {
+                    URI nextPage = RestWrapper.getNextPageUri(response.getHeaders());
+                    return nextPage == null
+                            ? Mono.empty()
+                            : sendBearerAuthPageRequest(operation, nextPage, responseType, token);
+                })
+                .map(response -> Objects.requireNonNull(response.getBody()));
+    }
+
+    /**
+     * record method runs the call within a client span and records its duration & status class
+     * under the given operation, timed from subscription. The span parent is taken from the
+     * subscriber context, see Traces.withCurrentParent
+     */
+    private <T> Mono<ResponseEntity<T>> record(RestOperation operation, HttpMethod method, String url,
+                                               Mono<ResponseEntity<T>> call) {
+        return Mono.deferContextual(context -> {
+            Span span = RestWrapper.startClientSpan(tracer, operation, method, url, Traces.getParent(context));
+            long start = System.nanoTime();
+            return call.doOnSuccess(response -> {
+                        int status = response == null ? 0 : response.getStatusCodeValue();
+                        restMetrics.record(operation, status, start);
+                        RestWrapper.endClientSpan(span, status);
+                    })
+                    .doOnError(ex -> {
+                        int status = RestMetrics.getStatus(ex);
+                        restMetrics.record(operation, status, start);
+                        Traces.setError(span, ex);
+                        RestWrapper.endClientSpan(span, status);
+                    })
+                    .doOnCancel(span::end);
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package com.checkmarx.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RestMetrics records outbound calls of RestWrapper & ReactiveRestWrapper in the
+ * scm.client.requests timer, tagged by provider, operation and response status class (2xx, 4xx,
+ * 5xx..., io_error when no response was received). The timer publishes a percentile histogram,
+ * its count is the calls counter. Times include rate limit pacing and retries, as seen by the
+ * caller.
+ */
+@Component
+@RequiredArgsConstructor
+public class RestMetrics {
+
+    static final String METRIC_NAME = "scm.client.requests";
+    static final String IO_ERROR = "io_error";
+
+    private static final Duration MIN_EXPECTED = Duration.ofMillis(5);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(60);
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * @param operation   call operation
+     * @param status      response status code, 0 when no response was received
+     * @param startNanos  call start, taken from System.nanoTime()
+     */
+    public void record(RestOperation operation, int status, long startNanos) {
+        String statusClass = status == 0 ? IO_ERROR : (status / 100) + "xx";
+        timers.computeIfAbsent(operation + " " + statusClass, key ->
+                Timer.builder(METRIC_NAME)
+                        .tag("provider", operation.getProvider())
+                        .tag("operation", operation.getName())
+                        .tag("status", statusClass)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(MIN_EXPECTED)
+                        .maximumExpectedValue(MAX_EXPECTED)
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return status code of the error response the given exception carries, 0 if none
+     */
+    public static int getStatus(Throwable ex) {
+        if (ex instanceof RestClientResponseException) {
+            return ((RestClientResponseException) ex).getRawStatusCode();
+        }
+        if (ex instanceof WebClientResponseException) {
+            return ((WebClientResponseException) ex).getRawStatusCode();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,31 @@
+package com.checkmarx.utils;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * RestOperation names an outbound call for metrics: the provider called (Scm base db key or
+ * DataStore) and the logical operation (list-repos, create-hook, token...). Callers declare their
+ * operations as constants, so metrics tags stay bounded whatever the called urls are.
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RestOperation {
+
+    public static final String DATASTORE = "datastore";
+
+    private final String provider;
+    private final String name;
+
+    public static RestOperation of(String provider, String name) {
+        return new RestOperation(provider, name);
+    }
+
+    @Override
+    public String toString() {
+        return provider + " " + name;
+    }
+}
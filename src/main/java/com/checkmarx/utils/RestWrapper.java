@@ -1,13 +1,25 @@
 package com.checkmarx.utils;
 
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Component
@@ -32,6 +44,8 @@ public class RestWrapper {
             "- Wasn't able to save in database via DataStore service";
     public static final String GET_ORG_FAILURE = "Get org failure " +
             "- Wasn't able to get from database via DataStore service";
+    public static final String GET_SCM_ORGS_FAILURE = "Get scm organizations failure " +
+            "- Wasn't able to get from database via DataStore service";
     public static final String GET_ORG_REPOS_FAILURE = "Get org repositories failure " +
             "- Wasn't able to get from database via DataStore service";
     public static final String MISSING_ORG_REPO = "Org repository failure " +
@@ -41,6 +55,8 @@ public class RestWrapper {
     public static final String WEBHOOK_CREATE_FAILURE = "Failed to create repo webhook";
     public static final String WEBHOOK_DELETE_FAILURE = "Failed to delete repo webhook";
     public static final String SCM_NOT_SUPPORTED = "Given Scm isn't supported";
+    public static final String SCM_EVENTS_NOT_SUPPORTED = "Given Scm events aren't supported";
+    public static final String SCM_RATE_LIMIT_EXHAUSTED = "Scm rate limit is exhausted until its reset";
     public static final String UPDATE_ORG_REPO_FAILURE = "Update org repository failure " +
             "- Wasn't able to update database via DataStore service";
     public static final String MISSING_SCM_ORG = "Scm org failure - missing scm organization in " +
@@ -51,12 +67,21 @@ public class RestWrapper {
     public static final String GET_SCM_ORG_PROPERTIES_FAILURE = "Get org settings failure " +
             "- Wasn't able to get from database via DataStore service";
 
+    private static final Pattern NEXT_PAGE_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"?next\"?");
+
     @Autowired
     RestTemplate restTemplate;
 
+    @Autowired
+    RestMetrics restMetrics;
+
+    @Autowired
+    Tracer tracer;
+
    /**
      * sendRequest method used as rest request template, sends request via RestTemplate
      *
+     * @param operation    called provider & logical operation, used as metrics tags
      * @param path         url path
      * @param method       http method
      * @param body      request body
@@ -64,25 +89,27 @@ public class RestWrapper {
      * @param responseType expected class structure as response
      * @return ResponseEntity of any type
      */
-    public ResponseEntity sendRequest(String path, HttpMethod method,
+    public ResponseEntity sendRequest(RestOperation operation, String path, HttpMethod method,
                                       Object body,
                                       Map<String, String> headerMap,
                                       Class responseType) {
         HttpHeaders headers = createHeaders(headerMap);
         final HttpEntity<String> request = createRequest(body, headers);
-        return restTemplate.exchange(path, method, request, responseType);
+        return execute(operation, method, path,
+                       () -> restTemplate.exchange(path, method, request, responseType));
     }
 
     /**
      * sendRequest method used as rest request template, sends request via RestTemplate
      *
+     * @param operation    called provider & logical operation, used as metrics tags
      * @param path         url path
      * @param mapPostBody      request body in a form or a map
      * @param headerMap      request headers 
      * @param responseType expected class structure as response
      * @return ResponseEntity of any type
      */
-    public ResponseEntity sendUrlEncodedPostRequest(String path, 
+    public ResponseEntity sendUrlEncodedPostRequest(RestOperation operation, String path,
                                                     MultiValueMap<String, String> mapPostBody,
                                                     Map<String, String> headerMap,
                                                     Class responseType) {
@@ -90,25 +117,28 @@ public class RestWrapper {
         HttpHeaders headers = createHeaders(headerMap);
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
         HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(mapPostBody, headers);
-        return restTemplate.postForEntity(path, request, responseType);
+        return execute(operation, HttpMethod.POST, path,
+                       () -> restTemplate.postForEntity(path, request, responseType));
     }
 
     /**
      * sendRequest method used as rest request template, sends request via RestTemplate
      *
+     * @param operation    called provider & logical operation, used as metrics tags
      * @param path         url path
      * @param mapPostBody      request body in a form or a map
      * @param headers      request headers as map
      * @param responseType expected class structure as response
      * @return ResponseEntity of any type
      */
-    public ResponseEntity sendUrlEncodedPostRequest(String path, 
+    public ResponseEntity sendUrlEncodedPostRequest(RestOperation operation, String path,
                                                     MultiValueMap<String, String> mapPostBody,
                                                     HttpHeaders headers,
                                                     Class responseType) {
 
         HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(mapPostBody, headers);
-        return restTemplate.postForEntity(path, request, responseType);
+        return execute(operation, HttpMethod.POST, path,
+                       () -> restTemplate.postForEntity(path, request, responseType));
     }
     
     /**
@@ -145,6 +175,7 @@ public class RestWrapper {
      * sendBearerAuthRequest method used as rest request template with bearer token in header,
      * sends request via RestTemplate
      *
+     * @param operation called provider & logical operation, used as metrics tags
      * @param path      url path
      * @param method    http method
      * @param body      request body
@@ -153,13 +184,103 @@ public class RestWrapper {
      * @param token access token
      * @return ResponseEntity of any type
      */
-    public ResponseEntity sendBearerAuthRequest(String path, HttpMethod method, Object body,
-                                      Map<String, String> headerMap , Class responseType,
-                                      String token) {
+    public ResponseEntity sendBearerAuthRequest(RestOperation operation, String path, HttpMethod method,
+                                                Object body, Map<String, String> headerMap,
+                                                Class responseType, String token) {
         HttpHeaders headers = createHeaders(headerMap);
         headers.setBearerAuth(token);
         final HttpEntity<String> request = createRequest(body, headers);
-        return restTemplate.exchange(path, method, request, responseType);
+        return execute(operation, method, path,
+                       () -> restTemplate.exchange(path, method, request, responseType));
+
+    }
+
+    /**
+     * sendBearerAuthPageRequest method used to fetch next page of a paginated api, the page uri
+     * is taken as is from the previous response so it is sent without any further encoding
+     *
+     * @param operation    called provider & logical operation, used as metrics tags
+     * @param pageUri      encoded page url
+     * @param responseType expected class structure as response
+     * @param token access token
+     * @return ResponseEntity of any type
+     */
+    public ResponseEntity sendBearerAuthPageRequest(RestOperation operation, URI pageUri,
+                                                    Class responseType, String token) {
+        HttpHeaders headers = createHeaders(null);
+        headers.setBearerAuth(token);
+        final HttpEntity<String> request = createRequest(null, headers);
+        return execute(operation, HttpMethod.GET, pageUri.toString(),
+                       () -> restTemplate.exchange(pageUri, HttpMethod.GET, request, responseType));
+    }
+
+    /**
+     * execute method sends the request within a client span and records its duration & status
+     * class under the given operation
+     */
+    private ResponseEntity execute(RestOperation operation, HttpMethod method, String url,
+                                   Supplier<ResponseEntity> call) {
+        Span span = startClientSpan(tracer, operation, method, url, Context.current());
+        long start = System.nanoTime();
+        int status = 0;
+        try (Scope ignored = span.makeCurrent()) {
+            ResponseEntity response = call.get();
+            status = response == null ? 0 : response.getStatusCodeValue();
+            return response;
+        } catch (RuntimeException ex) {
+            status = RestMetrics.getStatus(ex);
+            Traces.setError(span, ex);
+            throw ex;
+        } finally {
+            restMetrics.record(operation, status, start);
+            endClientSpan(span, status);
+        }
+    }
+
+    /**
+     * startClientSpan method starts the span of an outbound call, the url is recorded without its
+     * query string since it may carry credentials (oauth code, client secret)
+     */
+    static Span startClientSpan(Tracer tracer, RestOperation operation, HttpMethod method, String url,
+                                Context parent) {
+        return tracer.spanBuilder(operation.toString())
+                .setParent(parent)
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute("peer.service", operation.getProvider())
+                .setAttribute("operation", operation.getName())
+                .setAttribute("http.method", method.name())
+                .setAttribute("http.url", StringUtils.substringBefore(url, "?"))
+                .startSpan();
+    }
+
+    static void endClientSpan(Span span, int status) {
+        if (status != 0) {
+            span.setAttribute("http.status_code", status);
+        }
+        if (status >= 400) {
+            span.setStatus(StatusCode.ERROR);
+        }
+        span.end();
+    }
 
+    /**
+     * getNextPageUri method extracts next page link from the response Link header (RFC 5988),
+     * used by GitHub and GitLab paginated apis
+     *
+     * @param headers response headers
+     * @return next page uri, null when the given response is the last page
+     */
+    public static URI getNextPageUri(HttpHeaders headers) {
+        List<String> links = headers.get(HttpHeaders.LINK);
+        if (links == null) {
+            return null;
+        }
+        for (String link : links) {
+            Matcher matcher = NEXT_PAGE_LINK.matcher(link);
+            if (matcher.find()) {
+                return URI.create(matcher.group(1));
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,71 @@
+package com.checkmarx.utils;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.function.Supplier;
+
+/**
+ * Traces holds the spans helpers shared by the controllers, Scm services and rest wrappers. Work
+ * running on reactive pipelines can't rely on the thread bound current span, its parent span is
+ * carried in the Reactor subscriber context instead.
+ */
+public final class Traces {
+
+    public static final String INSTRUMENTATION_NAME = "com.checkmarx.repos-manager";
+
+    /**
+     * Tracer used until the configured one is injected (services built outside Spring etc.)
+     */
+    public static final Tracer NOOP_TRACER = OpenTelemetry.noop().getTracer(INSTRUMENTATION_NAME);
+
+    private static final Class<Context> PARENT_KEY = Context.class;
+
+    private Traces() {
+    }
+
+    /**
+     * inSpan method runs the call with the given span as current span, the span is ended once the
+     * call returns
+     *
+     * @return call result, failure is recorded on the span and re-thrown as is
+     */
+    public static <T> T inSpan(Span span, Supplier<T> call) {
+        try (Scope ignored = span.makeCurrent()) {
+            return call.get();
+        } catch (RuntimeException | Error ex) {
+            setError(span, ex);
+            throw ex;
+        } finally {
+            span.end();
+        }
+    }
+
+    public static void setError(Span span, Throwable ex) {
+        span.recordException(ex);
+        span.setStatus(StatusCode.ERROR);
+    }
+
+    /**
+     * withCurrentParent method makes the current span the parent of the spans started by the
+     * given pipeline, whatever thread they are started on
+     */
+    public static <T> Mono<T> withCurrentParent(Mono<T> mono) {
+        Context parent = Context.current();
+        return mono.contextWrite(context -> context.put(PARENT_KEY, parent));
+    }
+
+    /**
+     * @return parent span context of a span started by a reactive pipeline, the current one when
+     * the pipeline doesn't carry any
+     */
+    public static Context getParent(ContextView context) {
+        return context.getOrDefault(PARENT_KEY, Context.current());
+    }
+}
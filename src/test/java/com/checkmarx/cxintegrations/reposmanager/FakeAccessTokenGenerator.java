@@ -1,6 +1,8 @@
 package com.checkmarx.cxintegrations.reposmanager;
 
 import com.checkmarx.dto.AccessTokenDto;
+import com.checkmarx.dto.azure.AccessTokenAzureDto;
+import com.checkmarx.dto.bitbucket.AccessTokenBitbucketDto;
 import com.checkmarx.dto.datastore.ScmAccessTokenDto;
 import com.checkmarx.dto.github.AccessTokenGithubDto;
 import com.checkmarx.dto.gitlab.AccessTokenGitlabDto;
@@ -30,6 +32,10 @@ public class FakeAccessTokenGenerator {
             tokenDto = new AccessTokenGitlabDto();
         } else if (scmUrl.contains("github")) {
             tokenDto = new AccessTokenGithubDto();
+        } else if (scmUrl.contains("bitbucket")) {
+            tokenDto = new AccessTokenBitbucketDto();
+        } else if (scmUrl.contains("azure")) {
+            tokenDto = new AccessTokenAzureDto();
         } else {
             final String message = String.format("Unable to create fake SCM access token for the URL: %s", scmUrl);
             throw new NotImplementedException(message);
@@ -0,0 +1,299 @@
+package com.checkmarx.cxintegrations.reposmanager.api.datastore;
+
+import com.checkmarx.cxintegrations.reposmanager.FakeAccessTokenGenerator;
+import com.checkmarx.cxintegrations.reposmanager.WebApiRequestSender;
+import com.checkmarx.cxintegrations.reposmanager.dto.ApiTestState;
+import com.checkmarx.dto.datastore.OrgReposDto;
+import com.checkmarx.dto.datastore.ScmAccessTokenDto;
+import com.checkmarx.dto.datastore.ScmDto;
+import com.checkmarx.dto.github.AccessTokenGithubDto;
+import com.checkmarx.dto.github.OrganizationGithubDto;
+import com.checkmarx.dto.github.WebhookGithubDto;
+import com.checkmarx.dto.web.WebhookWebDto;
+import com.checkmarx.service.DataStoreService;
+import com.checkmarx.utils.RestWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.*;
+import io.cucumber.spring.CucumberContextConfiguration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.*;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * The following happens here:
+ * - Test invokes ReposManager APIs via HTTP calls.
+ * - The actual DataStore client is used, both DataStore and SCM APIs are mocked at the RestTemplate level.
+ * - DataStore client coalescing, caching and timeouts are checked through the DataStore calls it makes.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@CucumberContextConfiguration
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "data.store.webhook.batch.window=500",
+                "data.store.webhook.update.timeout=1",
+                "access.token.cache.ttl=300",
+                "data.store.scm.cache.ttl=300"
+        })
+public class DataStoreClientSteps {
+    private static final String REPO_ID = "myAwesomeRepo";
+    private static final String WEBHOOK_ID = "cxint-webhook-id";
+    // Tokens are cached across scenarios, every scenario works on its own organization.
+    private static final AtomicInteger orgCounter = new AtomicInteger();
+
+    @LocalServerPort
+    private int apiPort;
+
+    @MockBean
+    private final RestTemplate restTemplateMock;
+
+    private final ApiTestState testState;
+    private final WebApiRequestSender requestSender;
+    private final FakeAccessTokenGenerator fakeAccessTokenGenerator;
+    private final DataStoreService dataStoreService;
+
+    // Bulk APIs write webhook states concurrently.
+    private final List<OrgReposDto> webhookStateUpdates = new CopyOnWriteArrayList<>();
+    private final AtomicInteger tokenReads = new AtomicInteger();
+    private final AtomicInteger scmDetailsReads = new AtomicInteger();
+    private String orgId;
+
+    @Before
+    public void beforeEachScenario() {
+        testState.clear();
+        webhookStateUpdates.clear();
+        tokenReads.set(0);
+        scmDetailsReads.set(0);
+        orgId = "myGreatOrg" + orgCounter.incrementAndGet();
+        Mockito.reset(restTemplateMock);
+        initMocks();
+    }
+
+    @Given("DataStore accepts webhook state updates")
+    public void dataStoreAcceptsWebhookStateUpdates() {
+        when(reposManagerUpdatesWebhookStates())
+                .thenAnswer(withRecordedUpdate(update -> new ResponseEntity<>(HttpStatus.OK)));
+    }
+
+    @Given("DataStore rejects webhook state updates holding the repo {string}")
+    public void dataStoreRejectsWebhookStateUpdatesHoldingTheRepo(String repoId) {
+        when(reposManagerUpdatesWebhookStates())
+                .thenAnswer(withRecordedUpdate(update -> {
+                    if (update.getRepoList().stream().anyMatch(repo -> repoId.equals(repo.getRepoIdentity()))) {
+                        throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+                    }
+                    return new ResponseEntity<>(HttpStatus.OK);
+                }));
+    }
+
+    @Given("DataStore takes {int} seconds to write webhook state updates")
+    public void dataStoreTakesSecondsToWriteWebhookStateUpdates(int seconds) {
+        when(reposManagerUpdatesWebhookStates())
+                .thenAnswer(withRecordedUpdate(update -> {
+                    try {
+                        TimeUnit.SECONDS.sleep(seconds);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new ResponseEntity<>(HttpStatus.OK);
+                }));
+    }
+
+    @When("API client calls the `bulk create webhooks` API for {int} {word} repos")
+    public void apiClientCallsTheBulkCreateWebhooksAPIForRepos(int repoCount, String scmId) {
+        testState.prepareForRequestSending();
+
+        List<String> repoIds = IntStream.range(0, repoCount)
+                .mapToObj(i -> REPO_ID + i)
+                .collect(Collectors.toList());
+        ResponseEntity<String> response = requestSender.genericSend(
+                "{scmId}/orgs/{orgId}/webhooks",
+                apiPort, HttpMethod.POST, new HttpEntity<>(repoIds), scmId, orgId);
+
+        testState.setLastResponse(response);
+    }
+
+    @Given("the {word} client credentials are stored in DataStore")
+    @When("the {word} client credentials are stored in DataStore again")
+    public void theClientCredentialsAreStoredInDataStore(String scmId) {
+        dataStoreService.storeScm(ScmDto.builder()
+                                          .baseUrl(scmId + ".com")
+                                          .clientId("fake-client-id")
+                                          .clientSecret("fake-client-secret")
+                                          .build());
+    }
+
+    @When("API client calls the `create webhook` API for {int} {word} repo(s) one by one")
+    public void apiClientCallsTheCreateWebhookAPIForReposOneByOne(int repoCount, String scmId) {
+        for (int i = 0; i < repoCount; i++) {
+            ResponseEntity<String> response = requestSender.genericSend(
+                    "{scmId}/orgs/{orgId}/repos/{repoId}/webhooks",
+                    apiPort, HttpMethod.POST, null, scmId, orgId, REPO_ID + i);
+            Assert.assertEquals("Webhook creation failed.", HttpStatus.OK, response.getStatusCode());
+        }
+    }
+
+    @When("user authorizes ReposManager on {word} for the organization")
+    public void userAuthorizesReposManagerOnForTheOrganization(String scmId) {
+        ResponseEntity<String> response = requestSender.genericSend(
+                "{scmId}/user/orgs?authCode={authCode}",
+                apiPort, HttpMethod.POST, null, scmId, "fake-auth-code");
+        Assert.assertEquals("Authorization failed.", HttpStatus.OK, response.getStatusCode());
+    }
+
+    @And("the bulk response reports success for {int} repos")
+    public void theBulkResponseReportsSuccessForRepos(int repoCount) throws JsonProcessingException {
+        WebhookWebDto[] results = readBulkResults();
+        Assert.assertEquals("Unexpected bulk results count.", repoCount, results.length);
+        for (WebhookWebDto result : results) {
+            Assert.assertTrue("Bulk operation failed: " + result.getError(), result.getSuccess());
+        }
+    }
+
+    @And("the bulk response reports failure for the repo {string} only")
+    public void theBulkResponseReportsFailureForTheRepoOnly(String repoId) throws JsonProcessingException {
+        for (WebhookWebDto result : readBulkResults()) {
+            Assert.assertEquals("Unexpected result of repo: " + result.getRepoId(),
+                                !repoId.equals(result.getRepoId()), result.getSuccess());
+        }
+    }
+
+    @And("the bulk response reports a webhook state update failure for {int} repos")
+    public void theBulkResponseReportsAWebhookStateUpdateFailureForRepos(int repoCount) throws JsonProcessingException {
+        WebhookWebDto[] results = readBulkResults();
+        Assert.assertEquals("Unexpected bulk results count.", repoCount, results.length);
+        for (WebhookWebDto result : results) {
+            Assert.assertFalse("Bulk operation didn't fail: " + result.getRepoId(), result.getSuccess());
+            Assert.assertEquals("Unexpected bulk operation error.", RestWrapper.UPDATE_ORG_REPO_FAILURE,
+                                result.getError());
+        }
+    }
+
+    @And("DataStore receives {int} webhook state update(s) holding {int} repo(s)")
+    public void dataStoreReceivesWebhookStateUpdatesHoldingRepos(int updateCount, int repoCount) {
+        long actualCount = webhookStateUpdates.stream()
+                .filter(update -> update.getRepoList().size() == repoCount)
+                .count();
+        Assert.assertEquals("Unexpected webhook state updates holding " + repoCount + " repos: " + webhookStateUpdates,
+                            updateCount, actualCount);
+    }
+
+    @Then("DataStore is asked for the organization token {int} time(s)")
+    public void dataStoreIsAskedForTheOrganizationTokenTimes(int times) {
+        Assert.assertEquals("Unexpected organization token reads count.", times, tokenReads.get());
+    }
+
+    @Then("DataStore is asked for the Scm client credentials {int} time(s)")
+    public void dataStoreIsAskedForTheScmClientCredentialsTimes(int times) {
+        Assert.assertEquals("Unexpected Scm client credentials reads count.", times, scmDetailsReads.get());
+    }
+
+    private WebhookWebDto[] readBulkResults() throws JsonProcessingException {
+        return new ObjectMapper().readValue(testState.getLastResponse().getBody(), WebhookWebDto[].class);
+    }
+
+    private void initMocks() {
+        log.info("Initializing mocks.");
+
+        when(reposManagerAsksForScmToken())
+                .thenAnswer(invocation -> {
+                    tokenReads.incrementAndGet();
+                    ScmAccessTokenDto token = fakeAccessTokenGenerator.generate("github.com", "fake-token");
+                    token.setOrgIdentity(orgId);
+                    return new ResponseEntity<>(token, HttpStatus.OK);
+                });
+
+        when(reposManagerCreatesWebhook())
+                .thenAnswer(invocation -> new ResponseEntity<>(WebhookGithubDto.builder()
+                                                                       .id(WEBHOOK_ID)
+                                                                       .build(), HttpStatus.CREATED));
+
+        when(restTemplateMock.exchange(eq("/scms/storeScm"), eq(HttpMethod.POST), any(HttpEntity.class),
+                                       eq(ResponseEntity.class)))
+                .thenAnswer(invocation -> new ResponseEntity<>(HttpStatus.OK));
+
+        when(reposManagerAsksForScmDetails())
+                .thenAnswer(invocation -> {
+                    scmDetailsReads.incrementAndGet();
+                    return new ResponseEntity<>(ScmDto.builder()
+                                                        .baseUrl("github.com")
+                                                        .clientId("fake-client-id")
+                                                        .clientSecret("fake-client-secret")
+                                                        .build(), HttpStatus.OK);
+                });
+
+        when(reposManagerGeneratesScmToken())
+                .thenAnswer(invocation -> {
+                    AccessTokenGithubDto token = new AccessTokenGithubDto();
+                    token.setAccessToken("new-fake-token");
+                    return new ResponseEntity<>(token, HttpStatus.OK);
+                });
+
+        when(restTemplateMock.exchange(eq("https://api.github.com/user/orgs"), eq(HttpMethod.GET),
+                                       any(HttpEntity.class), eq(OrganizationGithubDto[].class)))
+                .thenAnswer(invocation -> new ResponseEntity<>(new OrganizationGithubDto[]{
+                        new OrganizationGithubDto(orgId)}, HttpStatus.OK));
+
+        when(restTemplateMock.exchange(eq("/orgs"), eq(HttpMethod.PUT), any(HttpEntity.class),
+                                       eq(ResponseEntity.class)))
+                .thenAnswer(invocation -> new ResponseEntity<>(HttpStatus.OK));
+    }
+
+    private ResponseEntity<?> reposManagerAsksForScmToken() {
+        return restTemplateMock.exchange(startsWith("/tokens?"), eq(HttpMethod.GET), any(HttpEntity.class),
+                                         eq(ScmAccessTokenDto.class));
+    }
+
+    private ResponseEntity<?> reposManagerAsksForScmDetails() {
+        return restTemplateMock.exchange(eq("/scms/github.com"), eq(HttpMethod.GET), any(HttpEntity.class),
+                                         eq(ScmDto.class));
+    }
+
+    private ResponseEntity<?> reposManagerGeneratesScmToken() {
+        return restTemplateMock.exchange(startsWith("https://github.com/login/oauth/access_token"),
+                                         eq(HttpMethod.POST), any(HttpEntity.class),
+                                         eq(AccessTokenGithubDto.class));
+    }
+
+    private ResponseEntity<?> reposManagerCreatesWebhook() {
+        // https://api.github.com/repos/orgId/repoId/hooks
+        return restTemplateMock.exchange(argThat((String url) -> url != null && url.contains("api.github.com")
+                                                 && url.endsWith("/hooks")),
+                                         eq(HttpMethod.POST), any(HttpEntity.class), any(Class.class));
+    }
+
+    private ResponseEntity<?> reposManagerUpdatesWebhookStates() {
+        return restTemplateMock.exchange(eq("/repos"), eq(HttpMethod.PUT), any(HttpEntity.class),
+                                         eq(OrgReposDto.class));
+    }
+
+    private Answer<ResponseEntity<?>> withRecordedUpdate(Function<OrgReposDto, ResponseEntity<?>> response) {
+        return invocation -> {
+            OrgReposDto update = (OrgReposDto) invocation.getArgument(2, HttpEntity.class).getBody();
+            log.info("Intercepted webhook state update: {}", update);
+            webhookStateUpdates.add(update);
+            return response.apply(update);
+        };
+    }
+}
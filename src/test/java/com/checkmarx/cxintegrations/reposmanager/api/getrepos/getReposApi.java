@@ -1,33 +1,86 @@
 package com.checkmarx.cxintegrations.reposmanager.api.getrepos;
 
+import com.checkmarx.controller.exception.ScmException;
 import com.checkmarx.cxintegrations.reposmanager.FakeAccessTokenGenerator;
+import com.checkmarx.cxintegrations.reposmanager.WebApiRequestSender;
+import com.checkmarx.dto.RepoEventDto;
+import com.checkmarx.dto.bitbucket.RepoBitbucketDto;
+import com.checkmarx.dto.bitbucket.RepoBitbucketListDto;
+import com.checkmarx.dto.bitbucket.WebhookBitbucketListDto;
+import com.checkmarx.dto.datastore.OrgDto;
+import com.checkmarx.dto.datastore.OrgReposDto;
+import com.checkmarx.dto.datastore.RepoDto;
 import com.checkmarx.dto.datastore.ScmAccessTokenDto;
 import com.checkmarx.dto.github.GithubEvent;
+import com.checkmarx.dto.github.GraphQlRequestGithubDto;
+import com.checkmarx.dto.github.RepoPageGraphQlGithubDto;
 import com.checkmarx.dto.github.RepoGithubDto;
 import com.checkmarx.dto.github.WebhookGithubDto;
 import com.checkmarx.dto.gitlab.RepoGitlabDto;
 import com.checkmarx.dto.gitlab.WebhookGitLabDto;
 import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.service.BitbucketService;
 import com.checkmarx.service.DataService;
 import com.checkmarx.service.GitHubService;
 import com.checkmarx.service.GitLabService;
+import com.checkmarx.service.RepoEventService;
+import com.checkmarx.service.RepoSnapshotService;
+import com.checkmarx.service.WebhookReconciliationService;
+import com.checkmarx.utils.AccessTokenCache;
+import com.checkmarx.utils.FanOutExecutor;
+import com.checkmarx.utils.ReactiveRestWrapper;
 import com.checkmarx.utils.RestWrapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.cucumber.java.en.And;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
 import io.cucumber.spring.CucumberContextConfiguration;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -41,15 +94,20 @@ public class getReposApi {
 
     private static final String GITHUB = "github";
     private static final String GITLAB = "gitlab";
+    private static final String BITBUCKET = "bitbucket";
     private static final String HOOKS = "hooks";
+    private static final String GRAPHQL = "/graphql";
     private static final String cxFlowUrl = "dummyUrl";
     private FakeAccessTokenGenerator fakeAccessTokenGenerator = new FakeAccessTokenGenerator();
     private static final String ORG_ID = "myOrganization";
     private final RestWrapper restWrapper = mock(RestWrapper.class);
+    private final ReactiveRestWrapper reactiveRestWrapper = mock(ReactiveRestWrapper.class);
     
     private DataService dataService = mock(DataService.class);
+    private final FanOutExecutor fanOutExecutor = new FanOutExecutor(Executors.newFixedThreadPool(4), 2);
     private GitHubService gitHubService ;
     private GitLabService gitLabService ;
+    private BitbucketService bitbucketService;
     private String scmType;
     private int numberRepos;
     private int numberHooks;
@@ -57,20 +115,41 @@ public class getReposApi {
     private int nHooksWithEvents;
     private List<RepoWebDto> apiResult;
     private int hooksWithUrl;
+    private int reposLatencyMillis;
+    private int reposPages;
+    private int graphQlAdminEvery;
+    private int graphQlFailingPage;
+    private final AtomicInteger githubRestListings = new AtomicInteger();
+    private final AtomicInteger githubHookLookups = new AtomicInteger();
+    private RepoSnapshotService eventsSnapshotService;
     private ResponseEntity<RepoGithubDto[]> githubReposMockResult;
     private List<WebhookGithubDto> githubWebhooksMockResult;
     private ResponseEntity<RepoGitlabDto[]> gitlabReposMockResult;
     private List<WebhookGitLabDto> gitlabWebhooksMockResult;
+    private ResponseEntity<String> eventDeliveryResponse;
+    private List<RepoDto> storedRepos;
+
+    @LocalServerPort
+    private int apiPort;
+
+    private final WebApiRequestSender requestSender;
 
 
     private void initMocks() {
-        gitHubService = spy(new GitHubService(restWrapper, dataService));
-        gitLabService = spy(new GitLabService(restWrapper, dataService));
+        AccessTokenCache accessTokenCache = new AccessTokenCache(dataService, new SimpleMeterRegistry(), 0, 10);
+        gitHubService = spy(new GitHubService(restWrapper, dataService, fanOutExecutor, accessTokenCache,
+                                              reactiveRestWrapper));
+        gitLabService = spy(new GitLabService(restWrapper, dataService, fanOutExecutor, accessTokenCache,
+                                              reactiveRestWrapper));
         doReturn(cxFlowUrl).when(gitHubService).getCxFlowUrl();
         doReturn(cxFlowUrl).when(gitLabService).getCxFlowUrl();
 
         HttpRequestInterceptor httpRequestInterceptor = new HttpRequestInterceptor();
-        when(restWrapper.sendBearerAuthRequest(any(), any(), any(), any(), any(), any())).thenAnswer(httpRequestInterceptor);
+        when(restWrapper.sendBearerAuthRequest(any(), any(), any(), any(), any(), any(), any())).thenAnswer(httpRequestInterceptor);
+        when(reactiveRestWrapper.getPages(any(), any(), any(), any()))
+                .thenAnswer(invocation -> Mono.just(githubReposMockResult.getBody()).flux());
+        when(reactiveRestWrapper.sendBearerAuthRequest(any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> Mono.justOrEmpty(httpRequestInterceptor.answer(invocation)));
         doNothing().when(dataService).updateScmOrgRepo(any());
         try {
             ScmAccessTokenDto accessTokenDto = fakeAccessTokenGenerator.generate(scmType, "fake-token");
@@ -115,6 +194,13 @@ public class getReposApi {
         numberHooks = 0;
         numberActiveHooks = 0;
         nHooksWithEvents = 0;
+        reposLatencyMillis = 0;
+        reposPages = 1;
+        graphQlAdminEvery = 1;
+        graphQlFailingPage = 0;
+        githubRestListings.set(0);
+        githubHookLookups.set(0);
+        eventsSnapshotService = null;
         initMocks();
     }
 
@@ -127,12 +213,18 @@ public class getReposApi {
 
         @Override
         public ResponseEntity answer(InvocationOnMock invocation) {
-            String url = invocation.getArgument(0);
+            String url = invocation.getArgument(1);
             log.info("HttpRequestInterceptor url: " + url);
+            if (url.contains(GITHUB) && url.endsWith(GRAPHQL)) {
+                return getGraphQlReposPage(invocation.getArgument(3));
+            }
             if (url.contains(GITHUB) && !url.contains(HOOKS)) {
+                githubRestListings.incrementAndGet();
+                sleep(reposLatencyMillis);
                 return githubReposMockResult;
             }
             if (url.contains(GITHUB) && url.contains(HOOKS)) {
+                githubHookLookups.incrementAndGet();
                 return getWebhookGithubResponse();
             }
             if (url.contains(GITLAB) && !url.contains(HOOKS)) {
@@ -141,11 +233,17 @@ public class getReposApi {
             if (url.contains(GITLAB) && url.contains(HOOKS)) {
                 return getWebhookGitlabResponse();
             }
+            if (url.contains(BITBUCKET) && !url.contains(HOOKS)) {
+                return getBitbucketReposPage(1);
+            }
+            if (url.contains(BITBUCKET) && url.contains(HOOKS)) {
+                return new ResponseEntity<>(new WebhookBitbucketListDto(new LinkedList<>()), HttpStatus.OK);
+            }
             return null;
         }
     }
 
-    private ResponseEntity getWebhookGitlabResponse() {
+    private synchronized ResponseEntity getWebhookGitlabResponse() {
         WebhookGitLabDto[] gitlabWebhooksMockResultArr;
         if (gitlabWebhooksMockResult.size() > 0) {
             WebhookGitLabDto webhook = gitlabWebhooksMockResult.get(0);
@@ -158,7 +256,7 @@ public class getReposApi {
         return new ResponseEntity<>(gitlabWebhooksMockResultArr, HttpStatus.OK);
     }
 
-    private ResponseEntity getWebhookGithubResponse() {
+    private synchronized ResponseEntity getWebhookGithubResponse() {
         WebhookGithubDto[] githubWebhooksMockResultArr;
         if (githubWebhooksMockResult.size() > 0) {
             WebhookGithubDto webhook = githubWebhooksMockResult.get(0);
@@ -269,6 +367,394 @@ public class getReposApi {
         Assert.assertEquals(scmType + ": Validating get repos count: "+ numExpectedRepos + " vs " + apiResult.size(), numExpectedRepos, apiResult.size());
     }
 
+    @Then("reactive flavor returns the same {int} repositories with {int} effective hooks")
+    public void reactiveFlavorReturnsTheSameRepositories(int numExpectedRepos, int numEffectiveHooks) {
+        githubReposMockResult = prepareGithubReposResult();
+        githubWebhooksMockResult = prepareGithubWebhooksResult();
+        apiResult = gitHubService.getScmOrgReposAsync(ORG_ID).block();
+        log.info(scmType + ": Validating reactive get repos count");
+        Assert.assertEquals(scmType + ": Validating reactive get repos count", numExpectedRepos, apiResult.size());
+        numberOfEffectiveHooksWillBeN_effective_hooks(numEffectiveHooks);
+    }
+
+    @And("Scm takes {int} ms to list the repositories")
+    public void scmTakesMsToListTheRepositories(int latencyMillis) {
+        this.reposLatencyMillis = latencyMillis;
+    }
+
+    @Then("{int} concurrent calls return {int} repositories with a single Scm crawl")
+    public void concurrentCallsShareASingleCrawl(int calls, int numExpectedRepos) throws Exception {
+        githubReposMockResult = prepareGithubReposResult();
+        githubWebhooksMockResult = prepareGithubWebhooksResult();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RepoSnapshotService repoSnapshotService = new RepoSnapshotService(
+                Executors.newSingleThreadExecutor(), meterRegistry, false, 60, 3600, 100);
+        ExecutorService callers = Executors.newFixedThreadPool(calls);
+        CyclicBarrier start = new CyclicBarrier(calls);
+        List<Future<List<RepoWebDto>>> results = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            results.add(callers.submit(() -> {
+                start.await();
+                return repoSnapshotService.getScmOrgRepos(gitHubService, ORG_ID).getRepos();
+            }));
+        }
+        for (Future<List<RepoWebDto>> result : results) {
+            Assert.assertEquals(numExpectedRepos, result.get().size());
+        }
+        callers.shutdown();
+        verify(gitHubService, times(1)).getScmOrgRepos(ORG_ID);
+        verify(dataService, times(1)).updateScmOrgRepo(any());
+        Assert.assertEquals(calls - 1, meterRegistry.get("repos.crawls").tag("result", "coalesced")
+                .counter().count(), 0);
+    }
+
+    @And("DataStore holds repositories {string} with a webhook and repositories {string} without one")
+    public void dataStoreHoldsRepositories(String withWebhook, String withoutWebhook) {
+        storedRepos = new ArrayList<>();
+        for (String repoId : withWebhook.split(",")) {
+            storedRepos.add(RepoDto.builder().repoIdentity(repoId).webhookId("7").isWebhookConfigured(true).build());
+        }
+        for (String repoId : withoutWebhook.split(",")) {
+            storedRepos.add(RepoDto.builder().repoIdentity(repoId).isWebhookConfigured(false).build());
+        }
+        when(dataService.getScmOrgRepos(any(), eq(ORG_ID))).thenReturn(storedRepos);
+        when(dataService.getScmOrgs(any())).thenReturn(
+                Collections.singletonList(OrgDto.builder().orgIdentity(ORG_ID).build()));
+    }
+
+    @And("DataStore repository {string} gets webhook {string} during the reconciliation crawl")
+    public void dataStoreRepositoryGetsWebhookDuringTheCrawl(String repoId, String webhookId) {
+        List<RepoDto> storedAfterCrawl = new ArrayList<>(storedRepos);
+        storedAfterCrawl.add(RepoDto.builder().repoIdentity(repoId).webhookId(webhookId).isWebhookConfigured(true).build());
+        when(dataService.getScmOrgRepos(any(), eq(ORG_ID))).thenReturn(storedRepos, storedAfterCrawl);
+    }
+
+    @Then("webhook reconciliation of the organization updates repositories {string}")
+    public void webhookReconciliationUpdatesRepositories(String expectedRepoIds) {
+        githubReposMockResult = prepareGithubReposResult();
+        githubWebhooksMockResult = prepareGithubWebhooksResult();
+        WebhookReconciliationService reconciliationService = new WebhookReconciliationService(
+                Collections.singletonList(gitHubService), dataService, mock(RepoSnapshotService.class),
+                new SimpleMeterRegistry(), false, 6, "");
+        Assert.assertEquals(ORG_ID, reconciliationService.reconcileNextOrg());
+        Assert.assertNull(reconciliationService.reconcileNextOrg());
+
+        ArgumentCaptor<OrgReposDto> update = ArgumentCaptor.forClass(OrgReposDto.class);
+        verify(dataService, times(1)).updateScmOrgRepo(update.capture());
+        List<String> updatedRepoIds = update.getValue().getRepoList().stream()
+                .map(RepoDto::getRepoIdentity)
+                .sorted()
+                .collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList(expectedRepoIds.split(",")), updatedRepoIds);
+    }
+
+    @Then("webhook reconciliation of the organization replaces the cursor file with Scm {string} and the organization")
+    public void webhookReconciliationReplacesTheCursorFile(String scm) throws IOException {
+        githubReposMockResult = prepareGithubReposResult();
+        githubWebhooksMockResult = prepareGithubWebhooksResult();
+        Path cursorDir = Files.createTempDirectory("reconciliation");
+        Path cursorFile = cursorDir.resolve("cursor.properties");
+        Files.write(cursorFile, Collections.singletonList("# a former cursor, longer than the next one to be saved"));
+        WebhookReconciliationService reconciliationService = new WebhookReconciliationService(
+                Collections.singletonList(gitHubService), dataService, mock(RepoSnapshotService.class),
+                new SimpleMeterRegistry(), false, 6, cursorFile.toString());
+        Assert.assertEquals(ORG_ID, reconciliationService.reconcileNextOrg());
+
+        Properties cursor = new Properties();
+        try (InputStream in = Files.newInputStream(cursorFile)) {
+            cursor.load(in);
+        }
+        Assert.assertEquals(scm, cursor.getProperty("scm"));
+        Assert.assertEquals(ORG_ID, cursor.getProperty("org"));
+        try (Stream<Path> files = Files.list(cursorDir)) {
+            Assert.assertEquals(Collections.singletonList(cursorFile), files.collect(Collectors.toList()));
+        }
+        Files.delete(cursorFile);
+        Files.delete(cursorDir);
+    }
+
+    @And("DataStore holds repository {string} with webhook {string}")
+    public void dataStoreHoldsRepositoryWithWebhook(String repoId, String webhookId) {
+        when(dataService.getScmOrgRepo(any(), eq(ORG_ID), eq(repoId))).thenReturn(
+                RepoDto.builder().repoIdentity(repoId).webhookId(webhookId).isWebhookConfigured(true).build());
+    }
+
+    @And("organization repositories snapshot is taken")
+    public void organizationRepositoriesSnapshotIsTaken() {
+        githubReposMockResult = prepareGithubReposResult();
+        githubWebhooksMockResult = prepareGithubWebhooksResult();
+        eventsSnapshotService = new RepoSnapshotService(Executors.newSingleThreadExecutor(),
+                                                        new SimpleMeterRegistry(), true, 60, 3600, 100);
+        Assert.assertEquals(numberRepos, eventsSnapshotService.getScmOrgRepos(gitHubService, ORG_ID).getRepos().size());
+        clearInvocations(dataService);
+    }
+
+    @And("GitHub {string} event is ingested:")
+    public void gitHubEventIsIngested(String eventType, String payload) throws JsonProcessingException {
+        if (eventsSnapshotService == null) {
+            eventsSnapshotService = mock(RepoSnapshotService.class);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-GitHub-Event", eventType);
+        List<RepoEventDto> events = gitHubService.toRepoEvents(headers, new ObjectMapper().readTree(payload));
+        new RepoEventService(dataService, eventsSnapshotService, new SimpleMeterRegistry())
+                .apply(gitHubService, events);
+    }
+
+    @Then("DataStore is updated with repositories {string}")
+    public void dataStoreIsUpdatedWithRepositories(String expectedRepos) {
+        ArgumentCaptor<OrgReposDto> update = ArgumentCaptor.forClass(OrgReposDto.class);
+        verify(dataService, times(1)).updateScmOrgRepo(update.capture());
+        Assert.assertEquals(ORG_ID, update.getValue().getOrgIdentity());
+        String updatedRepos = update.getValue().getRepoList().stream()
+                .map(repoDto -> repoDto.getRepoIdentity() + ":"
+                        + (repoDto.isWebhookConfigured() ? repoDto.getWebhookId() : ""))
+                .collect(Collectors.joining(","));
+        Assert.assertEquals(expectedRepos, updatedRepos);
+    }
+
+    @Then("DataStore is not updated")
+    public void dataStoreIsNotUpdated() {
+        verify(dataService, never()).updateScmOrgRepo(any());
+    }
+
+    @And("organization repositories snapshot holds repository {string} with webhook {string}")
+    public void organizationRepositoriesSnapshotHoldsRepositoryWithWebhook(String repoId, String webhookId) {
+        RepoWebDto repo = eventsSnapshotService.getScmOrgRepos(gitHubService, ORG_ID).getRepos().stream()
+                .filter(repoWebDto -> repoWebDto.getId().equals(repoId))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        Assert.assertTrue(repo.isWebhookEnabled());
+        Assert.assertEquals(webhookId, repo.getWebhookId());
+    }
+
+    @And("organization repositories snapshot holds {int} repositories including {string}")
+    public void organizationRepositoriesSnapshotHolds(int numExpectedRepos, String repoId) {
+        List<RepoWebDto> repos = eventsSnapshotService.getScmOrgRepos(gitHubService, ORG_ID).getRepos();
+        Assert.assertEquals(numExpectedRepos, repos.size());
+        Assert.assertTrue(repos.stream().anyMatch(repo -> repo.getId().equals(repoId)));
+    }
+
+    @And("Scm fails on the second repositories page while the fan-out pool is busy")
+    public void scmFailsOnTheSecondRepositoriesPage() throws InterruptedException {
+        // a single pool thread held by another organization, so the crawl tasks stay queued
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch poolBusy = new CountDownLatch(1);
+        CountDownLatch poolReleased = new CountDownLatch(1);
+        pool.submit(() -> {
+            poolBusy.countDown();
+            poolReleased.await();
+            return null;
+        });
+        poolBusy.await();
+        FanOutExecutor busyFanOutExecutor = new FanOutExecutor(pool, numberRepos);
+        gitHubService = spy(new GitHubService(restWrapper, dataService, busyFanOutExecutor,
+                                              new AccessTokenCache(dataService, new SimpleMeterRegistry(), 0, 10),
+                                              reactiveRestWrapper));
+        doReturn(cxFlowUrl).when(gitHubService).getCxFlowUrl();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.LINK, "<https://api.github.com/orgs/" + ORG_ID + "/repos?page=2>; rel=\"next\"");
+        githubReposMockResult = new ResponseEntity<>(prepareGithubReposResult().getBody(), headers, HttpStatus.OK);
+        githubWebhooksMockResult = prepareGithubWebhooksResult();
+        when(restWrapper.sendBearerAuthPageRequest(any(), any(), any(), any()))
+                .thenThrow(new ScmException(RestWrapper.GENERAL_RUNTIME_EXCEPTION));
+        try {
+            gitHubService.getScmOrgRepos(ORG_ID);
+            Assert.fail("Crawl should fail on the second repositories page");
+        } catch (ScmException ex) {
+            log.info("First crawl failed as expected: {}", ex.getMessage());
+        } finally {
+            poolReleased.countDown();
+        }
+    }
+
+    @And("Bitbucket lists the repositories over {int} pages linked by their next link")
+    public void bitbucketListsTheRepositoriesOverPages(int pages) {
+        this.reposPages = pages;
+    }
+
+    @And("GitLab lists the repositories over {int} pages linked by their Link header")
+    public void gitLabListsTheRepositoriesOverPages(int pages) {
+        this.reposPages = pages;
+    }
+
+    @Then("GitLab group projects listing returns {int} distinct repositories")
+    public void gitLabGroupProjectsListingReturns(int numExpectedRepos) {
+        gitlabReposMockResult = getGitlabReposPage(1);
+        gitlabWebhooksMockResult = new LinkedList<>();
+        when(restWrapper.sendBearerAuthPageRequest(any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    URI nextPage = invocation.getArgument(1);
+                    return getGitlabReposPage(Integer.parseInt(StringUtils.substringAfter(nextPage.getQuery(), "page=")));
+                });
+
+        apiResult = gitLabService.getScmOrgRepos(ORG_ID);
+        Assert.assertEquals(numExpectedRepos, apiResult.stream().map(RepoWebDto::getId).distinct().count());
+        Assert.assertEquals(numExpectedRepos, apiResult.size());
+    }
+
+    private ResponseEntity<RepoGitlabDto[]> getGitlabReposPage(int page) {
+        RepoGitlabDto[] repos = new RepoGitlabDto[numberRepos];
+        for (int i = 0; i < numberRepos; i++) {
+            repos[i] = new RepoGitlabDto();
+            repos[i].setId(page + "0" + i);
+            repos[i].setName("repo " + page + " " + i);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (page < reposPages) {
+            headers.set(HttpHeaders.LINK, "<https://gitlab.com/api/v4/groups/" + ORG_ID
+                    + "/projects?page=" + (page + 1) + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<>(repos, headers, HttpStatus.OK);
+    }
+
+    @Then("Bitbucket workspace repositories listing returns {int} distinct repositories")
+    public void bitbucketWorkspaceRepositoriesListingReturns(int numExpectedRepos) {
+        bitbucketService = spy(new BitbucketService(restWrapper, dataService, fanOutExecutor,
+                                                    new AccessTokenCache(dataService, new SimpleMeterRegistry(), 0, 10),
+                                                    reactiveRestWrapper));
+        doReturn(cxFlowUrl).when(bitbucketService).getCxFlowUrl();
+        when(restWrapper.sendBearerAuthPageRequest(any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    URI nextPage = invocation.getArgument(1);
+                    return getBitbucketReposPage(Integer.parseInt(StringUtils.substringAfter(nextPage.getQuery(), "page=")));
+                });
+
+        apiResult = bitbucketService.getScmOrgRepos(ORG_ID);
+        Assert.assertEquals(numExpectedRepos, apiResult.stream().map(RepoWebDto::getId).distinct().count());
+        Assert.assertEquals(numExpectedRepos, apiResult.size());
+    }
+
+    private ResponseEntity<RepoBitbucketListDto> getBitbucketReposPage(int page) {
+        List<RepoBitbucketDto> repos = new LinkedList<>();
+        for (int i = 0; i < numberRepos; i++) {
+            RepoBitbucketDto repoBitbucketDto = new RepoBitbucketDto();
+            repoBitbucketDto.setId("repo-" + page + "-" + i);
+            repoBitbucketDto.setName("repo " + page + " " + i);
+            repos.add(repoBitbucketDto);
+        }
+        String next = page < reposPages
+                ? "https://api.bitbucket.org/2.0/repositories/" + ORG_ID + "?page=" + (page + 1)
+                : null;
+        return new ResponseEntity<>(new RepoBitbucketListDto(repos, next), HttpStatus.OK);
+    }
+
+    @And("GitHub GraphQL lists the repositories over {int} pages, one in {int} administrated by the user")
+    public void gitHubGraphQlListsTheRepositoriesOverPages(int pages, int adminEvery) {
+        ReflectionTestUtils.setField(gitHubService, "discoveryEngine", "graphql");
+        this.reposPages = pages;
+        this.graphQlAdminEvery = adminEvery;
+    }
+
+    @And("GitHub GraphQL doesn't resolve the organization")
+    public void gitHubGraphQlDoesnTResolveTheOrganization() {
+        gitHubGraphQlFailsOnPage(1);
+    }
+
+    @And("GitHub GraphQL fails on page {int}")
+    public void gitHubGraphQlFailsOnPage(int page) {
+        this.graphQlFailingPage = page;
+    }
+
+    @Then("GraphQL discovery returns {int} repositories after {int} webhook lookups")
+    public void graphQlDiscoveryReturnsRepositoriesAfterWebhookLookups(int numExpectedRepos, int hookLookups) {
+        // REST discovery lists the repositories in a single page
+        githubReposMockResult = prepareGithubReposResult();
+        githubWebhooksMockResult = new LinkedList<>();
+        apiResult = gitHubService.getScmOrgRepos(ORG_ID);
+        Assert.assertEquals(numExpectedRepos, apiResult.size());
+        Assert.assertEquals(hookLookups, githubHookLookups.get());
+    }
+
+    @And("REST repositories listing is called {int} time(s)")
+    public void restRepositoriesListingIsCalledTimes(int times) {
+        Assert.assertEquals(times, githubRestListings.get());
+    }
+
+    @Then("GraphQL discovery fails")
+    public void graphQlDiscoveryFails() {
+        githubReposMockResult = prepareGithubReposResult();
+        githubWebhooksMockResult = new LinkedList<>();
+        try {
+            gitHubService.getScmOrgRepos(ORG_ID);
+            Assert.fail("GraphQL discovery should fail");
+        } catch (ScmException ex) {
+            log.info("GraphQL discovery failed as expected: {}", ex.getMessage());
+        }
+    }
+
+    private ResponseEntity<RepoPageGraphQlGithubDto> getGraphQlReposPage(GraphQlRequestGithubDto request) {
+        Object cursor = request.getVariables().get("cursor");
+        int page = cursor == null ? 1 : Integer.parseInt(cursor.toString()) + 1;
+        if (page == graphQlFailingPage) {
+            return new ResponseEntity<>(new RepoPageGraphQlGithubDto(null, Collections.singletonList(
+                    new RepoPageGraphQlGithubDto.Error("NOT_FOUND", "Could not resolve to an Organization"))),
+                                        HttpStatus.OK);
+        }
+        List<RepoPageGraphQlGithubDto.Repository> nodes = new LinkedList<>();
+        for (int i = 0; i < numberRepos; i++) {
+            int repoIndex = (page - 1) * numberRepos + i;
+            nodes.add(new RepoPageGraphQlGithubDto.Repository(
+                    "repo " + repoIndex, repoIndex % graphQlAdminEvery == 0 ? "ADMIN" : "WRITE"));
+        }
+        RepoPageGraphQlGithubDto.Repositories repositories = new RepoPageGraphQlGithubDto.Repositories(
+                new RepoPageGraphQlGithubDto.PageInfo(page < reposPages, String.valueOf(page)), nodes);
+        return new ResponseEntity<>(new RepoPageGraphQlGithubDto(new RepoPageGraphQlGithubDto.ResponseData(
+                new RepoPageGraphQlGithubDto.Organization(repositories)), null), HttpStatus.OK);
+    }
+
+    @Then("a second crawl of the organization returns {int} repositories")
+    public void aSecondCrawlOfTheOrganizationReturns(int numExpectedRepos) throws Exception {
+        githubReposMockResult = prepareGithubReposResult();
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<List<RepoWebDto>> result = caller.submit(() -> gitHubService.getScmOrgRepos(ORG_ID));
+        try {
+            Assert.assertEquals(numExpectedRepos, result.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @When("Scm {string} event is delivered with {word} credentials")
+    public void scmEventIsDelivered(String scm, String credentials) throws Exception {
+        String payload = "{\"action\": \"created\"}";
+        String secret = "valid".equals(credentials) ? scm + "-events-secret" : "bad-secret";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (!"no".equals(credentials)) {
+            switch (scm) {
+                case GITHUB:
+                    Mac mac = Mac.getInstance("HmacSHA256");
+                    mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                    headers.set("X-Hub-Signature-256",
+                                "sha256=" + Hex.encodeHexString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8))));
+                    break;
+                case GITLAB:
+                    headers.set("X-Gitlab-Token", secret);
+                    break;
+                default:
+                    headers.set(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                            .encodeToString(("cxflow:" + secret).getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        eventDeliveryResponse = requestSender.genericSend("{scm}/events", apiPort, HttpMethod.POST,
+                                                          new HttpEntity<>(payload, headers), scm);
+    }
+
+    @Then("the event delivery response status is {int}")
+    public void theEventDeliveryResponseStatusIs(int status) {
+        Assert.assertEquals(status, eventDeliveryResponse.getStatusCodeValue());
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @And("number of effective hooks will be {int}")
     public void numberOfEffectiveHooksWillBeN_effective_hooks(Integer n_effective_hooks) {
         int countWebhooks = 0;
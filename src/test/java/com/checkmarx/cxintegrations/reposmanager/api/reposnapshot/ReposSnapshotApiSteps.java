@@ -0,0 +1,249 @@
+package com.checkmarx.cxintegrations.reposmanager.api.reposnapshot;
+
+import com.checkmarx.cxintegrations.reposmanager.FakeAccessTokenGenerator;
+import com.checkmarx.cxintegrations.reposmanager.WebApiRequestSender;
+import com.checkmarx.cxintegrations.reposmanager.dto.ApiTestState;
+import com.checkmarx.dto.github.RepoGithubDto;
+import com.checkmarx.dto.github.WebhookGithubDto;
+import com.checkmarx.dto.web.RepoWebDto;
+import com.checkmarx.service.DataStoreService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.*;
+import io.cucumber.spring.CucumberContextConfiguration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.*;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * The following happens here:
+ * - Test invokes ReposManager repositories listing & webhook APIs via HTTP calls.
+ * - Snapshot is enabled, with refresh delay & max staleness short enough to be reached by the scenarios.
+ * - SCM APIs are mocked, repositories listing calls are counted and can be held.
+ * - DataStore is mocked. The mock is used to return dummy SCM access tokens.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@CucumberContextConfiguration
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "repos.snapshot.enabled=true",
+                "repos.snapshot.refresh.after=1",
+                "repos.snapshot.max.staleness=3"
+        })
+public class ReposSnapshotApiSteps {
+    private static final String SCM_ID = "github";
+    private static final long REFRESH_AFTER_MILLIS = 1000;
+    private static final long MAX_STALENESS_MILLIS = 3000;
+    // Snapshots outlive scenarios, every scenario lists its own organization.
+    private static final AtomicInteger orgCounter = new AtomicInteger();
+
+    @LocalServerPort
+    private int apiPort;
+
+    @MockBean
+    private final RestTemplate restTemplateMock;
+
+    @MockBean
+    private final DataStoreService dataStoreServiceMock;
+
+    private final ApiTestState testState;
+    private final WebApiRequestSender requestSender;
+    private final FakeAccessTokenGenerator fakeAccessTokenGenerator;
+
+    private String orgId;
+    private volatile int repoCount;
+    private volatile long listingLatencyMillis;
+    private final AtomicInteger listingCalls = new AtomicInteger();
+    private volatile CountDownLatch heldListing;
+    private volatile CountDownLatch listingReceived;
+
+    private long listingMillis;
+    private long listingStartMillis;
+    private long firstLastModified;
+    private final ExecutorService backgroundClient = Executors.newSingleThreadExecutor();
+    private Future<ResponseEntity<String>> backgroundListing;
+
+    @Before
+    public void beforeEachScenario() {
+        testState.clear();
+        orgId = "myGreatOrg" + orgCounter.incrementAndGet();
+        listingLatencyMillis = 0;
+        listingCalls.set(0);
+        heldListing = null;
+        listingReceived = new CountDownLatch(1);
+        backgroundListing = null;
+        Mockito.reset(restTemplateMock, dataStoreServiceMock);
+        initMocks();
+    }
+
+    @After
+    public void afterEachScenario() {
+        CountDownLatch held = heldListing;
+        if (held != null) {
+            held.countDown();
+        }
+    }
+
+    @Given("a GitHub organization with {int} repositories")
+    @And("the GitHub organization now has {int} repositories")
+    public void aGitHubOrganizationWithRepositories(int repoCount) {
+        this.repoCount = repoCount;
+    }
+
+    @And("GitHub takes {int} ms to list the repositories")
+    public void githubTakesMsToListTheRepositories(int latencyMillis) {
+        listingLatencyMillis = latencyMillis;
+    }
+
+    @And("GitHub holds the next repositories listing")
+    public void githubHoldsTheNextRepositoriesListing() {
+        heldListing = new CountDownLatch(1);
+    }
+
+    @And("the snapshot is older than the refresh delay")
+    public void theSnapshotIsOlderThanTheRefreshDelay() throws InterruptedException {
+        Thread.sleep(REFRESH_AFTER_MILLIS + 200);
+    }
+
+    @And("the snapshot is older than the max staleness")
+    public void theSnapshotIsOlderThanTheMaxStaleness() throws InterruptedException {
+        Thread.sleep(MAX_STALENESS_MILLIS + 200);
+    }
+
+    @When("API client lists the organization repositories")
+    public void apiClientListsTheOrganizationRepositories() {
+        testState.prepareForRequestSending();
+        listingStartMillis = System.currentTimeMillis();
+        testState.setLastResponse(listRepos());
+        listingMillis = System.currentTimeMillis() - listingStartMillis;
+    }
+
+    @And("API client starts listing the organization repositories")
+    public void apiClientStartsListingTheOrganizationRepositories() throws InterruptedException {
+        backgroundListing = backgroundClient.submit(this::listRepos);
+        Assert.assertTrue("GitHub didn't receive the repositories listing.",
+                          listingReceived.await(5, TimeUnit.SECONDS));
+    }
+
+    @When("API client creates a webhook in the organization")
+    public void apiClientCreatesAWebhookInTheOrganization() {
+        ResponseEntity<String> response = requestSender.genericSend(
+                "{scmId}/orgs/{orgId}/repos/{repoId}/webhooks",
+                apiPort, HttpMethod.POST, null, SCM_ID, orgId, "repo0");
+        Assert.assertEquals("Webhook creation failed.", HttpStatus.OK, response.getStatusCode());
+    }
+
+    @And("the response holds {int} repositories")
+    public void theResponseHoldsRepositories(int expectedCount) throws JsonProcessingException {
+        Assert.assertEquals("Unexpected repositories count.", expectedCount,
+                            readRepos(testState.getLastResponse()).length);
+    }
+
+    @And("the listing took less than {int} ms")
+    public void theListingTookLessThanMs(int millis) {
+        Assert.assertTrue("Listing took " + listingMillis + " ms.", listingMillis < millis);
+    }
+
+    @Then("the organization repositories listing holds {int} repositories within {int} seconds")
+    public void theListingHoldsRepositoriesWithin(int expectedCount, int seconds) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        int actualCount;
+        do {
+            actualCount = readRepos(listRepos()).length;
+            if (actualCount == expectedCount) {
+                return;
+            }
+            Thread.sleep(100);
+        } while (System.currentTimeMillis() < deadline);
+        Assert.fail("Listing still holds " + actualCount + " repositories.");
+    }
+
+    @And("the first listing returns {int} repositories once GitHub is released")
+    public void theFirstListingReturnsRepositoriesOnceGitHubIsReleased(int expectedCount) throws Exception {
+        heldListing.countDown();
+        ResponseEntity<String> response = backgroundListing.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("Unexpected repositories count.", expectedCount, readRepos(response).length);
+    }
+
+    @And("GitHub listed the organization repositories {int} times")
+    public void githubListedTheOrganizationRepositoriesTimes(int times) {
+        Assert.assertEquals("Unexpected repositories listing count.", times, listingCalls.get());
+    }
+
+    @And("the response Last-Modified header is the listing time")
+    public void theResponseLastModifiedHeaderIsTheListingTime() {
+        firstLastModified = testState.getLastResponse().getHeaders().getLastModified();
+        // Last-Modified has a second precision.
+        Assert.assertTrue("Unexpected Last-Modified: " + firstLastModified,
+                          firstLastModified >= listingStartMillis - 1000
+                                  && firstLastModified <= listingStartMillis + listingMillis);
+    }
+
+    @Then("the response Last-Modified header is the same as the first listing one")
+    public void theResponseLastModifiedHeaderIsTheSameAsTheFirstListingOne() {
+        Assert.assertEquals("Stale snapshot served with another Last-Modified.", firstLastModified,
+                            testState.getLastResponse().getHeaders().getLastModified());
+    }
+
+    private ResponseEntity<String> listRepos() {
+        return requestSender.genericSend("{scmId}/orgs/{orgId}/repos", apiPort, HttpMethod.GET, null,
+                                         SCM_ID, orgId);
+    }
+
+    private static RepoWebDto[] readRepos(ResponseEntity<String> response) throws JsonProcessingException {
+        return new ObjectMapper().readValue(response.getBody(), RepoWebDto[].class);
+    }
+
+    private void initMocks() {
+        log.info("Initializing mocks.");
+
+        when(dataStoreServiceMock.getSCMOrgToken(anyString(), any()))
+                .thenAnswer(invocation -> fakeAccessTokenGenerator.generate(invocation.getArgument(0), "fake-token"));
+
+        when(restTemplateMock.exchange(startsWith("https://api.github.com/orgs/"), eq(HttpMethod.GET),
+                                       any(HttpEntity.class), eq(RepoGithubDto[].class)))
+                .thenAnswer(invocation -> listRepositories());
+
+        when(restTemplateMock.exchange(contains("/hooks"), eq(HttpMethod.GET), any(HttpEntity.class),
+                                       eq(WebhookGithubDto[].class)))
+                .thenAnswer(invocation -> new ResponseEntity<>(new WebhookGithubDto[0], HttpStatus.OK));
+
+        when(restTemplateMock.exchange(contains("/hooks"), eq(HttpMethod.POST), any(HttpEntity.class),
+                                       any(Class.class)))
+                .thenAnswer(invocation -> new ResponseEntity<>(WebhookGithubDto.builder()
+                                                                       .id("cxint-webhook-id")
+                                                                       .build(), HttpStatus.CREATED));
+    }
+
+    private ResponseEntity<RepoGithubDto[]> listRepositories() throws InterruptedException {
+        // the repositories count is read when the call is received, a held call answers the former list
+        RepoGithubDto[] repos = new RepoGithubDto[repoCount];
+        for (int i = 0; i < repos.length; i++) {
+            repos[i] = new RepoGithubDto();
+            repos[i].setId("" + i);
+            repos[i].setName("repo" + i);
+        }
+        CountDownLatch held = heldListing;
+        if (listingCalls.incrementAndGet() == 1 && held != null) {
+            listingReceived.countDown();
+            held.await(5, TimeUnit.SECONDS);
+        }
+        Thread.sleep(listingLatencyMillis);
+        return new ResponseEntity<>(repos, HttpStatus.OK);
+    }
+}
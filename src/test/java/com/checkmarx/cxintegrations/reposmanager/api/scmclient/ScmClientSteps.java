@@ -0,0 +1,242 @@
+package com.checkmarx.cxintegrations.reposmanager.api.scmclient;
+
+import com.checkmarx.controller.exception.ScmException;
+import com.checkmarx.utils.RestOperation;
+import com.checkmarx.utils.RestWrapper;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.*;
+import io.cucumber.spring.CucumberContextConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * The following happens here:
+ * - Test calls SCM APIs through the actual ReposManager Scm client (RestWrapper & its RestTemplate interceptors).
+ * - SCM APIs are mocked by a MockRestServiceServer bound to the ReposManager RestTemplate.
+ * - Rate limit scheduling is checked through the SCM calls timing, results and metrics.
+ * - Conditional requests are checked through the SCM calls headers and results.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@CucumberContextConfiguration
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "rest.rate.limit.backoff=100",
+                "rest.rate.limit.max.wait=2"
+        })
+public class ScmClientSteps {
+    private static final String GITHUB_HOST = "api.github.com";
+    private static final String GITHUB_REPOS_URL = "https://" + GITHUB_HOST + "/orgs/myGreatOrg/repos";
+    private static final RestOperation LIST_REPOS = RestOperation.of("github.com", "list-repos");
+
+    private final RestTemplate restTemplate;
+    private final RestWrapper restWrapper;
+    private final MeterRegistry meterRegistry;
+
+    private MockRestServiceServer githubMock;
+    private final AtomicInteger githubCalls = new AtomicInteger();
+    private final List<HttpHeaders> githubRequestHeaders = new CopyOnWriteArrayList<>();
+    private IntFunction<ResponseCreator> githubResponses;
+
+    // Every scenario gets its own rate limit budget.
+    private String token;
+    private double throttledBefore;
+
+    private final List<RuntimeException> callFailures = new ArrayList<>();
+    private final List<ResponseEntity<String>> callResults = new ArrayList<>();
+    private long lastCallMillis;
+    private volatile int maxQueueDepth;
+
+    @Before
+    public void beforeEachScenario() {
+        token = "token-" + UUID.randomUUID();
+        throttledBefore = getThrottledCount();
+        githubCalls.set(0);
+        githubRequestHeaders.clear();
+        callFailures.clear();
+        callResults.clear();
+        maxQueueDepth = 0;
+        githubMock = MockRestServiceServer.bindTo(restTemplate).build();
+        githubMock.expect(ExpectedCount.manyTimes(), requestTo(GITHUB_REPOS_URL))
+                .andRespond(request -> {
+                    githubRequestHeaders.add(new HttpHeaders(request.getHeaders()));
+                    return githubResponses.apply(githubCalls.incrementAndGet()).createResponse(request);
+                });
+    }
+
+    @After
+    public void afterEachScenario() {
+        githubMock.reset();
+    }
+
+    @Given("GitHub answers with {int} remaining call(s) of {int}, resetting in {int} second(s)")
+    public void githubAnswersWithRemainingCallsResettingIn(int remaining, int limit, int resetSeconds) {
+        githubResponses = call -> withSuccess("[]", MediaType.APPLICATION_JSON)
+                .headers(rateLimitHeaders(remaining, limit, resetSeconds));
+    }
+
+    @Given("GitHub throttles the next call, asking to retry after {int} second(s)")
+    public void githubThrottlesTheNextCallAskingToRetryAfter(int retryAfterSeconds) {
+        githubResponses = call -> {
+            if (call == 1) {
+                HttpHeaders headers = new HttpHeaders();
+                headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+                return withStatus(HttpStatus.TOO_MANY_REQUESTS).headers(headers);
+            }
+            return withSuccess("[]", MediaType.APPLICATION_JSON);
+        };
+    }
+
+    @Given("GitHub answers with ETag {string} and Last-Modified {string}, then with Not Modified when revalidated")
+    public void githubAnswersWithValidatorsThenWithNotModified(String etag, String lastModified) {
+        githubResponses = call -> request -> {
+            if (request.getHeaders().getIfNoneMatch().contains(etag)) {
+                return withStatus(HttpStatus.NOT_MODIFIED).createResponse(request);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(etag);
+            headers.set(HttpHeaders.LAST_MODIFIED, lastModified);
+            return withSuccess("[{\"id\":\"" + call + "\"}]", MediaType.APPLICATION_JSON)
+                    .headers(headers)
+                    .createResponse(request);
+        };
+    }
+
+    @When("ReposManager calls GitHub with another token")
+    public void reposManagerCallsGitHubWithAnotherToken() {
+        token = "token-" + UUID.randomUUID();
+        callGitHub();
+    }
+
+    @When("ReposManager calls GitHub {int} time(s)")
+    public void reposManagerCallsGitHubTimes(int times) {
+        ScheduledExecutorService queueSampler = Executors.newSingleThreadScheduledExecutor();
+        queueSampler.scheduleAtFixedRate(this::sampleQueueDepth, 0, 5, TimeUnit.MILLISECONDS);
+        try {
+            for (int i = 0; i < times; i++) {
+                callGitHub();
+            }
+        } finally {
+            queueSampler.shutdownNow();
+        }
+    }
+
+    @Then("every GitHub call succeeds")
+    public void everyGitHubCallSucceeds() {
+        Assert.assertTrue("GitHub calls failed: " + callFailures, callFailures.isEmpty());
+    }
+
+    @Then("the last GitHub call fails with a rate limit exhausted error")
+    public void theLastGitHubCallFailsWithARateLimitExhaustedError() {
+        Assert.assertFalse("GitHub call didn't fail.", callFailures.isEmpty());
+        RuntimeException failure = callFailures.get(callFailures.size() - 1);
+        Assert.assertTrue("Unexpected failure: " + failure, failure instanceof ScmException);
+        Assert.assertEquals("Unexpected failure message.", RestWrapper.SCM_RATE_LIMIT_EXHAUSTED,
+                            failure.getMessage());
+    }
+
+    @And("the GitHub call {int} was sent with If-None-Match {string} and If-Modified-Since {string}")
+    public void theGitHubCallWasSentWithValidators(int call, String etag, String lastModified) {
+        HttpHeaders headers = githubRequestHeaders.get(call - 1);
+        Assert.assertEquals("Unexpected If-None-Match.", Collections.singletonList(etag), headers.getIfNoneMatch());
+        Assert.assertEquals("Unexpected If-Modified-Since.", lastModified,
+                            headers.getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+    }
+
+    @And("the GitHub call {int} was sent without validators")
+    public void theGitHubCallWasSentWithoutValidators(int call) {
+        HttpHeaders headers = githubRequestHeaders.get(call - 1);
+        Assert.assertTrue("Unexpected If-None-Match.", headers.getIfNoneMatch().isEmpty());
+        Assert.assertNull("Unexpected If-Modified-Since.", headers.getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+    }
+
+    @And("the GitHub call {int} returned {int} with the body of the GitHub call {int}")
+    public void theGitHubCallReturnedWithTheBodyOfTheGitHubCall(int call, int status, int bodyCall) {
+        ResponseEntity<String> result = callResults.get(call - 1);
+        Assert.assertEquals("Unexpected status.", status, result.getStatusCodeValue());
+        Assert.assertEquals("Unexpected body.", "[{\"id\":\"" + bodyCall + "\"}]", result.getBody());
+    }
+
+    @And("the last GitHub call waited at least {int} ms")
+    public void theLastGitHubCallWaitedAtLeastMs(int millis) {
+        Assert.assertTrue("GitHub call took only " + lastCallMillis + " ms.", lastCallMillis >= millis);
+    }
+
+    @And("a GitHub call waited in the rate limit queue")
+    public void aGitHubCallWaitedInTheRateLimitQueue() {
+        Assert.assertTrue("No GitHub call was seen in the rate limit queue.", maxQueueDepth > 0);
+    }
+
+    @And("GitHub received {int} call(s)")
+    public void githubReceivedCalls(int calls) {
+        Assert.assertEquals("Unexpected GitHub calls count.", calls, githubCalls.get());
+    }
+
+    @And("{int} throttled GitHub call(s) is/are counted")
+    public void throttledGitHubCallsAreCounted(int calls) {
+        Assert.assertEquals("Unexpected throttled calls count.", calls, getThrottledCount() - throttledBefore, 0);
+    }
+
+    private void callGitHub() {
+        long start = System.currentTimeMillis();
+        try {
+            callResults.add(restWrapper.sendBearerAuthRequest(LIST_REPOS, GITHUB_REPOS_URL, HttpMethod.GET,
+                                                              null, null, String.class, token));
+        } catch (RuntimeException ex) {
+            log.info("GitHub call failed: {}", ex.getMessage());
+            callFailures.add(ex);
+        } finally {
+            lastCallMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    private void sampleQueueDepth() {
+        Gauge queue = meterRegistry.find("rest.rate.limit.queue").tag("provider", GITHUB_HOST).gauge();
+        if (queue != null) {
+            maxQueueDepth = Math.max(maxQueueDepth, (int) queue.value());
+        }
+    }
+
+    private double getThrottledCount() {
+        Counter throttled = meterRegistry.find("rest.rate.limit.throttled").tag("provider", GITHUB_HOST).counter();
+        return throttled == null ? 0 : throttled.count();
+    }
+
+    private static HttpHeaders rateLimitHeaders(int remaining, int limit, int resetSeconds) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-Limit", String.valueOf(limit));
+        headers.set("X-RateLimit-Remaining", String.valueOf(remaining));
+        headers.set("X-RateLimit-Reset", String.valueOf(resetSeconds));
+        return headers;
+    }
+}
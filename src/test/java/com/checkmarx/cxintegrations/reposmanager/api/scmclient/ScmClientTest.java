@@ -0,0 +1,12 @@
+package com.checkmarx.cxintegrations.reposmanager.api.scmclient;
+
+import io.cucumber.junit.Cucumber;
+import io.cucumber.junit.CucumberOptions;
+import org.junit.runner.RunWith;
+
+@RunWith(Cucumber.class)
+@CucumberOptions(
+        features = "src/test/resources/cucumber/scm-client.feature",
+        extraGlue = "com.checkmarx.cxintegrations.reposmanager.api.shared")
+public class ScmClientTest {
+}
@@ -3,13 +3,25 @@ package com.checkmarx.cxintegrations.reposmanager.api.webhook;
 import com.checkmarx.cxintegrations.reposmanager.FakeAccessTokenGenerator;
 import com.checkmarx.cxintegrations.reposmanager.WebApiRequestSender;
 import com.checkmarx.cxintegrations.reposmanager.dto.ApiTestState;
+import com.checkmarx.dto.BaseDto;
+import com.checkmarx.dto.azure.AzureEvent;
+import com.checkmarx.dto.azure.AzureWebhookDto;
 import com.checkmarx.dto.datastore.ScmAccessTokenDto;
 import com.checkmarx.dto.github.WebhookGithubDto;
 import com.checkmarx.dto.gitlab.WebhookGitLabDto;
+import com.checkmarx.dto.web.WebhookWebDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.checkmarx.service.AzureService;
 import com.checkmarx.service.DataStoreService;
 import io.cucumber.java.Before;
 import io.cucumber.java.en.*;
 import io.cucumber.spring.CucumberContextConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -21,13 +33,29 @@ import org.mockito.stubbing.Answer;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
 import org.springframework.http.*;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
 /**
@@ -45,6 +73,8 @@ public class RepoWebhookApiSteps {
     private static final String REPO_ID = "myAwesomeRepo";
     private static final String CX_INTEGRATIONS_WEBHOOK_ID = "cxint-webhook-id";
     private static final String THIRD_PARTY_WEBHOOK_ID = "third-party-webhook-id";
+    private static final String AZURE_PROJECT_ID = "myGreatProject";
+    private static final String AZURE_SUBSCRIPTION_ID_PREFIX = "subscription-";
 
     @LocalServerPort
     private int apiPort;
@@ -58,15 +88,31 @@ public class RepoWebhookApiSteps {
     private final ApiTestState testState;
     private final WebApiRequestSender requestSender;
     private final FakeAccessTokenGenerator fakeAccessTokenGenerator;
+    private final MeterRegistry meterRegistry;
+    private final OpenTelemetry openTelemetry;
+    private final Environment environment;
+    private final AzureService azureService;
 
     private String currentScmId;
 
-    private final Set<String> existingWebhookIds = new HashSet<>();
+    private long scenarioStartMicros;
+
+    // Bulk APIs call the SCM mocks concurrently.
+    private final Set<String> existingWebhookIds = ConcurrentHashMap.newKeySet();
+
+    // Azure subscriptions of a repo webhook are created & deleted concurrently.
+    private final Set<String> deletedAzureSubscriptionIds = ConcurrentHashMap.newKeySet();
+    private String failingAzureEvent;
+    private RuntimeException azureWebhookFailure;
 
     @Before
     public void beforeEachScenario() {
         testState.clear();
         existingWebhookIds.clear();
+        deletedAzureSubscriptionIds.clear();
+        failingAzureEvent = null;
+        azureWebhookFailure = null;
+        scenarioStartMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
         resetMocks();
         initMocks();
     }
@@ -81,6 +127,12 @@ public class RepoWebhookApiSteps {
         currentScmId = scmId;
     }
 
+    @Given("Azure fails to create the {string} subscription")
+    @Given("Azure fails to delete the {string} subscription")
+    public void azureFailsTheSubscription(String eventType) {
+        failingAzureEvent = eventType;
+    }
+
     @When("API client calls the `create webhook` API for the repo")
     public void apiClientCallsTheCreateWebhookAPIForTheRepo() {
         testState.prepareForRequestSending();
@@ -103,6 +155,97 @@ public class RepoWebhookApiSteps {
         testState.setLastResponse(response);
     }
 
+    @When("API client calls the `bulk create webhooks` API for {int} repos")
+    public void apiClientCallsTheBulkCreateWebhooksAPIForRepos(int repoCount) {
+        testState.prepareForRequestSending();
+
+        List<String> repoIds = IntStream.range(0, repoCount)
+                .mapToObj(i -> REPO_ID + i)
+                .collect(Collectors.toList());
+        ResponseEntity<String> response = requestSender.genericSend(
+                "{scmId}/orgs/{orgId}/webhooks",
+                apiPort, HttpMethod.POST, new HttpEntity<>(repoIds), currentScmId, ORG_ID);
+
+        testState.setLastResponse(response);
+    }
+
+    @When("API client calls the `bulk delete webhooks` API for {int} repos")
+    public void apiClientCallsTheBulkDeleteWebhooksAPIForRepos(int repoCount) {
+        testState.prepareForRequestSending();
+
+        List<WebhookWebDto> webhooks = IntStream.range(0, repoCount)
+                .mapToObj(i -> WebhookWebDto.builder()
+                        .repoId(REPO_ID + i)
+                        .webhookId(CX_INTEGRATIONS_WEBHOOK_ID)
+                        .build())
+                .collect(Collectors.toList());
+        ResponseEntity<String> response = requestSender.genericSend(
+                "{scmId}/orgs/{orgId}/webhooks",
+                apiPort, HttpMethod.DELETE, new HttpEntity<>(webhooks), currentScmId, ORG_ID);
+
+        testState.setLastResponse(response);
+    }
+
+    @When("ReposManager creates the Azure webhook of the repo")
+    public void reposManagerCreatesTheAzureWebhookOfTheRepo() {
+        // Azure repo ids hold the project id, which the API path validation doesn't let through.
+        try {
+            azureService.createWebhook(ORG_ID, new BaseDto(AZURE_PROJECT_ID, REPO_ID).getId());
+        } catch (RuntimeException ex) {
+            azureWebhookFailure = ex;
+        }
+    }
+
+    @When("ReposManager deletes the Azure webhook of the repo")
+    public void reposManagerDeletesTheAzureWebhookOfTheRepo() {
+        List<String> subscriptionIds = Arrays.stream(AzureEvent.values())
+                .map(event -> getAzureSubscriptionId(event.getType()))
+                .collect(Collectors.toList());
+        try {
+            azureService.deleteWebhook(ORG_ID, REPO_ID, new BaseDto(subscriptionIds).getId());
+        } catch (RuntimeException ex) {
+            azureWebhookFailure = ex;
+        }
+    }
+
+    @Then("the Azure webhook operation fails")
+    public void theAzureWebhookOperationFails() {
+        Assert.assertNotNull("Azure webhook operation didn't fail.", azureWebhookFailure);
+    }
+
+    @And("the Azure subscriptions of the other events are deleted")
+    public void theAzureSubscriptionsOfTheOtherEventsAreDeleted() {
+        Set<String> expectedIds = Arrays.stream(AzureEvent.values())
+                .map(AzureEvent::getType)
+                .filter(eventType -> !eventType.equals(failingAzureEvent))
+                .map(RepoWebhookApiSteps::getAzureSubscriptionId)
+                .collect(Collectors.toSet());
+        Assert.assertEquals("Unexpected deleted Azure subscriptions.", expectedIds, deletedAzureSubscriptionIds);
+    }
+
+    @And("the webhook state isn't written to DataStore")
+    public void theWebhookStateIsnTWrittenToDataStore() {
+        Mockito.verify(dataStoreServiceMock, never()).updateWebhook(anyString(), any(), any(), any());
+        Mockito.verify(dataStoreServiceMock, never()).updateWebhookBatched(anyString(), any(), any(), any());
+    }
+
+    @And("the webhook state is written to DataStore once, as not configured")
+    public void theWebhookStateIsWrittenToDataStoreOnceAsNotConfigured() {
+        Mockito.verify(dataStoreServiceMock, times(1)).updateWebhook(anyString(), any(), any(), any());
+        Mockito.verify(dataStoreServiceMock).updateWebhook(eq(REPO_ID), any(), isNull(), eq(false));
+    }
+
+    @And("the bulk response reports success for {int} repos")
+    public void theBulkResponseReportsSuccessForRepos(int repoCount) throws JsonProcessingException {
+        WebhookWebDto[] results = new ObjectMapper().readValue(testState.getLastResponse().getBody(),
+                                                               WebhookWebDto[].class);
+        Assert.assertEquals("Unexpected bulk results count.", repoCount, results.length);
+        for (int i = 0; i < repoCount; i++) {
+            Assert.assertEquals("Bulk results are out of order.", REPO_ID + i, results[i].getRepoId());
+            Assert.assertTrue("Bulk operation failed: " + results[i].getError(), results[i].getSuccess());
+        }
+    }
+
     @And("the response contains a non-empty webhook ID")
     public void theResponseContainsANonEmptyWebhookID() {
         String body = testState.getLastResponse().getBody();
@@ -129,6 +272,49 @@ public class RepoWebhookApiSteps {
         verifyWebhookExistence(THIRD_PARTY_WEBHOOK_ID, true);
     }
 
+    @And("the Scm `{word}` call is timed with status {string}")
+    public void theScmCallIsTimedWithStatus(String operation, String status) {
+        String provider = currentScmId + ".com";
+        Timer timer = meterRegistry.find("scm.client.requests")
+                .tags("provider", provider, "operation", operation, "status", status)
+                .timer();
+        Assert.assertNotNull("Scm call isn't timed: " + provider + " " + operation + " " + status, timer);
+        Assert.assertTrue("Scm call timer is empty.", timer.count() > 0);
+    }
+
+    @And("the request trace holds the Scm `{word}` call")
+    public void theRequestTraceHoldsTheScmCall(String operation) throws IOException, InterruptedException {
+        String clientSpanName = currentScmId + ".com " + operation;
+        // The request span ends once the response was sent, it may be exported slightly later.
+        for (int attempt = 0; attempt < 50; attempt++) {
+            if (isCalledWithinRequestSpan(clientSpanName)) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        Assert.fail("No request span holding a client span: " + clientSpanName);
+    }
+
+    private boolean isCalledWithinRequestSpan(String clientSpanName) throws IOException {
+        ((OpenTelemetrySdk) openTelemetry).getSdkTracerProvider().forceFlush().join(5, TimeUnit.SECONDS);
+        Path tracesFile = Paths.get(environment.getRequiredProperty("tracing.exporter.file"));
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, JsonNode> spansById = new HashMap<>();
+        for (String line : Files.readAllLines(tracesFile)) {
+            JsonNode span = objectMapper.readTree(line);
+            if (span.get("startEpochMicros").asLong() >= scenarioStartMicros) {
+                spansById.put(span.get("spanId").asText(), span);
+            }
+        }
+        return spansById.values().stream()
+                .filter(span -> clientSpanName.equals(span.get("name").asText())
+                        && "CLIENT".equals(span.get("kind").asText()))
+                .map(span -> spansById.get(span.get("parentSpanId").asText()))
+                .anyMatch(parent -> parent != null
+                        && "SERVER".equals(parent.get("kind").asText())
+                        && parent.get("name").asText().startsWith("DELETE /{scmType}/orgs/{orgId}/repos"));
+    }
+
     private void resetMocks() {
         // Prevent undesired effects when the same mock instance is initialized several times:
         // e.g. answerer may be triggered unexpectedly.
@@ -140,12 +326,16 @@ public class RepoWebhookApiSteps {
     private void initMocks() {
         final String IN_GITHUB = "api.github.com";
         final String IN_GITLAB = "gitlab.com/api";
+        final String IN_AZURE = "dev.azure.com";
 
         log.info("Initializing mocks.");
 
         when(reposManagerAsksForScmToken())
                 .thenAnswer(withFakeToken());
 
+        when(reposManagerQueuesWebhookState())
+                .thenReturn(CompletableFuture.completedFuture(null));
+
         when(reposManagerCreatesWebhook(IN_GITHUB))
                 .thenAnswer(withFakeGitHubResponse());
 
@@ -157,6 +347,16 @@ public class RepoWebhookApiSteps {
 
         when(reposManagerDeletesWebhook(IN_GITLAB))
                 .thenAnswer(withFakeDeletionResponse());
+
+        when(reposManagerCreatesWebhook(IN_AZURE))
+                .thenAnswer(withFakeAzureSubscriptionCreation());
+
+        when(reposManagerDeletesWebhook(IN_AZURE))
+                .thenAnswer(withFakeAzureSubscriptionDeletion());
+    }
+
+    private CompletableFuture<Void> reposManagerQueuesWebhookState() {
+        return dataStoreServiceMock.updateWebhookBatched(anyString(), any(), any(), any());
     }
 
     private ResponseEntity<?> reposManagerCreatesWebhook(String scmApiBaseUrl) {
@@ -189,6 +389,35 @@ public class RepoWebhookApiSteps {
         };
     }
 
+    private Answer<?> withFakeAzureSubscriptionCreation() {
+        return invocation -> {
+            log.info("Intercepted Azure subscription creation request: {}", invocation);
+            AzureWebhookDto subscription = (AzureWebhookDto) invocation.getArgument(2, HttpEntity.class).getBody();
+            if (subscription.getEventType().equals(failingAzureEvent)) {
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            }
+            return new ResponseEntity<>(new BaseDto(getAzureSubscriptionId(subscription.getEventType())),
+                                        HttpStatus.OK);
+        };
+    }
+
+    private Answer<?> withFakeAzureSubscriptionDeletion() {
+        return invocation -> {
+            log.info("Intercepted Azure subscription deletion request: {}", invocation);
+            // https://dev.azure.com/orgId/_apis/hooks/subscriptions/subscriptionId?api-version=6.0
+            String subscriptionId = StringUtils.substringBetween(invocation.getArgument(0), "/subscriptions/", "?");
+            if (subscriptionId.equals(getAzureSubscriptionId(failingAzureEvent))) {
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            }
+            deletedAzureSubscriptionIds.add(subscriptionId);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        };
+    }
+
+    private static String getAzureSubscriptionId(String eventType) {
+        return AZURE_SUBSCRIPTION_ID_PREFIX + eventType;
+    }
+
     private String extractWebhookId(InvocationOnMock invocation) {
         String scmApiUrl = invocation.getArgument(0);
         String webhookId = StringUtils.substringAfterLast(scmApiUrl, "/");
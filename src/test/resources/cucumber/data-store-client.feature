@@ -0,0 +1,57 @@
+Feature: DataStore client
+    In order to keep DataStore load low
+    As ReposManager
+    I want to coalesce, cache and bound my DataStore calls
+
+
+    Scenario: Bulk webhooks creation writes the organization webhook states together
+        Given DataStore accepts webhook state updates
+        When API client calls the `bulk create webhooks` API for 5 github repos
+        Then response status is 200
+        And the bulk response reports success for 5 repos
+        And DataStore receives 1 webhook state update holding 5 repos
+
+
+    Scenario: Repositories of a rejected coalesced webhook state update are written one by one
+        Given DataStore rejects webhook state updates holding the repo "myAwesomeRepo2"
+        When API client calls the `bulk create webhooks` API for 5 github repos
+        Then response status is 200
+        And the bulk response reports failure for the repo "myAwesomeRepo2" only
+        And DataStore receives 1 webhook state update holding 5 repos
+        And DataStore receives 5 webhook state updates holding 1 repo
+
+
+    Scenario: Bulk webhooks creation fails the webhook states not written in time
+        Given DataStore takes 3 seconds to write webhook state updates
+        When API client calls the `bulk create webhooks` API for 2 github repos
+        Then response status is 200
+        And the bulk response reports a webhook state update failure for 2 repos
+
+
+    Scenario: Organization token is read from DataStore once across calls
+        Given DataStore accepts webhook state updates
+        When API client calls the `create webhook` API for 3 github repos one by one
+        Then DataStore is asked for the organization token 1 time
+
+
+    Scenario: Organization token is read from DataStore again once the organization is authorized again
+        Given DataStore accepts webhook state updates
+        And API client calls the `create webhook` API for 1 github repo one by one
+        When user authorizes ReposManager on github for the organization
+        And API client calls the `create webhook` API for 2 github repos one by one
+        Then DataStore is asked for the organization token 2 times
+
+
+    Scenario: Scm client credentials are read from DataStore once across authorizations
+        Given the github client credentials are stored in DataStore
+        When user authorizes ReposManager on github for the organization
+        And user authorizes ReposManager on github for the organization
+        Then DataStore is asked for the Scm client credentials 1 time
+
+
+    Scenario: Scm client credentials are read from DataStore again once stored
+        Given the github client credentials are stored in DataStore
+        And user authorizes ReposManager on github for the organization
+        When the github client credentials are stored in DataStore again
+        And user authorizes ReposManager on github for the organization
+        Then DataStore is asked for the Scm client credentials 2 times
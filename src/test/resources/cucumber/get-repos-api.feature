@@ -27,3 +27,141 @@ Feature: Get Repositories API
       | gitlab | 5       | 5       | irrelevant     | 4                   | 3                | 3                 |
       | gitlab | 5       | 3       | irrelevant     | 1                   | 3                | 1                 |
 
+  Scenario Outline: Get Repositories API - reactive flavor
+    When API get repositories is called with scm "<scm>"
+    And number of returned repositories will be <n_repos>
+    And There are <n_hooks> webhooks defined on the repositories
+    And number of active hooks is "<n_active_hooks>"
+    And number of hooks with CxFlow url is <n_hooks_with_url>
+    And number of hooks with valid events will be <n_hooks_with_events>
+    Then reactive flavor returns the same <n_repos> repositories with <n_effective_hooks> effective hooks
+
+    Examples:
+
+      | scm    | n_repos | n_hooks | n_active_hooks | n_hooks_with_events | n_hooks_with_url | n_effective_hooks |
+      | github | 0       | 0       | 0              | 0                   | 0                | 0                 |
+      | github | 5       | 0       | 0              | 0                   | 0                | 0                 |
+      | github | 5       | 5       | 5              | 5                   | 5                | 5                 |
+      | github | 5       | 5       | 4              | 5                   | 3                | 3                 |
+      | github | 5       | 4       | 4              | 1                   | 3                | 1                 |
+
+  Scenario: Concurrent get repositories calls of the same organization share one crawl
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And Scm takes 500 ms to list the repositories
+    Then 10 concurrent calls return 5 repositories with a single Scm crawl
+
+  Scenario: A crawl failing mid-way leaves the organization fan-out permits to the next crawl
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And Scm fails on the second repositories page while the fan-out pool is busy
+    Then a second crawl of the organization returns 5 repositories
+
+  Scenario: Webhook reconciliation writes only the repositories that drifted from the Scm
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And DataStore holds repositories "repo 0,repo 9" with a webhook and repositories "repo 1,repo 2" without one
+    Then webhook reconciliation of the organization updates repositories "repo 0,repo 3,repo 4,repo 9"
+
+  Scenario: Webhook reconciliation leaves repositories updated in DataStore during the crawl
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And DataStore holds repositories "repo 0,repo 9" with a webhook and repositories "repo 1,repo 2" without one
+    And DataStore repository "repo 3" gets webhook "8" during the reconciliation crawl
+    Then webhook reconciliation of the organization updates repositories "repo 0,repo 4,repo 9"
+
+  Scenario: Webhook reconciliation replaces its cursor file as a whole
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And DataStore holds repositories "repo 0" with a webhook and repositories "repo 1" without one
+    Then webhook reconciliation of the organization replaces the cursor file with Scm "github.com" and the organization
+
+  Scenario: GitHub repository renamed event moves the repository state to the new name
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And DataStore holds repository "repo 0" with webhook "7"
+    And organization repositories snapshot is taken
+    And GitHub "repository" event is ingested:
+      """
+      {"action": "renamed", "changes": {"repository": {"name": {"from": "repo 0"}}},
+       "repository": {"name": "renamed"}, "organization": {"login": "myOrganization"}}
+      """
+    Then DataStore is updated with repositories "repo 0:,renamed:7"
+    And organization repositories snapshot holds 5 repositories including "renamed"
+
+  Scenario: GitHub meta event of a deleted CxFlow webhook marks the repository as not hooked
+    When API get repositories is called with scm "github"
+    And DataStore holds repository "repo 0" with webhook "7"
+    And GitHub "meta" event is ingested:
+      """
+      {"action": "deleted", "hook_id": 7, "hook": {"config": {"url": "dummyUrl"}},
+       "repository": {"name": "repo 0"}, "organization": {"login": "myOrganization"}}
+      """
+    Then DataStore is updated with repositories "repo 0:"
+
+  Scenario: GitHub meta event of an older CxFlow webhook keeps the re-created one
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 1
+    And There are 1 webhooks defined on the repositories
+    And number of active hooks is "1"
+    And number of hooks with CxFlow url is 1
+    And number of hooks with valid events will be 1
+    And DataStore holds repository "repo 0" with webhook "0"
+    And organization repositories snapshot is taken
+    And GitHub "meta" event is ingested:
+      """
+      {"action": "deleted", "hook_id": 5, "hook": {"config": {"url": "dummyUrl"}},
+       "repository": {"name": "repo 0"}, "organization": {"login": "myOrganization"}}
+      """
+    Then DataStore is not updated
+    And organization repositories snapshot holds repository "repo 0" with webhook "0"
+
+  Scenario Outline: Scm events are accepted only when signed with the Scm events secret
+    When Scm "<scm>" event is delivered with <credentials> credentials
+    Then the event delivery response status is <status>
+
+    Examples:
+
+      | scm    | credentials | status |
+      | github | valid       | 200    |
+      | github | bad         | 401    |
+      | github | no          | 401    |
+      | gitlab | valid       | 200    |
+      | gitlab | bad         | 401    |
+      | azure  | valid       | 200    |
+      | azure  | bad         | 401    |
+
+  Scenario: Bitbucket repositories listing follows the next link of every page
+    When API get repositories is called with scm "bitbucket"
+    And number of returned repositories will be 2
+    And Bitbucket lists the repositories over 3 pages linked by their next link
+    Then Bitbucket workspace repositories listing returns 6 distinct repositories
+
+  Scenario: GitLab group projects listing follows the Link header of every page
+    When API get repositories is called with scm "gitlab"
+    And number of returned repositories will be 2
+    And GitLab lists the repositories over 3 pages linked by their Link header
+    Then GitLab group projects listing returns 6 distinct repositories
+
+  Scenario: GraphQL discovery looks up the webhooks of the administrated repositories only
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 4
+    And GitHub GraphQL lists the repositories over 2 pages, one in 2 administrated by the user
+    Then GraphQL discovery returns 4 repositories after 4 webhook lookups
+    And REST repositories listing is called 0 times
+
+  Scenario: GraphQL discovery falls back to REST when the organization isn't visible
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And GitHub GraphQL lists the repositories over 2 pages, one in 1 administrated by the user
+    And GitHub GraphQL doesn't resolve the organization
+    Then GraphQL discovery returns 5 repositories after 5 webhook lookups
+    And REST repositories listing is called 1 time
+
+  Scenario: GraphQL discovery fails on a later page failure without falling back to REST
+    When API get repositories is called with scm "github"
+    And number of returned repositories will be 5
+    And GitHub GraphQL lists the repositories over 3 pages, one in 1 administrated by the user
+    And GitHub GraphQL fails on page 2
+    Then GraphQL discovery fails
+    And REST repositories listing is called 0 times
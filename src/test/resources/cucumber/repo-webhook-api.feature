@@ -37,3 +37,72 @@ Feature: Repo webhook management API
             | github | doesn't exist |
             | gitlab | doesn't exist |
 
+
+    Scenario Outline: Creating webhooks in bulk
+        Given CxIntegrations webhook "doesn't exist" in a <scm> repo
+        When API client calls the `bulk create webhooks` API for 3 repos
+        Then response status is 200
+        And the bulk response reports success for 3 repos
+        And CxIntegrations webhook is created in the repo
+
+        Examples:
+            | scm    |
+            | github |
+            | gitlab |
+
+
+    Scenario Outline: Deleting webhooks in bulk
+        Given CxIntegrations webhook "exists" in a <scm> repo
+        And a third-party webhook exists in the repo
+        When API client calls the `bulk delete webhooks` API for 3 repos
+        Then response status is 200
+        And the bulk response reports success for 3 repos
+        And CxIntegrations webhook is deleted from the repo
+        But the third-party webhook still exists in the repo
+
+        Examples:
+            | scm    |
+            | github |
+            | gitlab |
+
+
+    Scenario Outline: Timing the Scm calls of a webhook deletion
+        Given CxIntegrations webhook "<exists or not>" in a <scm> repo
+        When API client calls the `delete webhook` API for the repo
+        Then response status is 200
+        And the Scm `delete-hook` call is timed with status "<status>"
+
+        Examples:
+            | scm    | exists or not | status |
+            | github | exists        | 2xx    |
+            | gitlab | exists        | 2xx    |
+            | github | doesn't exist | 4xx    |
+            | gitlab | doesn't exist | 4xx    |
+
+
+    Scenario Outline: Tracing the Scm calls of a webhook deletion
+        Given CxIntegrations webhook "exists" in a <scm> repo
+        When API client calls the `delete webhook` API for the repo
+        Then response status is 200
+        And the request trace holds the Scm `delete-hook` call
+
+        Examples:
+            | scm    |
+            | github |
+            | gitlab |
+
+
+    Scenario: Rolling back the Azure subscriptions of a failed webhook creation
+        Given Azure fails to create the "git.push" subscription
+        When ReposManager creates the Azure webhook of the repo
+        Then the Azure webhook operation fails
+        And the Azure subscriptions of the other events are deleted
+        And the webhook state isn't written to DataStore
+
+
+    Scenario: Deleting an Azure webhook whose subscriptions are partly deleted
+        Given Azure fails to delete the "git.push" subscription
+        When ReposManager deletes the Azure webhook of the repo
+        Then the Azure webhook operation fails
+        And the Azure subscriptions of the other events are deleted
+        And the webhook state is written to DataStore once, as not configured
@@ -0,0 +1,58 @@
+Feature: Organization repositories snapshot
+    In order to list organization repositories without waiting for an Scm crawl
+    As a ReposManager API client
+    I want the last known repositories list served and refreshed behind the scenes
+
+
+    Scenario: A stale snapshot is served right away
+        Given a GitHub organization with 2 repositories
+        And API client lists the organization repositories
+        And the GitHub organization now has 3 repositories
+        And GitHub takes 1000 ms to list the repositories
+        And the snapshot is older than the refresh delay
+        When API client lists the organization repositories
+        Then response status is 200
+        And the response holds 2 repositories
+        And the listing took less than 500 ms
+
+
+    Scenario: A stale snapshot is replaced by its background refresh
+        Given a GitHub organization with 2 repositories
+        And API client lists the organization repositories
+        And the GitHub organization now has 3 repositories
+        And the snapshot is older than the refresh delay
+        When API client lists the organization repositories
+        Then the organization repositories listing holds 3 repositories within 5 seconds
+        And GitHub listed the organization repositories 2 times
+
+
+    Scenario: A snapshot older than the max staleness is rebuilt before answering
+        Given a GitHub organization with 2 repositories
+        And API client lists the organization repositories
+        And the GitHub organization now has 3 repositories
+        And the snapshot is older than the max staleness
+        When API client lists the organization repositories
+        Then response status is 200
+        And the response holds 3 repositories
+        And GitHub listed the organization repositories 2 times
+
+
+    Scenario: Last-Modified header is the time the snapshot was fetched
+        Given a GitHub organization with 2 repositories
+        And API client lists the organization repositories
+        And the response Last-Modified header is the listing time
+        And the snapshot is older than the refresh delay
+        When API client lists the organization repositories
+        Then the response Last-Modified header is the same as the first listing one
+
+
+    Scenario: A listing after a webhook change doesn't reuse a crawl started before it
+        Given a GitHub organization with 2 repositories
+        And GitHub holds the next repositories listing
+        And API client starts listing the organization repositories
+        And the GitHub organization now has 3 repositories
+        When API client creates a webhook in the organization
+        Then the organization repositories listing holds 3 repositories within 5 seconds
+        And the first listing returns 2 repositories once GitHub is released
+        And the organization repositories listing holds 3 repositories within 5 seconds
+        And GitHub listed the organization repositories 2 times
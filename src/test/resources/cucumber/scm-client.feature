@@ -0,0 +1,54 @@
+Feature: Scm client
+    In order to stay within the Scms rate limits
+    As ReposManager
+    I want to schedule and retry my Scm calls by the rate limit headers
+
+
+    Scenario: Scm calls are paced once the remaining budget is low
+        Given GitHub answers with 1 remaining call of 100, resetting in 1 second
+        When ReposManager calls GitHub 3 times
+        Then every GitHub call succeeds
+        And the last GitHub call waited at least 500 ms
+        And a GitHub call waited in the rate limit queue
+
+
+    Scenario: Scm calls fail right away once the budget is exhausted for longer than the max wait
+        Given GitHub answers with 0 remaining calls of 100, resetting in 10 seconds
+        When ReposManager calls GitHub 2 times
+        Then the last GitHub call fails with a rate limit exhausted error
+        And GitHub received 1 call
+
+
+    Scenario: A throttled Scm call is retried after the Retry-After delay
+        Given GitHub throttles the next call, asking to retry after 1 second
+        When ReposManager calls GitHub 1 time
+        Then every GitHub call succeeds
+        And the last GitHub call waited at least 1000 ms
+        And GitHub received 2 calls
+        And 1 throttled GitHub call is counted
+
+
+    Scenario: A throttled Scm call fails when the Retry-After delay exceeds the max wait
+        Given GitHub throttles the next call, asking to retry after 10 seconds
+        When ReposManager calls GitHub 1 time
+        Then the last GitHub call fails with a rate limit exhausted error
+        And GitHub received 1 call
+        And 1 throttled GitHub call is counted
+
+
+    Scenario: An unchanged Scm answer is revalidated and served from the kept body
+        Given GitHub answers with ETag "\"v1\"" and Last-Modified "Wed, 14 Oct 2026 10:00:00 GMT", then with Not Modified when revalidated
+        When ReposManager calls GitHub 2 times
+        Then every GitHub call succeeds
+        And the GitHub call 1 was sent without validators
+        And the GitHub call 2 was sent with If-None-Match "\"v1\"" and If-Modified-Since "Wed, 14 Oct 2026 10:00:00 GMT"
+        And the GitHub call 2 returned 200 with the body of the GitHub call 1
+
+
+    Scenario: A kept Scm answer isn't shared with another token
+        Given GitHub answers with ETag "\"v1\"" and Last-Modified "Wed, 14 Oct 2026 10:00:00 GMT", then with Not Modified when revalidated
+        When ReposManager calls GitHub 1 time
+        And ReposManager calls GitHub with another token
+        Then every GitHub call succeeds
+        And the GitHub call 2 was sent without validators
+        And the GitHub call 2 returned 200 with the body of the GitHub call 2